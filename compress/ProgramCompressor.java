@@ -4,6 +4,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import instr.InstrCode;
 import instr.Program;
@@ -195,6 +196,46 @@ public class ProgramCompressor {
 			}
 		}
 
+		// returns the slices of the primary with a length in the range, sorted by their count in descending order
+		// the count of a slice is the count of its hash, like in the compression
+		public List<int[]> retMostFrequentSlices(int minSliceLength, int maxSliceLength) {
+			Map<Integer, SliceWithCount> sliceByHash = new HashMap<>();
+			for( HashedSubsequences.ByHash iByHash : primaryHashedSubsequences.elements ) {
+				for( HashedSubsequences.ByHash.Element iElement : iByHash.list ) {
+					if( iElement.sliceLength < minSliceLength || iElement.sliceLength > maxSliceLength )   continue;
+					if( sliceByHash.containsKey(iElement.hash) )   continue;
+
+					int[] slice = new int[iElement.sliceLength];
+					System.arraycopy(iElement.subsequence, iElement.sliceStartIdx, slice, 0, iElement.sliceLength);
+					sliceByHash.put(iElement.hash, new SliceWithCount(slice, primaryHashedCounter.retCountForHash(iElement.hash)));
+				}
+			}
+
+			SliceWithCount[] sorted = sliceByHash.values().toArray(new SliceWithCount[0]);
+			Arrays.sort(sorted);
+
+			List<int[]> res = new ArrayList<>();
+			for( SliceWithCount iSlice : sorted )   res.add(iSlice.slice);
+			return res;
+		}
+
+		static class SliceWithCount implements Comparable<SliceWithCount> {
+			public int[] slice;
+			public int count;
+
+			public SliceWithCount(int[] slice, int count) {
+				this.slice = slice;
+				this.count = count;
+			}
+
+			@Override
+			public int compareTo(SliceWithCount o) {
+				if( this.count > o.count )   return -1;
+				if( this.count < o.count )   return 1;
+				return 0;
+			}
+		}
+
 		// returns the number of the secondary 
 		public double retNumberOfCompressedBits() {
 			return numberOfBits;
@@ -374,6 +415,14 @@ public class ProgramCompressor {
 				return false;
 			}
 
+			public int retCount(int hash) {
+				for( Element iElement : list ) {
+					if( iElement.hash == hash )   return iElement.counter;
+				}
+
+				return 0;
+			}
+
 			public void flush() {
 				list.clear();
 			}
@@ -396,6 +445,14 @@ public class ProgramCompressor {
 			return byHash.existsHash(hash);
 		}
 
+		public int retCountForHash(int hash) {
+			int idx = hash < 0 ? -hash : hash;
+			idx = idx % elements.length;
+
+			ByHash byHash = elements[idx];
+			return byHash.retCount(hash);
+		}
+
 		public void incForHash(int hash) {
 			int idx = hash < 0 ? -hash : hash;
 			idx = idx % elements.length;
@@ -1,67 +1,96 @@
 package exec.ctx;
 
-import java.util.List;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import ls.Instrs;
 
-// simple default implementation of a array context which has a own array
+// default implementation of a array context with a configurable number of arrays
+//
+// each array is a gap buffer of primitive doubles, the gap is moved to the position of the last append or delete
+// * appends are amortized O(1), the buffers grow by doubling
+// * repeated deletes at the same index (ARRDEL loops) are O(1), because the gap is already there
+// * reset() keeps the buffers, so the interpretations don't allocate after the buffers reached their size
+//
+// the snapshots share the buffers copy-on-write, a shared buffer is copied into the own buffer of the array before it is written
 public class DefaultArrCtx implements Instrs.IArrayCtx {
+	public static final int DEFAULTNUMBEROFARRAYS = 2;
+	static final int INITIALCAPACITY = 16;
+
 	public DefaultArrCtx() {
+		this(DEFAULTNUMBEROFARRAYS);
+	}
+
+	public DefaultArrCtx(int nArrays) {
+		buffers = new double[nArrays][];
+		ownBuffers = new double[nArrays][];
+		gapBegins = new int[nArrays];
+		gapEnds = new int[nArrays];
+		arrIdxs = new int[nArrays];
+		isBufferShared = new boolean[nArrays];
+		for( int arrayIdx = 0; arrayIdx < nArrays; arrayIdx++ ) {
+			buffers[arrayIdx] = ownBuffers[arrayIdx] = new double[INITIALCAPACITY];
+			gapEnds[arrayIdx] = INITIALCAPACITY;
+		}
 	}
 
 	public void append(double val, int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return;
-		arr.add(val);
+
+		prepareWrite(arrayIdx);
+		moveGap(arrayIdx, retLength(arrayIdx));
+		if( gapBegins[arrayIdx] == gapEnds[arrayIdx] )   grow(arrayIdx);
+		buffers[arrayIdx][gapBegins[arrayIdx]++] = val;
 	}
 
 	public void setArrIdx(int idx, int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return;
-		arrIdx = idx;
+		arrIdxs[arrayIdx] = idx;
+		snapshot = null;
 	}
 
 	public double retAt(int idx, int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return 0;
 
-		isOkFlag = idx >= 0 && idx < arr.size();
+		isOkFlag = idx >= 0 && idx < retLength(arrayIdx);
 		if( !isOkFlag )   return 0;
 
-		return arr.get(idx);
+		return idx < gapBegins[arrayIdx] ? buffers[arrayIdx][idx] : buffers[arrayIdx][idx + gapEnds[arrayIdx] - gapBegins[arrayIdx]];
 	}
 
 	public int retArrLength(int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return -1;
 
-		return arr.size();
+		return retLength(arrayIdx);
 	}
 
 	public int retArrIdx(int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return -1;
 
-		isOkFlag = true;
-		return arrIdx;
+		return arrIdxs[arrayIdx];
 	}
 
 	public void delAtIdx(int idx, int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return;
 
-		isOkFlag = idx >= 0 && idx < arr.size();
+		isOkFlag = idx >= 0 && idx < retLength(arrayIdx);
 		if( !isOkFlag )   return;
 
-		arr.remove(idx);
+		prepareWrite(arrayIdx);
+		moveGap(arrayIdx, idx);
+		gapEnds[arrayIdx]++; // the element after the gap is the element at idx
 	}
 
 	public boolean retCheckIdx(int arrayIdx) {
-		isOkFlag = arrayIdx == 0;
+		isOkFlag = isValidArrayIdx(arrayIdx);
 		if( !isOkFlag )   return false;
 
-		return arrIdx >= 0 && arrIdx < arr.size();
+		return arrIdxs[arrayIdx] >= 0 && arrIdxs[arrayIdx] < retLength(arrayIdx);
 	}
 
 	public boolean isOk() {
@@ -69,13 +98,122 @@ public class DefaultArrCtx implements Instrs.IArrayCtx {
 	}
 
 	public void reset() {
-		arrIdx = 0;
-		arr.clear();
+		for( int arrayIdx = 0; arrayIdx < buffers.length; arrayIdx++ ) {
+			if( isBufferShared[arrayIdx] ) {
+				if( ownBuffers[arrayIdx] == null )   ownBuffers[arrayIdx] = new double[INITIALCAPACITY];
+				buffers[arrayIdx] = ownBuffers[arrayIdx];
+				isBufferShared[arrayIdx] = false;
+			}
+			gapBegins[arrayIdx] = 0;
+			gapEnds[arrayIdx] = buffers[arrayIdx].length;
+			arrIdxs[arrayIdx] = 0;
+		}
+		snapshot = null;
+		isOkFlag = true;
+	}
+
+	public Object retSnapshot() {
+		if( snapshot == null ) { // the state changed since the last snapshot
+			snapshot = new Snapshot(buffers.clone(), gapBegins.clone(), gapEnds.clone(), arrIdxs.clone());
+			for( int arrayIdx = 0; arrayIdx < buffers.length; arrayIdx++ ) {
+				isBufferShared[arrayIdx] = true;
+				if( ownBuffers[arrayIdx] == buffers[arrayIdx] )   ownBuffers[arrayIdx] = null; // belongs to the snapshot now
+			}
+		}
+		return snapshot;
+	}
+
+	public void restoreSnapshot(Object snapshotParam) {
+		snapshot = (Snapshot)snapshotParam;
+		System.arraycopy(snapshot.buffers, 0, buffers, 0, buffers.length);
+		System.arraycopy(snapshot.gapBegins, 0, gapBegins, 0, buffers.length);
+		System.arraycopy(snapshot.gapEnds, 0, gapEnds, 0, buffers.length);
+		System.arraycopy(snapshot.arrIdxs, 0, arrIdxs, 0, buffers.length);
+		Arrays.fill(isBufferShared, true);
+	}
+
+	// returns the values of the array, used for debugging and comparisons
+	public double[] retValues(int arrayIdx) {
+		double[] res = new double[retLength(arrayIdx)];
+		for( int idx = 0; idx < res.length; idx++ )   res[idx] = retAt(idx, arrayIdx);
 		isOkFlag = true;
+		return res;
 	}
 
-	public int arrIdx = 0;
-	public List<Double> arr = new ArrayList<>();
+	boolean isValidArrayIdx(int arrayIdx) {
+		return arrayIdx >= 0 && arrayIdx < buffers.length;
+	}
+
+	int retLength(int arrayIdx) {
+		return buffers[arrayIdx].length - (gapEnds[arrayIdx] - gapBegins[arrayIdx]);
+	}
+
+	// moves the gap to begin at the position
+	void moveGap(int arrayIdx, int position) {
+		double[] buffer = buffers[arrayIdx];
+		int gapBegin = gapBegins[arrayIdx], gapEnd = gapEnds[arrayIdx];
+		if( position < gapBegin ) {
+			System.arraycopy(buffer, position, buffer, gapEnd - (gapBegin - position), gapBegin - position);
+		}
+		else if( position > gapBegin ) {
+			System.arraycopy(buffer, gapEnd, buffer, gapBegin, position - gapBegin);
+		}
+		gapEnds[arrayIdx] = gapEnd + (position - gapBegin);
+		gapBegins[arrayIdx] = position;
+	}
+
+	void grow(int arrayIdx) {
+		double[] dest = new double[Math.max(INITIALCAPACITY, buffers[arrayIdx].length * 2)];
+		copyInto(arrayIdx, dest);
+		ownBuffers[arrayIdx] = dest;
+	}
+
+	// copies the array into its own buffer if the buffer is shared with a snapshot
+	void prepareWrite(int arrayIdx) {
+		snapshot = null;
+		if( !isBufferShared[arrayIdx] )   return;
+
+		double[] dest = ownBuffers[arrayIdx];
+		if( dest == null || dest.length < buffers[arrayIdx].length )   dest = new double[buffers[arrayIdx].length];
+		copyInto(arrayIdx, dest);
+		ownBuffers[arrayIdx] = dest;
+		isBufferShared[arrayIdx] = false;
+	}
+
+	// copies the values before and after the gap to the begin and end of the destination, the destination becomes the buffer
+	void copyInto(int arrayIdx, double[] dest) {
+		double[] buffer = buffers[arrayIdx];
+		int gapBegin = gapBegins[arrayIdx];
+		int tailLength = buffer.length - gapEnds[arrayIdx];
+		System.arraycopy(buffer, 0, dest, 0, gapBegin);
+		System.arraycopy(buffer, buffer.length - tailLength, dest, dest.length - tailLength, tailLength);
+		buffers[arrayIdx] = dest;
+		gapEnds[arrayIdx] = dest.length - tailLength;
+	}
+
+	double[][] buffers; // gap buffer of each array
+	double[][] ownBuffers; // buffer of each array which isn't referenced by a snapshot, is reused when a shared buffer is written, null if there is none
+	int[] gapBegins;
+	int[] gapEnds; // exclusive
+	int[] arrIdxs; // current index of each array
 
 	boolean isOkFlag = true;
-}
\ No newline at end of file
+
+	boolean[] isBufferShared; // is the buffer referenced by a snapshot
+	Snapshot snapshot; // snapshot of the current state, null if the state changed since the last snapshot
+
+	// immutable state, the buffers are shared copy-on-write
+	static class Snapshot {
+		public final double[][] buffers;
+		public final int[] gapBegins;
+		public final int[] gapEnds;
+		public final int[] arrIdxs;
+
+		public Snapshot(double[][] buffers, int[] gapBegins, int[] gapEnds, int[] arrIdxs) {
+			this.buffers = buffers;
+			this.gapBegins = gapBegins;
+			this.gapEnds = gapEnds;
+			this.arrIdxs = arrIdxs;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package exec.ctx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+import ls.Instrs;
+
+// array context for large datasets, the input arrays are memory mapped files and the output arrays are off heap
+//
+// * the arrays 0 .. inputs.length-1 are the read only inputs, append and delete fail on them
+//   the MappedDoubleFile's can be shared by the contexts of all threads, nothing is loaded into the heap
+//   only the first Integer.MAX_VALUE values are addressable by the instructions, the length is clamped
+// * the following arrays are the outputs, direct buffers which grow by doubling and are kept by reset()
+//
+// the snapshots share the inputs and copy the outputs, the outputs of the search programs are short
+public class MappedArrCtx implements Instrs.IArrayCtx {
+	static final int INITIALCAPACITY = 16;
+
+	public MappedArrCtx(MappedDoubleFile[] inputs, int nOutputArrays) {
+		this.inputs = inputs;
+		outputs = new DoubleBuffer[nOutputArrays];
+		outputLengths = new int[nOutputArrays];
+		arrIdxs = new int[inputs.length + nOutputArrays];
+		for( int outputIdx = 0; outputIdx < nOutputArrays; outputIdx++ )   outputs[outputIdx] = allocate(INITIALCAPACITY);
+	}
+
+	public void append(double val, int arrayIdx) {
+		isOkFlag = isOutputArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+
+		snapshot = null;
+		int outputIdx = arrayIdx - inputs.length;
+		if( outputLengths[outputIdx] == outputs[outputIdx].capacity() )   grow(outputIdx);
+		outputs[outputIdx].put(outputLengths[outputIdx]++, val);
+	}
+
+	public void setArrIdx(int idx, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+		arrIdxs[arrayIdx] = idx;
+		snapshot = null;
+	}
+
+	public double retAt(int idx, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return 0;
+
+		isOkFlag = idx >= 0 && idx < retLength(arrayIdx);
+		if( !isOkFlag )   return 0;
+
+		return arrayIdx < inputs.length ? inputs[arrayIdx].retAt(idx) : outputs[arrayIdx - inputs.length].get(idx);
+	}
+
+	public int retArrLength(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return -1;
+
+		return retLength(arrayIdx);
+	}
+
+	public int retArrIdx(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return -1;
+
+		return arrIdxs[arrayIdx];
+	}
+
+	public void delAtIdx(int idx, int arrayIdx) {
+		isOkFlag = isOutputArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+
+		int outputIdx = arrayIdx - inputs.length;
+		isOkFlag = idx >= 0 && idx < outputLengths[outputIdx];
+		if( !isOkFlag )   return;
+
+		snapshot = null;
+		DoubleBuffer output = outputs[outputIdx];
+		for( int i = idx; i < outputLengths[outputIdx] - 1; i++ )   output.put(i, output.get(i + 1));
+		outputLengths[outputIdx]--;
+	}
+
+	public boolean retCheckIdx(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return false;
+
+		return arrIdxs[arrayIdx] >= 0 && arrIdxs[arrayIdx] < retLength(arrayIdx);
+	}
+
+	public boolean isOk() {
+		return isOkFlag;
+	}
+
+	public void reset() {
+		for( int outputIdx = 0; outputIdx < outputs.length; outputIdx++ )   outputLengths[outputIdx] = 0;
+		for( int arrayIdx = 0; arrayIdx < arrIdxs.length; arrayIdx++ )   arrIdxs[arrayIdx] = 0;
+		snapshot = null;
+		isOkFlag = true;
+	}
+
+	public Object retSnapshot() {
+		if( snapshot == null ) { // the state changed since the last snapshot
+			double[][] outputValues = new double[outputs.length][];
+			for( int outputIdx = 0; outputIdx < outputs.length; outputIdx++ ) {
+				outputValues[outputIdx] = new double[outputLengths[outputIdx]];
+				for( int idx = 0; idx < outputLengths[outputIdx]; idx++ )   outputValues[outputIdx][idx] = outputs[outputIdx].get(idx);
+			}
+			snapshot = new Snapshot(outputValues, arrIdxs.clone());
+		}
+		return snapshot;
+	}
+
+	public void restoreSnapshot(Object snapshotParam) {
+		snapshot = (Snapshot)snapshotParam;
+		for( int outputIdx = 0; outputIdx < outputs.length; outputIdx++ ) {
+			double[] values = snapshot.outputValues[outputIdx];
+			while( outputs[outputIdx].capacity() < values.length )   grow(outputIdx);
+			for( int idx = 0; idx < values.length; idx++ )   outputs[outputIdx].put(idx, values[idx]);
+			outputLengths[outputIdx] = values.length;
+		}
+		System.arraycopy(snapshot.arrIdxs, 0, arrIdxs, 0, arrIdxs.length);
+	}
+
+	boolean isValidArrayIdx(int arrayIdx) {
+		return arrayIdx >= 0 && arrayIdx < arrIdxs.length;
+	}
+
+	boolean isOutputArrayIdx(int arrayIdx) {
+		return arrayIdx >= inputs.length && arrayIdx < arrIdxs.length;
+	}
+
+	int retLength(int arrayIdx) {
+		return arrayIdx < inputs.length ? (int)Math.min(inputs[arrayIdx].retLength(), Integer.MAX_VALUE) : outputLengths[arrayIdx - inputs.length];
+	}
+
+	void grow(int outputIdx) {
+		DoubleBuffer dest = allocate(outputs[outputIdx].capacity() * 2);
+		for( int idx = 0; idx < outputLengths[outputIdx]; idx++ )   dest.put(idx, outputs[outputIdx].get(idx));
+		outputs[outputIdx] = dest;
+	}
+
+	static DoubleBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+	}
+
+	final MappedDoubleFile[] inputs;
+	final DoubleBuffer[] outputs; // off heap buffer of each output array
+	final int[] outputLengths;
+	final int[] arrIdxs; // current index of each array, the inputs first
+
+	boolean isOkFlag = true;
+
+	Snapshot snapshot; // snapshot of the current state, null if the state changed since the last snapshot
+
+	// immutable state, the inputs are not part of it
+	static class Snapshot {
+		public final double[][] outputValues;
+		public final int[] arrIdxs;
+
+		public Snapshot(double[][] outputValues, int[] arrIdxs) {
+			this.outputValues = outputValues;
+			this.arrIdxs = arrIdxs;
+		}
+	}
+}
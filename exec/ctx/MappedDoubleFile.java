@@ -0,0 +1,59 @@
+package exec.ctx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// read only file of doubles which is memory mapped, used as a input array of MappedArrCtx
+//
+// the file is a raw sequence of little endian doubles without a header
+// the file is mapped in chunks of 2^CHUNKLOG2 doubles, because a single mapping is limited to 2 GiB
+// the values are only read with absolute gets, so one instance can be shared by all threads
+public class MappedDoubleFile {
+	public static final int CHUNKLOG2 = 27; // 1 GiB per chunk
+	static final int CHUNKSIZE = 1 << CHUNKLOG2;
+
+	public MappedDoubleFile(Path path) throws IOException {
+		try( FileChannel channel = FileChannel.open(path, StandardOpenOption.READ) ) { // the mappings stay valid after the channel is closed
+			length = channel.size() / Double.BYTES;
+			chunks = new DoubleBuffer[(int)((length + CHUNKSIZE - 1) >>> CHUNKLOG2)];
+			for( int chunkIdx = 0; chunkIdx < chunks.length; chunkIdx++ ) {
+				long chunkBegin = (long)chunkIdx << CHUNKLOG2;
+				long chunkLength = Math.min(CHUNKSIZE, length - chunkBegin);
+				chunks[chunkIdx] = channel.map(FileChannel.MapMode.READ_ONLY, chunkBegin * Double.BYTES, chunkLength * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+		}
+	}
+
+	public double retAt(long idx) {
+		return chunks[(int)(idx >>> CHUNKLOG2)].get((int)(idx & (CHUNKSIZE - 1)));
+	}
+
+	public long retLength() {
+		return length;
+	}
+
+	// writes the values in the format which is mapped, used to prepare datasets
+	public static void write(Path path, double[] values) throws IOException {
+		try( FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			for( double iValue : values ) {
+				if( buffer.remaining() < Double.BYTES ) {
+					buffer.flip();
+					while( buffer.hasRemaining() )   channel.write(buffer);
+					buffer.clear();
+				}
+				buffer.putDouble(iValue);
+			}
+			buffer.flip();
+			while( buffer.hasRemaining() )   channel.write(buffer);
+		}
+	}
+
+	final DoubleBuffer[] chunks;
+	final long length; // number of doubles
+}
@@ -0,0 +1,287 @@
+package exec.ctx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ls.Instrs;
+
+// array context with persistent arrays, the snapshots are O(1) and the writes are O(log n)
+//
+// each array is a chunked tree, the leaves hold up to BRANCHING values and the inner nodes up to BRANCHING children with their sizes
+// the trees are shared between the context and the snapshots (structural sharing), a write copies only the path to the changed leaf
+// * appends go to the rightmost leaf, full nodes are split to the right
+// * deletes remove the value from the leaf, empty nodes are removed, underfull nodes are not merged
+// * the nodes which were created after the last snapshot are owned by the context and are modified in place (like transients of Clojure),
+//   so a sequence of writes between two snapshots copies each node at most once
+// * snapshot and restore only copy the roots and the indices and start a new edit, so all existing nodes become immutable
+//
+// use DefaultArrCtx if no snapshots are taken, it is faster for small arrays
+public class PersistentArrCtx implements Instrs.IArrayCtx {
+	public static final int BRANCHING = 32;
+
+	static final AtomicLong EDITIDS = new AtomicLong(); // source of unique edit ids, unique over all contexts because the snapshots can be restored into other contexts
+
+	// node of the tree, the fields are only modified if the editId is the current edit of the context
+	static final class Node {
+		long editId;
+		double[] values; // values of a leaf, null for inner nodes
+		Node[] children; // children of a inner node, null for leaves
+		int[] childSizes; // number of values in each child
+		int count; // number of values of a leaf or number of children of a inner node
+		int size; // number of values in the subtree
+
+		static Node newLeaf(long editId) {
+			Node res = new Node();
+			res.editId = editId;
+			res.values = new double[BRANCHING];
+			return res;
+		}
+
+		static Node newInner(long editId) {
+			Node res = new Node();
+			res.editId = editId;
+			res.children = new Node[BRANCHING];
+			res.childSizes = new int[BRANCHING];
+			return res;
+		}
+
+		Node copy(long editId) {
+			Node res = new Node();
+			res.editId = editId;
+			res.values = values != null ? values.clone() : null;
+			res.children = children != null ? children.clone() : null;
+			res.childSizes = childSizes != null ? childSizes.clone() : null;
+			res.count = count;
+			res.size = size;
+			return res;
+		}
+	}
+
+	public PersistentArrCtx() {
+		this(DefaultArrCtx.DEFAULTNUMBEROFARRAYS);
+	}
+
+	public PersistentArrCtx(int nArrays) {
+		editId = EDITIDS.incrementAndGet();
+		roots = new Node[nArrays];
+		arrIdxs = new int[nArrays];
+		for( int arrayIdx = 0; arrayIdx < nArrays; arrayIdx++ )   roots[arrayIdx] = Node.newLeaf(editId);
+	}
+
+	public void append(double val, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+
+		snapshot = null;
+		Node root = append(roots[arrayIdx], val);
+		if( splitSibling != null ) { // the tree grows in height
+			Node newRoot = Node.newInner(editId);
+			addChild(newRoot, root);
+			addChild(newRoot, splitSibling);
+			splitSibling = null;
+			root = newRoot;
+		}
+		roots[arrayIdx] = root;
+	}
+
+	public void setArrIdx(int idx, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+		arrIdxs[arrayIdx] = idx;
+		snapshot = null;
+	}
+
+	public double retAt(int idx, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return 0;
+
+		Node node = roots[arrayIdx];
+		isOkFlag = idx >= 0 && idx < node.size;
+		if( !isOkFlag )   return 0;
+
+		while( node.values == null ) {
+			int childIdx = 0;
+			while( idx >= node.childSizes[childIdx] ) {
+				idx -= node.childSizes[childIdx];
+				childIdx++;
+			}
+			node = node.children[childIdx];
+		}
+		return node.values[idx];
+	}
+
+	public int retArrLength(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return -1;
+
+		return roots[arrayIdx].size;
+	}
+
+	public int retArrIdx(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return -1;
+
+		return arrIdxs[arrayIdx];
+	}
+
+	public void delAtIdx(int idx, int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return;
+
+		isOkFlag = idx >= 0 && idx < roots[arrayIdx].size;
+		if( !isOkFlag )   return;
+
+		snapshot = null;
+		Node root = delete(roots[arrayIdx], idx);
+		while( root.values == null && root.count == 1 )   root = root.children[0]; // the tree shrinks in height
+		if( root.size == 0 && root.values == null )   root = Node.newLeaf(editId);
+		roots[arrayIdx] = root;
+	}
+
+	public boolean retCheckIdx(int arrayIdx) {
+		isOkFlag = isValidArrayIdx(arrayIdx);
+		if( !isOkFlag )   return false;
+
+		return arrIdxs[arrayIdx] >= 0 && arrIdxs[arrayIdx] < roots[arrayIdx].size;
+	}
+
+	public boolean isOk() {
+		return isOkFlag;
+	}
+
+	public void reset() {
+		for( int arrayIdx = 0; arrayIdx < roots.length; arrayIdx++ ) {
+			Node root = roots[arrayIdx];
+			if( root.editId == editId && root.values != null ) { // owned leaf, is reused
+				root.count = 0;
+				root.size = 0;
+			}
+			else {
+				roots[arrayIdx] = Node.newLeaf(editId);
+			}
+			arrIdxs[arrayIdx] = 0;
+		}
+		snapshot = null;
+		isOkFlag = true;
+	}
+
+	// O(1), the trees become immutable
+	public Object retSnapshot() {
+		if( snapshot == null ) { // the state changed since the last snapshot
+			snapshot = new Snapshot(roots.clone(), arrIdxs.clone());
+			editId = EDITIDS.incrementAndGet();
+		}
+		return snapshot;
+	}
+
+	public void restoreSnapshot(Object snapshotParam) {
+		snapshot = (Snapshot)snapshotParam;
+		System.arraycopy(snapshot.roots, 0, roots, 0, roots.length);
+		System.arraycopy(snapshot.arrIdxs, 0, arrIdxs, 0, roots.length);
+		editId = EDITIDS.incrementAndGet(); // the nodes of the snapshot must not be modified
+	}
+
+	boolean isValidArrayIdx(int arrayIdx) {
+		return arrayIdx >= 0 && arrayIdx < roots.length;
+	}
+
+	// returns the node itself if it is owned by the current edit, a copy if not
+	Node retOwned(Node node) {
+		return node.editId == editId ? node : node.copy(editId);
+	}
+
+	static void addChild(Node inner, Node child) {
+		inner.children[inner.count] = child;
+		inner.childSizes[inner.count] = child.size;
+		inner.count++;
+		inner.size += child.size;
+	}
+
+	// appends to the rightmost leaf of the subtree and returns the new subtree
+	// sets splitSibling to the new right sibling if the subtree is full, the value is in the sibling then
+	Node append(Node node, double val) {
+		if( node.values != null ) {
+			if( node.count == BRANCHING ) {
+				splitSibling = Node.newLeaf(editId);
+				splitSibling.values[0] = val;
+				splitSibling.count = 1;
+				splitSibling.size = 1;
+				return node;
+			}
+			Node res = retOwned(node);
+			res.values[res.count++] = val;
+			res.size++;
+			return res;
+		}
+
+		Node res = retOwned(node);
+		int lastIdx = res.count - 1;
+		Node child = append(res.children[lastIdx], val);
+		res.children[lastIdx] = child;
+		res.childSizes[lastIdx] = child.size;
+		if( splitSibling == null ) {
+			res.size++;
+			return res;
+		}
+
+		Node sibling = splitSibling;
+		splitSibling = null;
+		if( res.count == BRANCHING ) {
+			splitSibling = Node.newInner(editId);
+			addChild(splitSibling, sibling);
+			return res;
+		}
+		addChild(res, sibling);
+		return res;
+	}
+
+	// deletes the value at the index of the subtree and returns the new subtree
+	Node delete(Node node, int idx) {
+		Node res = retOwned(node);
+		res.size--;
+
+		if( res.values != null ) {
+			System.arraycopy(res.values, idx + 1, res.values, idx, res.count - idx - 1);
+			res.count--;
+			return res;
+		}
+
+		int childIdx = 0;
+		while( idx >= res.childSizes[childIdx] ) {
+			idx -= res.childSizes[childIdx];
+			childIdx++;
+		}
+		Node child = delete(res.children[childIdx], idx);
+		if( child.size == 0 ) { // remove the empty child
+			System.arraycopy(res.children, childIdx + 1, res.children, childIdx, res.count - childIdx - 1);
+			System.arraycopy(res.childSizes, childIdx + 1, res.childSizes, childIdx, res.count - childIdx - 1);
+			res.count--;
+			res.children[res.count] = null;
+		}
+		else {
+			res.children[childIdx] = child;
+			res.childSizes[childIdx] = child.size;
+		}
+		return res;
+	}
+
+	Node[] roots; // tree of each array
+	int[] arrIdxs; // current index of each array
+	long editId; // nodes with this edit id are owned by the context
+
+	Node splitSibling; // result of append()
+
+	boolean isOkFlag = true;
+
+	Snapshot snapshot; // snapshot of the current state, null if the state changed since the last snapshot
+
+	// immutable state, the trees are shared
+	static class Snapshot {
+		public final Node[] roots;
+		public final int[] arrIdxs;
+
+		public Snapshot(Node[] roots, int[] arrIdxs) {
+			this.roots = roots;
+			this.arrIdxs = arrIdxs;
+		}
+	}
+}
@@ -6,6 +6,12 @@ import java.util.Random;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import java.io.OutputStream;
 import java.io.ByteArrayOutputStream;
@@ -26,6 +32,14 @@ import compress.ProgramCompressor;
 
 import exec.ctx.DefaultArrCtx;
 import ls.Instrs;
+import ls.StackEffectVerifier;
+import ls.ControlFlowAnalysis;
+import ls.SuperinstructionFusion;
+import ls.PeepholeOptimizer;
+import ls.InterpreterProfiler;
+import ls.ProgramResultCache;
+import ls.PurityAnalysis;
+import ls.BehavioralFingerprintSet;
 import uncategorized.ProgramUsefulChecker;
 
 import env.Pong;
@@ -254,6 +268,22 @@ class ExpAdaptiveCompressedSearch {
 	public static void main(String[] args) throws Exception {
 		int verbosity = 2;
 
+		boolean profileInterpreter = false; // profiles the instructions executed by the interpreter, the profile is dumped at the end of each cycle
+		InterpreterProfiler interpreterProfiler = profileInterpreter ? new InterpreterProfiler() : null;
+
+		// the programs are simulated on all cores, each thread interprets with its own ctx
+		int numberOfSimulationThreads = Runtime.getRuntime().availableProcessors();
+		int simulationBlockSize = 4096; // number of programs which are simulated in parallel before the results are checked in order
+
+		boolean memoizeProgramResults = true; // results of pure programs are cached by program and input, the cache is shared by all cycles
+		int programResultCacheCapacityLog2 = 20;
+		ProgramResultCache programResultCache = memoizeProgramResults ? new ProgramResultCache(programResultCacheCapacityLog2) : null;
+
+		// pure programs which behave on the probe inputs like a program which was already evaluated are not evaluated, see BehavioralFingerprintSet
+		// is a heuristic which can skip a solution if it behaves on the probe inputs like a program which isn't a solution
+		boolean skipBehavioralDuplicates = false;
+		BehavioralFingerprintSet behavioralFingerprintSet = skipBehavioralDuplicates ? new BehavioralFingerprintSet() : null; // shared by all cycles
+
 		IConsole console = new ConsoleImpl();
 
 		int numberOfTriedPrograms = 0;
@@ -720,6 +750,10 @@ class ExpAdaptiveCompressedSearch {
 		
 		if( verbosity > 0 )   System.out.format("main : feed primary done\n");
 
+		// the most frequent slices of the primary programs are fused to superinstructions to reduce the number of dispatched instructions
+		SuperinstructionFusion superinstructionFusion = new SuperinstructionFusion(instrLookupTable);
+		superinstructionFusion.addMostFrequentSlices(hashBasedProgramCompressor, 16, 3);
+
 
 
 
@@ -743,177 +777,233 @@ class ExpAdaptiveCompressedSearch {
 
 		int cycleCnt = 1;
 
-		for(;;) { // repeat for each cycle
+		ExecutorService simulationExecutor = Executors.newFixedThreadPool(numberOfSimulationThreads);
 
-			List<ProgramWithNumberOfBitsTuple> programcandidatesOfCycle = new ArrayList<>();
-			
-			if( verbosity > 0 )   System.out.format("main : initiate cycle #=%d\n", cycleCnt);
+		try { // the threads of the executor are not daemon threads, they must be stopped on every exit of the loop
+			for(;;) { // repeat for each cycle
 
-			int currentCycleCnt = cycleCnt;
-			cycleCnt++;
-			
-			{ // generate programs
-				// table of instructions used to generate programs
-				InstrCode[] instructionCandidates = new InstrCode[5];
-				instructionCandidates[0] = instrLookupTable.lookupIdxByExactHumanName("DUP");
-				instructionCandidates[1] = instrLookupTable.lookupIdxByExactHumanName("CMPGTZEROPOP");
-				instructionCandidates[2] = instrLookupTable.lookupIdxByExactHumanName("XCHG");
-				instructionCandidates[3] = instrLookupTable.lookupIdxByExactHumanName("MULVALUE -1");
-				instructionCandidates[4] = instrLookupTable.lookupIdxByExactHumanName("ADD_R(2)");
-
-
-
-				// number of generated programs per cycle has to be limited because we have to give a chance to the compressor to bias the search
-				long numberOfGeneratedProgramsPerCycle; // = 2_000_000; // for testing // 15_000_000; // 1_000_000;
-				numberOfGeneratedProgramsPerCycle = (long)(numberOfGeneratedProgramsPerCyleBase * Math.pow(currentCycleCnt, numberOfGeneratedProgramsPerCyleExponent));
-				numberOfGeneratedProgramsPerCycle = Math.min(numberOfGeneratedProgramsPerCycle, numberOfGeneratedProgramsPerCyleMax);
-
-				for( long candidateProgramCnt = 0; candidateProgramCnt < numberOfGeneratedProgramsPerCycle; candidateProgramCnt++ ) {
-					if( verbosity > 0 ) {
-						if( (candidateProgramCnt % 10000 ) == 0 ) {
-							System.out.format("main : iterate over enumerated programs #=%d\n", candidateProgramCnt);
+				List<ProgramWithNumberOfBitsTuple> programcandidatesOfCycle = new ArrayList<>();
+				
+				if( verbosity > 0 )   System.out.format("main : initiate cycle #=%d\n", cycleCnt);
+
+				int currentCycleCnt = cycleCnt;
+				cycleCnt++;
+				
+				{ // generate programs
+					// table of instructions used to generate programs
+					InstrCode[] instructionCandidates = new InstrCode[5];
+					instructionCandidates[0] = instrLookupTable.lookupIdxByExactHumanName("DUP");
+					instructionCandidates[1] = instrLookupTable.lookupIdxByExactHumanName("CMPGTZEROPOP");
+					instructionCandidates[2] = instrLookupTable.lookupIdxByExactHumanName("XCHG");
+					instructionCandidates[3] = instrLookupTable.lookupIdxByExactHumanName("MULVALUE -1");
+					instructionCandidates[4] = instrLookupTable.lookupIdxByExactHumanName("ADD_R(2)");
+
+
+
+					// number of generated programs per cycle has to be limited because we have to give a chance to the compressor to bias the search
+					long numberOfGeneratedProgramsPerCycle; // = 2_000_000; // for testing // 15_000_000; // 1_000_000;
+					numberOfGeneratedProgramsPerCycle = (long)(numberOfGeneratedProgramsPerCyleBase * Math.pow(currentCycleCnt, numberOfGeneratedProgramsPerCyleExponent));
+					numberOfGeneratedProgramsPerCycle = Math.min(numberOfGeneratedProgramsPerCycle, numberOfGeneratedProgramsPerCyleMax);
+
+					for( long candidateProgramCnt = 0; candidateProgramCnt < numberOfGeneratedProgramsPerCycle; candidateProgramCnt++ ) {
+						if( verbosity > 0 ) {
+							if( (candidateProgramCnt % 10000 ) == 0 ) {
+								System.out.format("main : iterate over enumerated programs #=%d\n", candidateProgramCnt);
+							}
 						}
-					}
 
 
-					compCandidateGen.resetProgram();
+						compCandidateGen.resetProgram();
 
-					////////
-					// generate random program
+						////////
+						// generate random program
 
-					int numberOfFragmentsMin = 2;
-					int numberOfFragmentsMax = 8;
-					// TODO< increase the length as we continue to move over the searchspace >
-					//int numberOfFragmentsOrInstructions = 8; // numberOfFragmentsMin + rng.nextInt(numberOfFragmentsMax - numberOfFragmentsMin /* exclusive->inclusive */+ 1);
-					int numberOfFragmentsOrInstructions = 4; // 8!
+						int numberOfFragmentsMin = 2;
+						int numberOfFragmentsMax = 8;
+						// TODO< increase the length as we continue to move over the searchspace >
+						//int numberOfFragmentsOrInstructions = 8; // numberOfFragmentsMin + rng.nextInt(numberOfFragmentsMax - numberOfFragmentsMin /* exclusive->inclusive */+ 1);
+						int numberOfFragmentsOrInstructions = 4; // 8!
 
-					double SingleInstructionProbability = 0.85; // probability of appending a single instruction
-					int maxFragments = 2; // maximal number of fragments in a single candidate program
+						double SingleInstructionProbability = 0.85; // probability of appending a single instruction
+						int maxFragments = 2; // maximal number of fragments in a single candidate program
 
-					int fragmentMaxLen = 8; // maximal length of a appended fragment
+						int fragmentMaxLen = 8; // maximal length of a appended fragment
 
 
-					int fragmentsCnt = 0; // counter for the fragments
+						int fragmentsCnt = 0; // counter for the fragments
 
-					for( int iFragment = 0; iFragment < numberOfFragmentsOrInstructions; iFragment++ ) {
-						double selectionRng = rng.nextDouble();
+						for( int iFragment = 0; iFragment < numberOfFragmentsOrInstructions; iFragment++ ) {
+							double selectionRng = rng.nextDouble();
 
-						if( selectionRng < SingleInstructionProbability || fragmentsCnt >= maxFragments ) {
-							// TODO< maybe we should probabilisically select the single instructions like done in ALS >
+							if( selectionRng < SingleInstructionProbability || fragmentsCnt >= maxFragments ) {
+								// TODO< maybe we should probabilisically select the single instructions like done in ALS >
 
-							// for now we select the instructions from a table with the potential instructions
+								// for now we select the instructions from a table with the potential instructions
 
-							compCandidateGen.appendInstr(instructionCandidates[rng.nextInt(instructionCandidates.length)], 1.0 / (double)instructionCandidates.length);
-						}
-						else {
-							compCandidateGen.appendRandomSnippetWithMaxLength(fragmentMaxLen);
+								compCandidateGen.appendInstr(instructionCandidates[rng.nextInt(instructionCandidates.length)], 1.0 / (double)instructionCandidates.length);
+							}
+							else {
+								compCandidateGen.appendRandomSnippetWithMaxLength(fragmentMaxLen);
 
-							fragmentsCnt++;
+								fragmentsCnt++;
+							}
 						}
+
+
+						// emit program and add program to the programs of the current cycle
+						programcandidatesOfCycle.add(new ProgramWithNumberOfBitsTuple(compCandidateGen.prgrm));
+
 					}
 
 
-					// emit program and add program to the programs of the current cycle
-					programcandidatesOfCycle.add(new ProgramWithNumberOfBitsTuple(compCandidateGen.prgrm));
 
 				}
 
 
 
-			}
 
 
+				////////////////
+	 			////////////////
+				// compress each program and store the # of bits it needs
+				boolean compress = false;
 
+				// TODO OPTIMIZATION< parallelize this >
+				int compressedProgramCnt = -1; // to keep track of the progress
+				for (ProgramWithNumberOfBitsTuple iProgramWNumberOfBits : programcandidatesOfCycle) {
+					if (compress && verbosity > 0) {
+						if ((compressedProgramCnt % 500) == 0) {
+							System.out.format("main : compress programs #=%d\n", compressedProgramCnt);
+						}
+					}
 
+					if (compress) {
+						hashBasedProgramCompressor.resetSecondaryAndCompressSecondary(iProgramWNumberOfBits.program);
 
-			////////////////
- 			////////////////
-			// compress each program and store the # of bits it needs
-			boolean compress = false;
+						iProgramWNumberOfBits.numberOfBits = hashBasedProgramCompressor.retNumberOfCompressedBits();
 
-			// TODO OPTIMIZATION< parallelize this >
-			int compressedProgramCnt = -1; // to keep track of the progress
-			for (ProgramWithNumberOfBitsTuple iProgramWNumberOfBits : programcandidatesOfCycle) {
-				if (compress && verbosity > 0) {
-					if ((compressedProgramCnt % 500) == 0) {
-						System.out.format("main : compress programs #=%d\n", compressedProgramCnt);
+						compressedProgramCnt++;
 					}
 				}
 
-				if (compress) {
-					hashBasedProgramCompressor.resetSecondaryAndCompressSecondary(iProgramWNumberOfBits.program);
+				ProgramWithNumberOfBitsTuple[] programcandidatesOfCycleAsArr = new ProgramWithNumberOfBitsTuple[programcandidatesOfCycle.size()];
+				for (int idx = 0; idx < programcandidatesOfCycle.size(); idx++) {
+					programcandidatesOfCycleAsArr[idx] = programcandidatesOfCycle.get(idx);
+				}
+
 
-					iProgramWNumberOfBits.numberOfBits = hashBasedProgramCompressor.retNumberOfCompressedBits();
 
-					compressedProgramCnt++;
-				}
-			}
 
-			ProgramWithNumberOfBitsTuple[] programcandidatesOfCycleAsArr = new ProgramWithNumberOfBitsTuple[programcandidatesOfCycle.size()];
-			for (int idx = 0; idx < programcandidatesOfCycle.size(); idx++) {
-				programcandidatesOfCycleAsArr[idx] = programcandidatesOfCycle.get(idx);
-			}
 
 
 
+				////////////////
+	 			////////////////
+	 			if( true ) { // sort all programs after the # of required bits
+					if( verbosity > 0 )   System.out.format("main : start sort of program candidates\n");
 
+					// sort all programs after the # of required bits
+					Arrays.sort(programcandidatesOfCycleAsArr);
 
+					if( verbosity > 0 )   System.out.format("main : finished sort of program candidates\n");
+	 			}
+				
 
 
-			////////////////
- 			////////////////
- 			if( true ) { // sort all programs after the # of required bits
-				if( verbosity > 0 )   System.out.format("main : start sort of program candidates\n");
 
-				// sort all programs after the # of required bits
-				Arrays.sort(programcandidatesOfCycleAsArr);
+	 			////////////////
+	 			////////////////
+				// iterate over all programs in increasing # of bits and test the program for the fitness
+				SimCtx simCtx = new SimCtx();
+				simCtx.init(instrLookupTable);
+				simCtx.enableFusion(superinstructionFusion);
+				simCtx.interpreterProfiler = interpreterProfiler;
+				simCtx.programResultCache = programResultCache;
+				simCtx.behavioralFingerprintSet = behavioralFingerprintSet;
+
+				{
+					if( verbosity > 0 )   System.out.format("main : start evaluation of program candidates\n");
+
+					// the programs are checked and rewritten in order, the simulation of a block of programs is done in parallel
+					// the results are checked in order, so the found solution is the same as in a sequential evaluation if the behavioral duplicates are not skipped
+					int checkedProgramInThisCylceCnt = 0;
+					for( int blockStartIdx = 0; blockStartIdx < programcandidatesOfCycleAsArr.length; blockStartIdx += simulationBlockSize ) {
+						int blockEndIdx = Math.min(blockStartIdx + simulationBlockSize, programcandidatesOfCycleAsArr.length);
+
+						SimCtx.EnvImpl[] envImplsOfBlock = new SimCtx.EnvImpl[blockEndIdx - blockStartIdx];
+						List<SimulationTask> simulationTasks = new ArrayList<>();
+						for( int idx = blockStartIdx; idx < blockEndIdx; idx++ ) {
+							SimCtx.EnvImpl envImpl = simCtx.prepare(programcandidatesOfCycleAsArr[idx].program);
+							envImplsOfBlock[idx - blockStartIdx] = envImpl;
+							if( envImpl != null )   simulationTasks.add(new SimulationTask(simCtx, envImpl));
+						}
 
-				if( verbosity > 0 )   System.out.format("main : finished sort of program candidates\n");
- 			}
-			
+						List<Future<Boolean>> simulationResults = simulationExecutor.invokeAll(simulationTasks);
 
+						int simulationResultIdx = 0;
+						for( int idx = blockStartIdx; idx < blockEndIdx; idx++ ) {
+							ProgramWithNumberOfBitsTuple iProgramWithNumberOfBits = programcandidatesOfCycleAsArr[idx];
+							SimCtx.EnvImpl envImpl = envImplsOfBlock[idx - blockStartIdx];
 
+							if( verbosity > 0 ) {
+								if( (checkedProgramInThisCylceCnt % 1000 ) == 0 ) {
+									System.out.format("main : checked programs #=%d\n", checkedProgramInThisCylceCnt);
+								}
+							}
 
- 			////////////////
- 			////////////////
-			// iterate over all programs in increasing # of bits and test the program for the fitness
-			SimCtx simCtx = new SimCtx();
-			simCtx.init(instrLookupTable);
+							boolean passed = envImpl != null && simulationResults.get(simulationResultIdx++).get();
 
-			{
-				if( verbosity > 0 )   System.out.format("main : start evaluation of program candidates\n");
+							// a program with the behavior of a program before it wasn't simulated and didn't pass
+							// the result of a simulated program is kept, even if a program before it turned out to have the same fingerprint
+							if( envImpl != null && envImpl.fingerprint != null ) {
+								simCtx.fingerprintedProgramsCnt++;
+								if( envImpl.isSkippedDuplicate )   simCtx.skippedBehavioralDuplicatesCnt++;
+							}
 
-				int checkedProgramInThisCylceCnt = 0;
-				for( ProgramWithNumberOfBitsTuple iProgramWithNumberOfBits : programcandidatesOfCycleAsArr ) {
-					if( verbosity > 0 ) {
-						if( (checkedProgramInThisCylceCnt % 1000 ) == 0 ) {
-							System.out.format("main : checked programs #=%d\n", checkedProgramInThisCylceCnt);
-						}
-					}
+							if( envImpl != null && envImpl.mustPass ) {
+								System.out.println(passed);
+								System.exit(0);
+							}
 
-					if( checkProgramSolvesProblem(simCtx, iProgramWithNumberOfBits.program) ) {
-						if( verbosity > 0 )   System.out.format("main : found solution, after #tries=%d!\n", numberOfTriedPrograms);
+							if( passed ) {
+								if( verbosity > 0 )   System.out.format("main : found solution, after #tries=%d!\n", numberOfTriedPrograms);
 
-						// dump program
-						if( verbosity > 1 ) {
+								// dump program
+								if( verbosity > 1 ) {
 
-							for( InstrCode iCode : iProgramWithNumberOfBits.program.instrs ) {
-								System.out.format("   %s", instrLookupTable.lookupByIdx(iCode.instrIdx).retExactHumanName());
+									for( InstrCode iCode : iProgramWithNumberOfBits.program.instrs ) {
+										System.out.format("   %s", instrLookupTable.lookupByIdx(iCode.instrIdx).retExactHumanName());
+									}
+
+									//interpreter.instrLookup.lookupByIdx(program.instrs.get(0).instrIdx).retExactHumanName()
+								}
+
+								return;
 							}
 
-							//interpreter.instrLookup.lookupByIdx(program.instrs.get(0).instrIdx).retExactHumanName()
+							checkedProgramInThisCylceCnt++;
+							numberOfTriedPrograms++;
 						}
-
-						return;
 					}
 
-					checkedProgramInThisCylceCnt++;
-					numberOfTriedPrograms++;
+					if( verbosity > 0 )   System.out.format("main : finished evaluation of program candidates\n");
+					if( verbosity > 0 )   System.out.format("main : skipped always failing programs #=%d\n", simCtx.skippedProgramsCnt);
+					if( verbosity > 0 )   System.out.format("main : skipped nonterminating programs #=%d\n", simCtx.skippedInfiniteProgramsCnt);
+					if( verbosity > 0 )   System.out.format("main : skipped duplicate programs #=%d (removed instructions #=%d)\n", simCtx.skippedDuplicateProgramsCnt, simCtx.removedInstrsCnt);
+					if( verbosity > 0 && behavioralFingerprintSet != null )   System.out.format("main : skipped behavioral duplicates #=%d of fingerprinted programs #=%d, dedup ratio=%.3f (behavior classes #=%d)\n", simCtx.skippedBehavioralDuplicatesCnt, simCtx.fingerprintedProgramsCnt, simCtx.fingerprintedProgramsCnt == 0 ? 0.0 : (double)simCtx.skippedBehavioralDuplicatesCnt / (double)simCtx.fingerprintedProgramsCnt, behavioralFingerprintSet.retClassesCnt());
+					if( verbosity > 0 && programResultCache != null )   System.out.format("main : program result cache hits #=%d misses #=%d evictions #=%d hit ratio=%.3f\n", programResultCache.hitsCnt.sum(), programResultCache.missesCnt.sum(), programResultCache.evictionsCnt.sum(), programResultCache.retHitRatio());
+
+					if( interpreterProfiler != null ) {
+						System.out.format("main : interpreter profile of cycle #=%d\n", currentCycleCnt);
+						System.out.print(interpreterProfiler.retTable(simCtx.interpreter.instrLookup));
+						interpreterProfiler.reset();
+					}
 				}
-
-				if( verbosity > 0 )   System.out.format("main : finished evaluation of program candidates\n");
 			}
 		}
+		finally {
+			simulationExecutor.shutdownNow();
+		}
 
 	}
 
@@ -921,20 +1011,97 @@ class ExpAdaptiveCompressedSearch {
 		return simCtx.checkProgramSolvesProblem(program);
 	}
 
+	// simulation of a prepared program by a thread of the executor
+	static class SimulationTask implements Callable<Boolean> {
+		public SimCtx simCtx;
+		public SimCtx.EnvImpl envImpl;
+
+		public SimulationTask(SimCtx simCtx, SimCtx.EnvImpl envImpl) {
+			this.simCtx = simCtx;
+			this.envImpl = envImpl;
+		}
+
+		@Override
+		public Boolean call() {
+			return simCtx.simulate(envImpl);
+		}
+	}
+
 
 	static class SimCtx {
-		Instrs.Interpreter interpreter;
+		Instrs.Interpreter interpreter; // is shared by the threads, each thread interprets with its own ctx
+		StackEffectVerifier verifier;
+
+		InterpreterProfiler interpreterProfiler; // is null if the profiling is disabled
+
+		// ctx of each thread which simulates programs
+		ThreadLocal<Instrs.Ctx> ctxOfThread = new ThreadLocal<Instrs.Ctx>() {
+			@Override
+			protected Instrs.Ctx initialValue() {
+				Instrs.Ctx ctx = new Instrs.Ctx();
+				ctx.arrayCtx = new DefaultArrCtx();
+				if( interpreterProfiler != null )   interpreterProfiler.enable(ctx, interpreter.instrLookup);
+				return ctx;
+			}
+		};
+
+		ControlFlowAnalysis controlFlowAnalysis;
+		SuperinstructionFusion fusion; // is null if the programs are not fused
+		PeepholeOptimizer peepholeOptimizer;
+		ProgramResultCache programResultCache; // is null if the results are not memoized
+		PurityAnalysis purityAnalysis;
+		BehavioralFingerprintSet behavioralFingerprintSet; // is null if the behavioral duplicates are not skipped
+
+		// probe inputs of the fingerprints, negatives, zero, positives and the values at and around the decision points -1 and 1 of the control
+		static final double[] PROBEINPUTS = new double[]{-100.0, -10.0, -3.0, -1.001, -1.0, -0.999, -0.5, -0.001, 0.0, 0.001, 0.5, 0.999, 1.0, 1.001, 3.0, 10.0, 100.0};
+
+		Set<ProgramKey> simulatedPrograms = new HashSet<>(); // optimized programs which were already simulated
+
+		public long skippedProgramsCnt = 0; // number of programs which were not simulated because they always fail
+		public long skippedInfiniteProgramsCnt = 0; // number of programs which were not simulated because they never terminate
+		public long skippedDuplicateProgramsCnt = 0; // number of programs which were not simulated because the optimized program was already simulated
+		public long removedInstrsCnt = 0; // number of instructions removed by the peephole optimizer
+		public long fingerprintedProgramsCnt = 0; // number of checked programs with a fingerprint
+		public long skippedBehavioralDuplicatesCnt = 0; // number of checked programs which were not simulated because a program before them has the same fingerprint
 
 		public void init(Instrs.InstructionLookupTable instrLookupTable) {
 			interpreter = new ls.Instrs.Interpreter();
 
 			interpreter.instrLookup = instrLookupTable;
 
-			interpreter.ctx = new ls.Instrs.Ctx();
-			interpreter.ctx.arrayCtx = new DefaultArrCtx();
+			verifier = new StackEffectVerifier(instrLookupTable);
+			verifier.configRequireResult = true; // runProgram() needs the result on the stack
+
+			controlFlowAnalysis = new ControlFlowAnalysis(instrLookupTable);
+
+			peepholeOptimizer = new PeepholeOptimizer(instrLookupTable);
+
+			purityAnalysis = new PurityAnalysis(instrLookupTable);
+		}
+
+		// programs are rewritten with the superinstructions before they are simulated
+		public void enableFusion(SuperinstructionFusion fusion) {
+			this.fusion = fusion;
+			interpreter.instrLookup = fusion.fusedTable;
 		}
 
 		public boolean checkProgramSolvesProblem(Program<InstrCode> program) {
+			EnvImpl envImpl = prepare(program);
+			if( envImpl == null )   return false;
+
+			boolean passed = simulate(envImpl);
+
+			if( envImpl.mustPass ) {
+				System.out.println(passed);
+				System.exit(0);
+			}
+
+			return passed;
+		}
+
+		// checks and rewrites the program before it is simulated, returns null if the program doesn't have to be simulated
+		// is not thread safe
+		public EnvImpl prepare(Program<InstrCode> program) {
 			// HACK HACK HACK HACK< for checking if it produces the "right" program >
 			// TODO< check for the right program >
 
@@ -985,15 +1152,86 @@ class ExpAdaptiveCompressedSearch {
 				envImpl.currentProgramInstrsIndices[i] = program.instrs.get(i).instrIdx;
 			}
 
-			boolean passed = iterate(envImpl);
+			// programs which fail for sure don't need to get simulated
+			if( !mustPass && verifier.verify(envImpl.currentProgramInstrsIndices, 1) == StackEffectVerifier.VERDICT_ALWAYSFAILS ) {
+				skippedProgramsCnt++;
+				return null;
+			}
 
-			if( mustPass ) {
-				System.out.println(passed);
-				System.exit(0);
+			// programs are simulated in the canonical optimized form, programs with the same optimized form behave the same
+			int[] optimizedProgram = peepholeOptimizer.optimize(envImpl.currentProgramInstrsIndices, 1);
+			removedInstrsCnt += envImpl.currentProgramInstrsIndices.length - optimizedProgram.length;
+			if( !mustPass && !simulatedPrograms.add(new ProgramKey(optimizedProgram)) ) {
+				skippedDuplicateProgramsCnt++;
+				return null;
 			}
+			envImpl.currentProgramInstrsIndices = optimizedProgram;
 
+			// programs which never terminate run out of time for sure
+			controlFlowAnalysis.analyse(envImpl.currentProgramInstrsIndices, 1);
+			if( !mustPass && controlFlowAnalysis.isProvablyInfinite ) {
+				skippedInfiniteProgramsCnt++;
+				return null;
+			}
 
-			return passed;
+			// programs with a bounded number of steps don't need more time than that
+			envImpl.stepBudget = controlFlowAnalysis.retTightenedBudget(envImpl.stepBudget);
+
+			// the result of a pure program only depends on the input, it is memoized
+			// the hash is of the optimized program before the fusion, the superinstructions don't change the result
+			boolean isPure = purityAnalysis.isPure(envImpl.currentProgramInstrsIndices);
+			if( programResultCache != null && isPure ) {
+				envImpl.programResultCache = programResultCache;
+				envImpl.programHash = ProgramResultCache.retProgramHash(envImpl.currentProgramInstrsIndices, envImpl.stepBudget);
+			}
+
+			// pure programs are fingerprinted before the simulation, the ordinal is the order of the checks
+			if( behavioralFingerprintSet != null && isPure && !mustPass ) {
+				envImpl.isFingerprinted = true;
+				envImpl.fingerprintOrdinal = behavioralFingerprintSet.retNextOrdinal();
+			}
+
+			if( fusion != null ) {
+				envImpl.currentProgramInstrsIndices = fusion.rewrite(envImpl.currentProgramInstrsIndices);
+			}
+
+			envImpl.mustPass = mustPass;
+			return envImpl;
+		}
+
+		// simulates the prepared program with the ctx of the current thread
+		// is thread safe
+		public boolean simulate(EnvImpl envImpl) {
+			envImpl.ctx = ctxOfThread.get();
+
+			if( envImpl.isFingerprinted ) {
+				envImpl.fingerprint = envImpl.retFingerprint(PROBEINPUTS);
+				if( !behavioralFingerprintSet.add(envImpl.fingerprint, envImpl.fingerprintOrdinal) ) { // a program before it has the same behavior
+					envImpl.isSkippedDuplicate = true;
+					return false;
+				}
+			}
+
+			return iterate(envImpl);
+		}
+
+		// program as key of a set
+		static class ProgramKey {
+			public int[] instrsIndices;
+
+			public ProgramKey(int[] instrsIndices) {
+				this.instrsIndices = instrsIndices;
+			}
+
+			@Override
+			public boolean equals(Object other) {
+				return other instanceof ProgramKey && Arrays.equals(instrsIndices, ((ProgramKey)other).instrsIndices);
+			}
+
+			@Override
+			public int hashCode() {
+				return Arrays.hashCode(instrsIndices);
+			}
 		}
 
 		// returns whenever the score was high enough to be a winner
@@ -1028,14 +1266,26 @@ class ExpAdaptiveCompressedSearch {
 		static class EnvImpl {
 			public env.Pong pongEnv;
 			public Instrs.Interpreter interpreter;
+			public Instrs.Ctx ctx; // ctx of the thread which simulates the program
 
 			boolean fatalError;
+			boolean mustPass; // HACK< the program has to be simulated and the result is printed >
+
+			ProgramResultCache programResultCache; // is null if the program is not pure or the results are not memoized
+			long programHash; // key of the program in the programResultCache
+
+			boolean isFingerprinted; // is the fingerprint computed before the simulation
+			long fingerprintOrdinal; // order of the program in the BehavioralFingerprintSet
+			BehavioralFingerprintSet.Fingerprint fingerprint; // is null if the program was not fingerprinted
+			boolean isSkippedDuplicate; // was the simulation skipped because a program before it has the same fingerprint
 
 			int[] currentProgramInstrsIndices; // current program
 
 			float accumulatedReward = 0.0f;
 			int remainingSteps;
 
+			int stepBudget = 20; // TODO< calculate with ALS formula or a approximation of it >
+
 			public void initEnv() {
 				pongEnv = new Pong();
 				pongEnv.ballVelX = 0.7f;
@@ -1065,30 +1315,32 @@ class ExpAdaptiveCompressedSearch {
 
 			// setup arguments for program, run the program and check/interpret the result
 			void runProgram() {
-				interpreter.ctx.reset();
-
-				interpreter.ctx.remainingSteps = 20; // TODO< calculate with ALS formula or a approximation of it >
-
 				this.fatalError = false;
 
-				// push difference between ball and paddle
+				// difference between ball and paddle is the only argument
 				float ballPaddleDiff = pongEnv.paddleX - pongEnv.ballX;
-				interpreter.ctx.stack.push((double)ballPaddleDiff);
 
-				// interpret
-				boolean fatalError = interpreter.interpret(currentProgramInstrsIndices);
-				this.fatalError = fatalError;
-				if( this.fatalError )   return;
+				long result;
+				if( programResultCache != null ) {
+					result = programResultCache.lookup(programHash, ballPaddleDiff);
+					if( result == ProgramResultCache.RESULTMISS ) {
+						result = interpretProgram(ballPaddleDiff);
+						programResultCache.store(programHash, ballPaddleDiff, result);
+					}
+				}
+				else {
+					result = interpretProgram(ballPaddleDiff);
+				}
 
 				// work with result
-				if( interpreter.ctx.stack.empty() ) {
+				if( result == ProgramResultCache.RESULTFAILURE ) {
 					this.fatalError = true;
 					return;
 				}
 
 				pongEnv.control = 0;
 
-				double controlRes = interpreter.ctx.stack.peek();
+				double controlRes = Double.longBitsToDouble(result);
 				if( Math.abs(1.0 - controlRes) < 0.001 ) {
 					pongEnv.control = 1;
 				}
@@ -1096,6 +1348,29 @@ class ExpAdaptiveCompressedSearch {
 					pongEnv.control = -1;
 				}
 			}
+
+			// runs the program on each probe input, see BehavioralFingerprintSet
+			BehavioralFingerprintSet.Fingerprint retFingerprint(double[] probeInputs) {
+				BehavioralFingerprintSet.FingerprintBuilder fingerprintBuilder = new BehavioralFingerprintSet.FingerprintBuilder();
+				for( double iProbeInput : probeInputs )   fingerprintBuilder.addProbeResult(interpretProgram(iProbeInput));
+				return fingerprintBuilder.retFingerprint();
+			}
+
+			// returns the bits of the value on top of the stack, ProgramResultCache.RESULTFAILURE if the interpretation failed or the stack is empty
+			long interpretProgram(double ballPaddleDiff) {
+				ctx.reset();
+
+				ctx.remainingSteps = stepBudget;
+
+				ctx.stack.push(ballPaddleDiff);
+
+				// interpret
+				if( !interpreter.interpret(ctx, currentProgramInstrsIndices) )   return ProgramResultCache.RESULTFAILURE;
+
+				if( ctx.stack.empty() )   return ProgramResultCache.RESULTFAILURE;
+
+				return Double.doubleToLongBits(ctx.stack.peek());
+			}
 		}
 	}
 }
@@ -82,9 +82,7 @@ public class ArrayInstrs {
 			int arrLength = ctx.arrayCtx.retArrLength(arrayIdx);
 			if( !ctx.arrayCtx.isOk() )   return false; // return if the array didn't exist
 
-			ctx.stack.push((double)arrLength);
-
-			return true;
+			return ctx.stack.push((double)arrLength);
 		}
 
 		public String retHumanName() {
@@ -134,9 +132,7 @@ public class ArrayInstrs {
 		public boolean exec(Instrs.Ctx ctx) {
 			int idx = ctx.arrayCtx.retArrIdx(arrayIdx);
 			if( !ctx.arrayCtx.isOk() )   return false;
-			ctx.stack.push((double)idx);
-
-			return true;
+			return ctx.stack.push((double)idx);
 		}
 
 		public String retHumanName() {
@@ -186,9 +182,7 @@ public class ArrayInstrs {
 			double val = ctx.arrayCtx.retAt(idx, arrayIdx);
 			if( !ctx.arrayCtx.isOk() )   return false;
 
-			ctx.stack.push(val);
-
-			return true;
+			return ctx.stack.push(val);
 		}
 
 		public String retHumanName() {
@@ -215,7 +209,7 @@ public class ArrayInstrs {
 			int idx = ctx.arrayCtx.retArrIdx(arrayIdx);
 			if( !ctx.arrayCtx.isOk() )   return false; // return if the array didn't exist
 			
-			ctx.arrayCtx.setArrIdx(idx, idx + Math.round(rel));
+			ctx.arrayCtx.setArrIdx(idx + rel, arrayIdx);
 			// NOTE< we don't check if the op was successful because the next instruction should involve a rangecheck >
 
 			return true;
@@ -0,0 +1,79 @@
+package ls;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// set of the behavior classes of evaluated programs
+//
+// the behavior of a pure program is approximated by the results on a fixed vector of probe inputs
+// the results and the bitmask of the failed probes are hashed into a 128 bit fingerprint
+// programs with the same fingerprint are assumed to compute the same function, only the first program of a class has to be evaluated
+// this is a heuristic, programs which differ only on inputs which are not probed are treated as duplicates
+//
+// each program gets a ordinal in the order of the evaluation, a class belongs to the lowest ordinal which was added to it so far
+// the programs are fingerprinted concurrently, so which programs are skipped depends on the scheduling of the threads
+// a program which is added before a program with a lower ordinal of its class isn't skipped, only the skipped programs count as duplicates
+public class BehavioralFingerprintSet {
+	public static class Fingerprint {
+		public long hash0;
+		public long hash1;
+
+		public Fingerprint(long hash0, long hash1) {
+			this.hash0 = hash0;
+			this.hash1 = hash1;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Fingerprint && hash0 == ((Fingerprint)other).hash0 && hash1 == ((Fingerprint)other).hash1;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int)hash0;
+		}
+	}
+
+	// accumulates the results of the probes into a fingerprint
+	public static class FingerprintBuilder {
+		long hash0 = 0x243f6a8885a308d3L;
+		long hash1 = 0x13198a2e03707344L;
+		long failedProbesMask; // bit of each failed probe
+		int probesCnt;
+
+		// /param resultBits bits of the result or ProgramResultCache.RESULTFAILURE
+		public void addProbeResult(long resultBits) {
+			assert probesCnt < 64;
+			if( resultBits == ProgramResultCache.RESULTFAILURE )   failedProbesMask |= 1L << probesCnt;
+			hash0 = ProgramResultCache.mix(hash0 * 31 + resultBits);
+			hash1 = ProgramResultCache.mix((hash1 ^ resultBits) * 0x9e3779b97f4a7c15L + probesCnt);
+			probesCnt++;
+		}
+
+		public Fingerprint retFingerprint() {
+			return new Fingerprint(ProgramResultCache.mix(hash0 ^ failedProbesMask), ProgramResultCache.mix(hash1 + failedProbesMask * 0xc2b2ae3d27d4eb4fL));
+		}
+	}
+
+	ConcurrentHashMap<Fingerprint, Long> firstOrdinalOfClass = new ConcurrentHashMap<>();
+	AtomicLong nextOrdinal = new AtomicLong();
+
+	public long retNextOrdinal() {
+		return nextOrdinal.getAndIncrement();
+	}
+
+	// adds the program with the ordinal to the class of the fingerprint
+	// returns false if a program with a lower ordinal is already in the class, the program doesn't have to be evaluated then
+	public boolean add(Fingerprint fingerprint, long ordinal) {
+		for(;;) {
+			Long firstOrdinal = firstOrdinalOfClass.putIfAbsent(fingerprint, ordinal);
+			if( firstOrdinal == null )   return true;
+			if( firstOrdinal < ordinal )   return false;
+			if( firstOrdinal == ordinal || firstOrdinalOfClass.replace(fingerprint, firstOrdinal, ordinal) )   return true;
+		}
+	}
+
+	public int retClassesCnt() {
+		return firstOrdinalOfClass.size();
+	}
+}
@@ -0,0 +1,70 @@
+package ls;
+
+import exec.ctx.DefaultArrCtx;
+import exec.ctx.PersistentArrCtx;
+import misc.Timer;
+
+// micro benchmark of the array contexts for branching evaluation
+// each branch restores the shared state, writes to the array and reads from it
+// DefaultArrCtx copies the whole array at the first write of each branch, PersistentArrCtx copies only the paths to the changed leaves
+class BenchArrCtx {
+	public static void main(String[] args) {
+		int[] arraySizes = new int[]{10, 100, 1000, 10000, 100000};
+		final int writesPerBranch = 4;
+
+		System.out.format("%-10s %-28s %-28s %-22s %-22s\n", "size", "DefaultArrCtx ns/branch", "PersistentArrCtx ns/branch", "DefaultArrCtx ns/read", "PersistentArrCtx ns/read");
+		for( int iArraySize : arraySizes ) {
+			double[] nsPerBranch = new double[2];
+			double[] nsPerRead = new double[2];
+			for( int implementation = 0; implementation < 2; implementation++ ) {
+				Instrs.IArrayCtx arrayCtx = implementation == 0 ? new DefaultArrCtx() : new PersistentArrCtx();
+				for( int idx = 0; idx < iArraySize; idx++ )   arrayCtx.append((double)idx, 0);
+				Object sharedState = arrayCtx.retSnapshot();
+
+				int branches = Math.max(1000, 20000000 / iArraySize);
+				branches = Math.min(branches, 200000);
+				for( int pass = 0; pass < 2; pass++ ) { // first pass is the warmup
+					nsPerBranch[implementation] = benchBranches(arrayCtx, sharedState, iArraySize, writesPerBranch, branches);
+					nsPerRead[implementation] = benchReads(arrayCtx, iArraySize, 2000000);
+				}
+			}
+
+			System.out.format("%-10d %-28.1f %-28.1f %-22.2f %-22.2f\n", iArraySize, nsPerBranch[0], nsPerBranch[1], nsPerRead[0], nsPerRead[1]);
+		}
+	}
+
+	// restores the shared state, deletes and appends at pseudo random indices
+	static double benchBranches(Instrs.IArrayCtx arrayCtx, Object sharedState, int arraySize, int writesPerBranch, int branches) {
+		double checksum = 0.0;
+		int seed = 1;
+		Timer timer = new Timer();
+		timer.start();
+		for( int branch = 0; branch < branches; branch++ ) {
+			arrayCtx.restoreSnapshot(sharedState);
+			for( int write = 0; write < writesPerBranch; write++ ) {
+				seed = seed * 1103515245 + 12345;
+				int idx = (seed >>> 8) % (arraySize - write);
+				checksum += arrayCtx.retAt(idx, 0);
+				arrayCtx.delAtIdx(idx, 0);
+				arrayCtx.append((double)branch, 0);
+			}
+		}
+		timer.stop();
+		if( checksum == -1.0 )   System.out.println(checksum); // keeps the reads alive
+		return (double)(timer.retElapsedMicroseconds() * 1000) / (double)branches;
+	}
+
+	static double benchReads(Instrs.IArrayCtx arrayCtx, int arraySize, int reads) {
+		double checksum = 0.0;
+		int seed = 1;
+		Timer timer = new Timer();
+		timer.start();
+		for( int read = 0; read < reads; read++ ) {
+			seed = seed * 1103515245 + 12345;
+			checksum += arrayCtx.retAt((seed >>> 8) % arraySize, 0);
+		}
+		timer.stop();
+		if( checksum == -1.0 )   System.out.println(checksum);
+		return (double)(timer.retElapsedMicroseconds() * 1000) / (double)reads;
+	}
+}
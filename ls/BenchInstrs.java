@@ -0,0 +1,341 @@
+package ls;
+
+import java.lang.management.ManagementFactory;
+
+import exec.ctx.DefaultArrCtx;
+import instr.InstrCode;
+import instr.HardwiredPrograms;
+import misc.Timer;
+
+// micro benchmark of the interpreter
+// measures the cost per executed instruction and the allocated bytes per interpret() call
+class BenchInstrs {
+	public static void main(String[] args) throws Exception {
+		BenchInstrs bench = new BenchInstrs();
+		bench.init();
+
+		for( int engine = 0; engine < ENGINENAMES.length; engine++ ) {
+			bench.engine = engine;
+			System.out.format("%s\n", ENGINENAMES[engine]);
+
+			bench.benchProgram("pong controller", bench.retPongProgram(), 1000000);
+			bench.benchProgram("2d quadratic dist", retProgram(HardwiredPrograms.ret2dQuadraticDist(bench.instrLookupTable)), 1000000);
+			bench.benchProgram("math max", retProgram(HardwiredPrograms.retMathMax(bench.instrLookupTable)), 1000000);
+		}
+
+		System.out.format("Instrs.BatchInterpreter\n");
+		bench.benchBatch("pong controller", bench.retPongProgram(), 1024, 1000);
+		bench.benchBatch("2d quadratic dist", retProgram(HardwiredPrograms.ret2dQuadraticDist(bench.instrLookupTable)), 1024, 1000);
+		bench.benchBatch("math max", retProgram(HardwiredPrograms.retMathMax(bench.instrLookupTable)), 1024, 1000);
+
+		bench.benchBatchSizes("2d quadratic dist", retProgram(HardwiredPrograms.ret2dQuadraticDist(bench.instrLookupTable)));
+
+		for( int length = 2; length <= 5; length++ )   bench.benchPrefixSharing(length);
+
+		bench.benchXMacro("2d quadratic dist", retProgram(HardwiredPrograms.ret2dQuadraticDist(bench.instrLookupTable)), 1000000);
+		bench.benchXMacro("math max", retProgram(HardwiredPrograms.retMathMax(bench.instrLookupTable)), 1000000);
+	}
+
+	Instrs.InstructionLookupTable instrLookupTable;
+	Instrs.Interpreter interpreter;
+	SwitchInterpreter switchInterpreter; // shares the ctx with interpreter
+	CompilingInterpreter compilingInterpreter; // shares the ctx with interpreter
+
+	static final String[] ENGINENAMES = new String[]{"Instrs.Interpreter", "SwitchInterpreter", "CompilingInterpreter"};
+	int engine = 0; // index into ENGINENAMES
+
+	public void init() {
+		instrLookupTable = new Instrs.InstructionLookupTable();
+		instrLookupTable.table = new Instrs.IInstr[] {
+			new Instrs.JMP(0),
+			new Instrs.ADD2(true),
+			new Instrs.MUL2(true),
+			new Instrs.DIV2(true),
+			new Instrs.CMPGTZERO(false),
+			new Instrs.CMPGTZERO(true),
+			new Instrs.CMPGT(false),
+			new Instrs.PUSHCONST("PUSH -1", -1),
+			new Instrs.XCHG(),
+			new Instrs.DUP(),
+			new Instrs.MULVALUE(-1, "-1"),
+			new Instrs.PUSHCONST("PUSH 0", 0),
+			new Instrs.PUSHCONST("PUSH 1", 1),
+			new Instrs.PREDIGNOREIFFLAG(2, true),
+			new Instrs.PREDIGNOREIFFLAG(4, true),
+			new Instrs.JMP(1),
+			new Instrs.POP(),
+			new Instrs.XCHG(2),
+		};
+
+		interpreter = new Instrs.Interpreter();
+		interpreter.instrLookup = instrLookupTable;
+		interpreter.ctx = new Instrs.Ctx();
+		interpreter.ctx.arrayCtx = new DefaultArrCtx();
+
+		switchInterpreter = new SwitchInterpreter(instrLookupTable);
+		switchInterpreter.ctx = interpreter.ctx;
+
+		compilingInterpreter = new CompilingInterpreter(instrLookupTable);
+		compilingInterpreter.ctx = interpreter.ctx;
+	}
+
+	boolean interpret(int[] program) {
+		if( engine == 1 )   return switchInterpreter.interpret(program);
+		if( engine == 2 )   return compilingInterpreter.interpret(program);
+		return interpreter.interpret(program);
+	}
+
+	// program which is searched for in ExpAdaptiveCompressedSearch
+	int[] retPongProgram() throws Exception {
+		String[] names = new String[] {
+			"DUP", "CMPGTZEROPOP",
+			"PREDIGNOREIFFLAG 2", "PUSH 0", "JMP 1", "PUSH 1",
+			"XCHG", "MULVALUE -1", "CMPGTZEROPOP",
+			"PREDIGNOREIFFLAG 2", "PUSH 0", "JMP 1", "PUSH -1",
+			"ADD_R(2)"
+		};
+
+		int[] program = new int[names.length];
+		for( int idx = 0; idx < names.length; idx++ ) {
+			program[idx] = instrLookupTable.lookupIdxByExactHumanName(names[idx]).instrIdx;
+		}
+		return program;
+	}
+
+	static int[] retProgram(java.util.List<InstrCode> instrs) {
+		int[] program = new int[instrs.size()];
+		for( int idx = 0; idx < instrs.size(); idx++ )   program[idx] = instrs.get(idx).instrIdx;
+		return program;
+	}
+
+	// runs the program the given number of times with two arguments on the stack
+	void benchProgram(String name, int[] program, int iterations) {
+		// warmup
+		runProgramNTimes(program, iterations);
+
+		long executedInstrs = countExecutedInstrs(program);
+
+		long allocatedBytesBefore = retAllocatedBytesOfCurrentThread();
+		Timer timer = new Timer();
+		timer.start();
+		double checksum = runProgramNTimes(program, iterations);
+		timer.stop();
+		long allocatedBytes = retAllocatedBytesOfCurrentThread() - allocatedBytesBefore;
+
+		double nsPerInstr = (double)(timer.retElapsedMicroseconds() * 1000) / (double)(executedInstrs * iterations);
+		double bytesPerInterpret = (double)allocatedBytes / (double)iterations;
+
+		System.out.format("%-20s ns/instr=%.2f bytes/interpret=%.1f (checksum=%f)\n", name, nsPerInstr, bytesPerInterpret, checksum);
+	}
+
+	double runProgramNTimes(int[] program, int iterations) {
+		double checksum = 0.0;
+		for( int i = 0; i < iterations; i++ ) {
+			interpreter.ctx.reset();
+			interpreter.ctx.remainingSteps = -2;
+			interpreter.ctx.stack.push((double)((i % 7) - 3));
+			interpreter.ctx.stack.push(0.5);
+			if( interpret(program) && !interpreter.ctx.stack.empty() ) {
+				checksum += interpreter.ctx.stack.peek();
+			}
+		}
+		return checksum;
+	}
+
+	// runs the program over a batch of inputs with the BatchInterpreter
+	// the ns/instr are normalized by the number of lanes to be comparable with benchProgram()
+	void benchBatch(String name, int[] program, int nLanes, int iterations) {
+		Instrs.BatchInterpreter batchInterpreter = new Instrs.BatchInterpreter(instrLookupTable);
+
+		double[][] batchArgs = new double[2][nLanes];
+		for( int lane = 0; lane < nLanes; lane++ ) {
+			batchArgs[0][lane] = (double)((lane % 7) - 3);
+			batchArgs[1][lane] = 0.5;
+		}
+
+		// warmup
+		for( int i = 0; i < iterations; i++ )   batchInterpreter.interpret(program, batchArgs, nLanes);
+
+		long executedInstrs = countExecutedInstrs(program);
+
+		long allocatedBytesBefore = retAllocatedBytesOfCurrentThread();
+		Timer timer = new Timer();
+		timer.start();
+		double checksum = 0.0;
+		for( int i = 0; i < iterations; i++ ) {
+			batchInterpreter.interpret(program, batchArgs, nLanes);
+			for( int lane = 0; lane < nLanes; lane++ )   checksum += batchInterpreter.outputs[lane];
+		}
+		timer.stop();
+		long allocatedBytes = retAllocatedBytesOfCurrentThread() - allocatedBytesBefore;
+
+		double nsPerInstr = (double)(timer.retElapsedMicroseconds() * 1000) / (double)(executedInstrs * iterations * nLanes);
+		double bytesPerInterpret = (double)allocatedBytes / (double)(iterations * nLanes);
+
+		System.out.format("%-20s ns/instr=%.2f bytes/interpret=%.1f (checksum=%f, lanes=%d)\n", name, nsPerInstr, bytesPerInterpret, checksum, nLanes);
+	}
+
+	// compares the scalar interpreter with the batch executors for a straight line program for batch sizes from 8 to 4096
+	// prints the ns per lane (one lane is one interpretation of the program)
+	void benchBatchSizes(String name, int[] program) {
+		Instrs.BatchInterpreter batchInterpreter = new Instrs.BatchInterpreter(instrLookupTable);
+		StraightLineExecutor straightLineExecutor = new StraightLineExecutor(instrLookupTable);
+		assert straightLineExecutor.isStraightLine(program);
+
+		System.out.format("%s ns/lane\n", name);
+		System.out.format("%-8s %-20s %-24s %-20s\n", "lanes", "Instrs.Interpreter", "Instrs.BatchInterpreter", "StraightLineExecutor");
+
+		for( int nLanes = 8; nLanes <= 4096; nLanes *= 2 ) {
+			double[][] batchArgs = new double[2][nLanes];
+			for( int lane = 0; lane < nLanes; lane++ ) {
+				batchArgs[0][lane] = (double)((lane % 7) - 3);
+				batchArgs[1][lane] = 0.5;
+			}
+
+			int iterations = Math.max(1, 4000000 / nLanes);
+
+			double[] nsPerLane = new double[3];
+			for( int executor = 0; executor < 3; executor++ ) {
+				for( int pass = 0; pass < 2; pass++ ) { // first pass is the warmup
+					Timer timer = new Timer();
+					timer.start();
+					for( int i = 0; i < iterations; i++ ) {
+						if( executor == 0 ) {
+							for( int lane = 0; lane < nLanes; lane++ ) {
+								interpreter.ctx.reset();
+								interpreter.ctx.remainingSteps = -2;
+								interpreter.ctx.stack.push(batchArgs[0][lane]);
+								interpreter.ctx.stack.push(batchArgs[1][lane]);
+								interpreter.interpret(program);
+							}
+						}
+						else if( executor == 1 )   batchInterpreter.interpret(program, batchArgs, nLanes);
+						else                       straightLineExecutor.interpret(program, batchArgs, nLanes);
+					}
+					timer.stop();
+					nsPerLane[executor] = (double)(timer.retElapsedMicroseconds() * 1000) / ((double)iterations * nLanes);
+				}
+			}
+
+			System.out.format("%-8d %-20.2f %-24.2f %-20.2f\n", nLanes, nsPerLane[0], nsPerLane[1], nsPerLane[2]);
+		}
+	}
+
+	// compares the interpretation of all programs of the length from the start with the PrefixSharingEnumerator
+	// prints the ns per enumerated program
+	void benchPrefixSharing(int length) {
+		final double[] inputs = new double[]{1.0, 0.5};
+		final int nInstrs = instrLookupTable.table.length;
+
+		// counts the successful programs as checksum
+		class CountingVisitor implements PrefixSharingEnumerator.IVisitor {
+			public long successfulCnt;
+
+			public boolean visit(int[] program, boolean isSuccess) {
+				if( isSuccess )   successfulCnt++;
+				return false;
+			}
+		}
+
+		PrefixSharingEnumerator enumerator = new PrefixSharingEnumerator(interpreter, nInstrs);
+		enumerator.remainingSteps = 100;
+
+		double[] nsPerProgram = new double[2];
+		long[] checksums = new long[2];
+		long programsCnt = 0;
+		for( int mode = 0; mode < 2; mode++ ) {
+			for( int pass = 0; pass < 2; pass++ ) { // first pass is the warmup
+				Timer timer = new Timer();
+				timer.start();
+				programsCnt = 0;
+				checksums[mode] = 0;
+				if( mode == 0 ) {
+					LevinSearch levinSearch = new LevinSearch();
+					levinSearch.nInstrs = nInstrs;
+					levinSearch.resize(length);
+					do {
+						interpreter.ctx.reset();
+						interpreter.ctx.remainingSteps = 100;
+						for( double iInput : inputs )   interpreter.ctx.stack.push(iInput);
+						if( interpreter.interpret(levinSearch.arr) )   checksums[mode]++;
+						programsCnt++;
+					} while( !levinSearch.next() );
+				}
+				else {
+					CountingVisitor visitor = new CountingVisitor();
+					enumerator.enumerate(length, inputs, visitor);
+					checksums[mode] = visitor.successfulCnt;
+					programsCnt = 1;
+					for( int idx = 0; idx < length; idx++ )   programsCnt *= nInstrs;
+				}
+				timer.stop();
+				nsPerProgram[mode] = (double)(timer.retElapsedMicroseconds() * 1000) / (double)programsCnt;
+			}
+		}
+
+		System.out.format("prefix sharing length=%d programs=%d ns/program: from start=%.1f shared prefix=%.1f (successful=%d/%d)\n", length, programsCnt, nsPerProgram[0], nsPerProgram[1], checksums[0], checksums[1]);
+	}
+
+	// compares the call of the hardwired program as XMACRO with a pooled execution context, the inlined call and the program itself
+	// prints the ns per interpret() call
+	void benchXMacro(String name, int[] body, int iterations) {
+		Instrs.Ctx.Vm.XMacroSlot slot = new Instrs.Ctx.Vm.XMacroSlot();
+		slot.instrs = new Instrs.IInstr[body.length];
+		for( int idx = 0; idx < body.length; idx++ )   slot.instrs[idx] = instrLookupTable.table[body[idx]];
+
+		Instrs.InstructionLookupTable tableWithCall = new Instrs.InstructionLookupTable();
+		tableWithCall.table = java.util.Arrays.copyOf(instrLookupTable.table, instrLookupTable.table.length + 1);
+		tableWithCall.table[instrLookupTable.table.length] = new Instrs.XMACRO(0);
+
+		java.util.List<Instrs.Ctx.Vm.XMacroSlot> slots = new java.util.ArrayList<>();
+		slots.add(slot);
+		XMacroInliner inliner = new XMacroInliner(tableWithCall, slots, 64);
+
+		Instrs.Interpreter macroInterpreter = new Instrs.Interpreter();
+		macroInterpreter.instrLookup = inliner.inlinedTable;
+		macroInterpreter.xmacroSlots = slots;
+		macroInterpreter.ctx = interpreter.ctx;
+
+		// the call is followed by a NOP, because the call of the last instruction is not inlined
+		int[] callProgram = new int[]{instrLookupTable.table.length, 0};
+		int[] inlinedProgram = inliner.inline(callProgram);
+		int[] plainProgram = java.util.Arrays.copyOf(body, body.length + 1);
+
+		int[][] programs = new int[][]{callProgram, inlinedProgram, plainProgram};
+		double[] nsPerInterpret = new double[programs.length];
+		double[] checksums = new double[programs.length];
+		for( int mode = 0; mode < programs.length; mode++ ) {
+			for( int pass = 0; pass < 2; pass++ ) { // first pass is the warmup
+				Timer timer = new Timer();
+				timer.start();
+				checksums[mode] = 0.0;
+				for( int i = 0; i < iterations; i++ ) {
+					macroInterpreter.ctx.reset();
+					macroInterpreter.ctx.remainingSteps = 100000;
+					macroInterpreter.ctx.stack.push(1.0 + (i & 7));
+					macroInterpreter.ctx.stack.push(0.5);
+					if( macroInterpreter.interpret(programs[mode]) && macroInterpreter.ctx.stack.size() > 0 )   checksums[mode] += macroInterpreter.ctx.stack.peek();
+				}
+				timer.stop();
+				nsPerInterpret[mode] = (double)(timer.retElapsedMicroseconds() * 1000) / (double)iterations;
+			}
+		}
+
+		System.out.format("xmacro %-20s ns/interpret: call=%.1f inlined=%.1f plain=%.1f (checksums=%f %f %f)\n", name, nsPerInterpret[0], nsPerInterpret[1], nsPerInterpret[2], checksums[0], checksums[1], checksums[2]);
+	}
+
+	// approximates the number of executed instructions (including skips and jumps) with the step counter of the interpreter
+	long countExecutedInstrs(int[] program) {
+		interpreter.ctx.reset();
+		interpreter.ctx.remainingSteps = 100000;
+		interpreter.ctx.stack.push(1.0);
+		interpreter.ctx.stack.push(0.5);
+		interpret(program);
+		return 100000 - interpreter.ctx.remainingSteps;
+	}
+
+	static long retAllocatedBytesOfCurrentThread() {
+		com.sun.management.ThreadMXBean threadMxBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		return threadMxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
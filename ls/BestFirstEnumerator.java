@@ -0,0 +1,212 @@
+package ls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// enumerates the programs in the order of decreasing probability, the probability is the Solomonoff-Levin measure (see LevinSearchUtils.calcSolomonoffLevinMeasure())
+// the probabilities of the instructions can depend on the position
+//
+// the frontier is a priority queue of programs, the next program is the most probable program of the frontier
+// the instructions of each position are sorted by decreasing probability, a program has two successors which are added to the frontier when it is returned
+// * the program with the next less probable instruction at the last position (its sibling)
+// * the program extended with the most probable instruction (its first child)
+// so each program is added exactly once and after all more probable programs, and the frontier grows by at most one program per returned program
+//
+// the memory is bounded by the beam, if the frontier exceeds beamCapacity the less probable half is spilled into a sorted run in a temporary file
+// the runs are merged with the frontier when the programs are returned, so the order is the same as with unbounded memory
+// instructions with a probability of zero are never enumerated
+public class BestFirstEnumerator {
+	public int nInstrs; // number of instructions
+	public int maxLength;
+	public LevinSearchUtils.IInstrProb<Integer> instrProb; // probability of the instruction index at the position
+	public int beamCapacity = 1 << 20; // maximal number of programs of the frontier in memory
+
+	// statistics
+	public long returnedProgramsCnt;
+	public long spilledProgramsCnt;
+
+	// program of the frontier
+	static class Node {
+		public int[] program;
+		public int lastRank; // rank of the last instruction in the sorted instructions of its position
+		public double prefixProbability; // probability of the program without the last instruction
+		public double probability;
+
+		public Node(int[] program, int lastRank, double prefixProbability, double probability) {
+			this.program = program;
+			this.lastRank = lastRank;
+			this.prefixProbability = prefixProbability;
+			this.probability = probability;
+		}
+	}
+
+	static class MoreProbableFirst implements Comparator<Node> {
+		@Override
+		public int compare(Node a, Node b) {
+			return Double.compare(b.probability, a.probability);
+		}
+	}
+
+	// sorted run of spilled programs, the most probable program is read into head
+	static class SpillRun {
+		public Path path;
+		public DataInputStream input;
+		public long remainingCnt;
+		public Node head;
+
+		// reads the next program into head, head is null if the run is exhausted
+		public void advance() throws IOException {
+			if( remainingCnt == 0 ) {
+				head = null;
+				input.close();
+				Files.deleteIfExists(path);
+				return;
+			}
+			remainingCnt--;
+
+			double prefixProbability = input.readDouble();
+			double probability = input.readDouble();
+			int lastRank = input.readInt();
+			int[] program = new int[input.readInt()];
+			for( int idx = 0; idx < program.length; idx++ )   program[idx] = input.readInt();
+			head = new Node(program, lastRank, prefixProbability, probability);
+		}
+	}
+
+	static class MoreProbableHeadFirst implements Comparator<SpillRun> {
+		@Override
+		public int compare(SpillRun a, SpillRun b) {
+			return Double.compare(b.head.probability, a.head.probability);
+		}
+	}
+
+	PriorityQueue<Node> frontier = new PriorityQueue<>(new MoreProbableFirst());
+	PriorityQueue<SpillRun> spillRuns = new PriorityQueue<>(new MoreProbableHeadFirst());
+
+	int[][] sortedInstrs; // instruction indices of each position sorted by decreasing probability, without the instructions with probability zero
+	double[][] sortedProbabilities; // probabilities of sortedInstrs
+
+	double lastProbability;
+
+	// begins the enumeration
+	public void init() {
+		sortedInstrs = new int[maxLength][];
+		sortedProbabilities = new double[maxLength][];
+		for( int position = 0; position < maxLength; position++ ) {
+			List<Integer> instrs = new ArrayList<>();
+			for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ ) {
+				if( instrProb.retByInstr(instrIdx, position) > 0.0 )   instrs.add(instrIdx);
+			}
+			final int finalPosition = position;
+			instrs.sort(new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(instrProb.retByInstr(b, finalPosition), instrProb.retByInstr(a, finalPosition));
+				}
+			});
+
+			sortedInstrs[position] = new int[instrs.size()];
+			sortedProbabilities[position] = new double[instrs.size()];
+			for( int rank = 0; rank < instrs.size(); rank++ ) {
+				sortedInstrs[position][rank] = instrs.get(rank);
+				sortedProbabilities[position][rank] = instrProb.retByInstr(instrs.get(rank), position);
+			}
+		}
+
+		frontier.clear();
+		if( maxLength > 0 && sortedInstrs[0].length > 0 )   frontier.add(new Node(new int[]{sortedInstrs[0][0]}, 0, 1.0, sortedProbabilities[0][0]));
+	}
+
+	// returns the next program, null if all programs up to maxLength were enumerated
+	// the returned program must not be modified
+	public int[] next() throws IOException {
+		Node node;
+		if( !spillRuns.isEmpty() && (frontier.isEmpty() || spillRuns.peek().head.probability > frontier.peek().probability) ) {
+			SpillRun run = spillRuns.poll();
+			node = run.head;
+			run.advance();
+			if( run.head != null )   spillRuns.add(run);
+		}
+		else {
+			node = frontier.poll();
+			if( node == null )   return null;
+		}
+
+		addSuccessors(node);
+		if( frontier.size() > beamCapacity )   spill();
+
+		returnedProgramsCnt++;
+		lastProbability = node.probability;
+		return node.program;
+	}
+
+	// probability of the program which was returned by the last call of next()
+	public double retProbability() {
+		return lastProbability;
+	}
+
+	// deletes the files of the spilled programs
+	public void close() throws IOException {
+		for( SpillRun iRun : spillRuns ) {
+			iRun.input.close();
+			Files.deleteIfExists(iRun.path);
+		}
+		spillRuns.clear();
+	}
+
+	void addSuccessors(Node node) {
+		int position = node.program.length - 1;
+
+		// sibling
+		int siblingRank = node.lastRank + 1;
+		if( siblingRank < sortedInstrs[position].length ) {
+			int[] sibling = node.program.clone();
+			sibling[position] = sortedInstrs[position][siblingRank];
+			frontier.add(new Node(sibling, siblingRank, node.prefixProbability, node.prefixProbability * sortedProbabilities[position][siblingRank]));
+		}
+
+		// first child
+		if( position + 1 < maxLength && sortedInstrs[position + 1].length > 0 ) {
+			int[] child = Arrays.copyOf(node.program, position + 2);
+			child[position + 1] = sortedInstrs[position + 1][0];
+			frontier.add(new Node(child, 0, node.probability, node.probability * sortedProbabilities[position + 1][0]));
+		}
+	}
+
+	// writes the less probable half of the frontier into a new sorted run
+	void spill() throws IOException {
+		Node[] nodes = frontier.toArray(new Node[0]);
+		Arrays.sort(nodes, new MoreProbableFirst());
+		int keptCnt = nodes.length / 2;
+
+		SpillRun run = new SpillRun();
+		run.path = Files.createTempFile("bestFirstSpill", ".bin");
+		try( DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.path))) ) {
+			for( int idx = keptCnt; idx < nodes.length; idx++ ) {
+				output.writeDouble(nodes[idx].prefixProbability);
+				output.writeDouble(nodes[idx].probability);
+				output.writeInt(nodes[idx].lastRank);
+				output.writeInt(nodes[idx].program.length);
+				for( int iInstrIdx : nodes[idx].program )   output.writeInt(iInstrIdx);
+			}
+		}
+		run.remainingCnt = nodes.length - keptCnt;
+		spilledProgramsCnt += run.remainingCnt;
+		run.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.path)));
+		run.advance();
+		spillRuns.add(run);
+
+		frontier.clear();
+		for( int idx = 0; idx < keptCnt; idx++ )   frontier.add(nodes[idx]);
+	}
+}
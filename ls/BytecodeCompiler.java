@@ -0,0 +1,725 @@
+package ls;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// compiles a program (as instruction indices) to a JVM class
+// the class is defined as a hidden class so it can get unloaded as soon as it is not referenced anymore
+//
+// relative jumps are resolved to gotos and the skips of PREDIGNOREIFFLAG are unrolled, the instructions itself are calls to the static methods in Ops
+// the JIT can inline these, so a compiled program runs without any dispatch
+//
+// the generated code follows the semantics of Instrs.Interpreter exactly, including the accounting of remainingSteps for skiped instructions and jumps
+public class BytecodeCompiler {
+	// interface implemented by the generated class
+	public interface ICompiledProgram {
+		// ctx and vm must be prepared like Instrs.Interpreter does it
+		boolean run(Instrs.Ctx ctx, Instrs.Ctx.Vm vm);
+	}
+
+	public OpcodeTable opcodeTable;
+
+	public BytecodeCompiler(OpcodeTable opcodeTable) {
+		this.opcodeTable = opcodeTable;
+	}
+
+	// returns if the program can be compiled
+	// programs with XMACRO, ACTION or instructions which are unknown to the OpcodeTable can modify the execution state in ways the compiled code doesn't model, these have to be interpreted
+	public boolean isCompilable(int[] instrsIndices) {
+		for( int iInstrIdx : instrsIndices ) {
+			int opcode = opcodeTable.opcodes[iInstrIdx];
+			if( opcode == OpcodeTable.OP_XMACRO || opcode == OpcodeTable.OP_ACTION || opcode == OpcodeTable.OP_GENERIC ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// returns null if the program is not compilable
+	public ICompiledProgram compile(int[] instrsIndices) {
+		if( !isCompilable(instrsIndices) )   return null;
+
+		byte[] classBytes;
+		try {
+			classBytes = emitClass(instrsIndices);
+		}
+		catch( CodeTooLargeException e ) {
+			return null;
+		}
+
+		try {
+			MethodHandles.Lookup hiddenLookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+			return (ICompiledProgram)hiddenLookup.findConstructor(hiddenLookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		}
+		catch( Throwable e ) {
+			throw new RuntimeException("defining the compiled program failed", e);
+		}
+	}
+
+	static class CodeTooLargeException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	// names of the static methods in Ops which implement the opcode, null if the opcode is handled by the code generator itself
+	static final String[] OPMETHODNAMES = new String[OpcodeTable.NUMBEROFOPCODES];
+	static {
+		OPMETHODNAMES[OpcodeTable.OP_ADD2] = "add2";
+		OPMETHODNAMES[OpcodeTable.OP_ADD2_R] = "add2R";
+		OPMETHODNAMES[OpcodeTable.OP_SUB2] = "sub2";
+		OPMETHODNAMES[OpcodeTable.OP_SUB2_R] = "sub2R";
+		OPMETHODNAMES[OpcodeTable.OP_MUL2] = "mul2";
+		OPMETHODNAMES[OpcodeTable.OP_MUL2_R] = "mul2R";
+		OPMETHODNAMES[OpcodeTable.OP_DIV2] = "div2";
+		OPMETHODNAMES[OpcodeTable.OP_DIV2_R] = "div2R";
+		OPMETHODNAMES[OpcodeTable.OP_EXP] = "exp";
+		OPMETHODNAMES[OpcodeTable.OP_SQRT] = "sqrt";
+		OPMETHODNAMES[OpcodeTable.OP_SIN] = "sin";
+		OPMETHODNAMES[OpcodeTable.OP_LOG] = "log";
+		OPMETHODNAMES[OpcodeTable.OP_TANH] = "tanh";
+		OPMETHODNAMES[OpcodeTable.OP_ATAN] = "atan";
+		OPMETHODNAMES[OpcodeTable.OP_CMPGT] = "cmpgt";
+		OPMETHODNAMES[OpcodeTable.OP_CMPGTPOP] = "cmpgtpop";
+		OPMETHODNAMES[OpcodeTable.OP_CMPEQUAL] = "cmpequal";
+		OPMETHODNAMES[OpcodeTable.OP_CMPEQUALPOP] = "cmpequalpop";
+		OPMETHODNAMES[OpcodeTable.OP_PUSHCONST] = "pushconst";
+		OPMETHODNAMES[OpcodeTable.OP_POP] = "pop";
+		OPMETHODNAMES[OpcodeTable.OP_XCHG] = "xchg";
+		OPMETHODNAMES[OpcodeTable.OP_DUP] = "dup";
+		OPMETHODNAMES[OpcodeTable.OP_PREDIGNOREIFFLAG] = "predignoreifflag";
+		OPMETHODNAMES[OpcodeTable.OP_PREDIGNOREIFNOTFLAG] = "predignoreifnotflag";
+		OPMETHODNAMES[OpcodeTable.OP_MACRO] = "macro";
+		OPMETHODNAMES[OpcodeTable.OP_MULVALUE] = "mulvalue";
+		OPMETHODNAMES[OpcodeTable.OP_PUSHIFFLAG] = "pushifflag";
+		OPMETHODNAMES[OpcodeTable.OP_CMPGTZERO] = "cmpgtzero";
+		OPMETHODNAMES[OpcodeTable.OP_CMPGTZEROPOP] = "cmpgtzeropop";
+		OPMETHODNAMES[OpcodeTable.OP_ARRPOPAPPEND] = "arrpopappend";
+		OPMETHODNAMES[OpcodeTable.OP_ARRDEL] = "arrdel";
+		OPMETHODNAMES[OpcodeTable.OP_ARRLEN] = "arrlen";
+		OPMETHODNAMES[OpcodeTable.OP_ARRSETIDX] = "arrsetidx";
+		OPMETHODNAMES[OpcodeTable.OP_ARRRETIDX] = "arrretidx";
+		OPMETHODNAMES[OpcodeTable.OP_ARRCHECKIDX] = "arrcheckidx";
+		OPMETHODNAMES[OpcodeTable.OP_ARRREADNPUSH] = "arrreadnpush";
+		OPMETHODNAMES[OpcodeTable.OP_ARRREL] = "arrrel";
+	}
+
+	static final String CTXCLASS = "ls/Instrs$Ctx";
+	static final String VMCLASS = "ls/Instrs$Ctx$Vm";
+	static final String OPSCLASS = "ls/BytecodeCompiler$Ops";
+	static final String OPDESCRIPTOR = "(L" + CTXCLASS + ";L" + VMCLASS + ";IIDD)Z";
+
+	// local variable slots of run()
+	static final int LOCALCTX = 1;
+	static final int LOCALVM = 2;
+	static final int LOCALSTEPS = 3;
+
+	byte[] emitClass(int[] instrsIndices) throws CodeTooLargeException {
+		ClassEmitter classEmitter = new ClassEmitter();
+		CodeEmitter code = new CodeEmitter();
+
+		final int len = instrsIndices.length;
+
+		// labels
+		// [0, len) : start of a iteration of the interpreter loop which executes the instruction
+		final int labelIterEnd = len; // iteration with ip >= len
+		final int labelIterNeg = len + 1; // iteration with ip < 0
+		final int labelEndOk = len + 2;
+		final int labelFailPath = len + 3; // instruction failed, terminate gracefully if the ctx says so
+		final int labelFailSteps = len + 4;
+		final int labelFail = len + 5;
+		code.labelPositions = new int[len + 6];
+
+		// steps = ctx.remainingSteps
+		code.u1(0x2b); // aload_1
+		code.u1(0xb4); code.u2(classEmitter.fieldref(CTXCLASS, "remainingSteps", "I")); // getfield
+		code.u1(0x36); code.u1(LOCALSTEPS); // istore
+
+		for( int ip = 0; ip < len; ip++ ) {
+			code.placeLabel(ip);
+
+			emitTick(code, classEmitter, labelFailSteps);
+
+			int instrIdx = instrsIndices[ip];
+			int opcode = opcodeTable.opcodes[instrIdx];
+			boolean isLast = ip == len - 1;
+
+			if( opcode == OpcodeTable.OP_JMP ) {
+				if( isLast ) {
+					code.jump(0xa7, labelEndOk); // goto
+					continue;
+				}
+
+				// the jump itself costs one step
+				emitTick(code, classEmitter, labelFailSteps);
+				code.jump(0xa7, retIterLabel(ip + 1 + opcodeTable.intArgs[instrIdx], len)); // goto
+				continue;
+			}
+
+			// call of the implementation of the instruction
+			code.u1(0x19); code.u1(LOCALCTX); // aload
+			code.u1(0x19); code.u1(LOCALVM); // aload
+			code.u1(0x13); code.u2(classEmitter.integer(opcodeTable.intArgs[instrIdx])); // ldc_w
+			code.u1(0x13); code.u2(classEmitter.integer(opcodeTable.intArgs2[instrIdx])); // ldc_w
+			code.u1(0x14); code.u2(classEmitter.dbl(opcodeTable.doubleArgs[instrIdx])); // ldc2_w
+			code.u1(0x14); code.u2(classEmitter.dbl(opcodeTable.doubleArgs2[instrIdx])); // ldc2_w
+			code.u1(0xb8); code.u2(classEmitter.methodref(OPSCLASS, OPMETHODNAMES[opcode], OPDESCRIPTOR)); // invokestatic
+
+			if( isLast ) {
+				// valid terminating condition, the result of the last instruction is ignored like in Instrs.Interpreter
+				code.u1(0x57); // pop
+				code.jump(0xa7, labelEndOk); // goto
+				continue;
+			}
+
+			if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+				// the result is true if the instructions are skiped
+				code.jump(0x99, ip + 1); // ifeq
+
+				// unrolled skips, each skiped instruction costs one step
+				int nSkiped = opcodeTable.intArgs[instrIdx];
+				boolean endReached = false;
+				for( int iSkip = 0; iSkip < nSkiped; iSkip++ ) {
+					emitTick(code, classEmitter, labelFailSteps);
+					if( ip + 1 + iSkip >= len ) {
+						code.jump(0xa7, labelEndOk); // goto
+						endReached = true;
+						break;
+					}
+				}
+
+				if( !endReached )   code.jump(0xa7, retIterLabel(ip + 1 + nSkiped, len)); // goto
+				continue;
+			}
+
+			code.jump(0x99, labelFailPath); // ifeq
+			// fall through to the next instruction
+		}
+
+		// iteration with ip >= len
+		code.placeLabel(labelIterEnd);
+		emitTick(code, classEmitter, labelFailSteps);
+		code.jump(0xa7, labelEndOk); // goto
+
+		// iteration with ip < 0
+		code.placeLabel(labelIterNeg);
+		emitTick(code, classEmitter, labelFailSteps);
+		code.u1(0x19); code.u1(LOCALCTX); // aload
+		code.u1(0xb4); code.u2(classEmitter.fieldref(CTXCLASS, "configInterpretInvalidIndicesAsTermination", "Z")); // getfield
+		code.jump(0x9a, labelEndOk); // ifne
+		code.jump(0xa7, labelFail); // goto
+
+		code.placeLabel(labelFailPath);
+		code.u1(0x19); code.u1(LOCALCTX); // aload
+		code.u1(0xb4); code.u2(classEmitter.fieldref(CTXCLASS, "terminatedGracefully", "Z")); // getfield
+		code.jump(0x9a, labelEndOk); // ifne
+		code.jump(0xa7, labelFail); // goto
+
+		// the time limit was hit, the interpreter leaves remainingSteps at 0
+		code.placeLabel(labelFailSteps);
+		code.u1(0x03); // iconst_0
+		code.u1(0x36); code.u1(LOCALSTEPS); // istore
+
+		code.placeLabel(labelFail);
+		emitWriteBackSteps(code, classEmitter);
+		code.u1(0x03); // iconst_0
+		code.u1(0xac); // ireturn
+
+		code.placeLabel(labelEndOk);
+		emitWriteBackSteps(code, classEmitter);
+		code.u1(0x19); code.u1(LOCALCTX); // aload
+		code.u1(0xb8); code.u2(classEmitter.methodref(OPSCLASS, "postExec", "(L" + CTXCLASS + ";)V")); // invokestatic
+		code.u1(0x04); // iconst_1
+		code.u1(0xac); // ireturn
+
+		byte[] runCode = code.retResolvedCode();
+		return classEmitter.emit(runCode, 10, 4);
+	}
+
+	static int retIterLabel(int ip, int len) {
+		if( ip >= len )   return len; // labelIterEnd
+		if( ip < 0 )   return len + 1; // labelIterNeg
+		return ip;
+	}
+
+	// steps = Ops.tick(steps); if( steps == -3 ) goto labelFailSteps;
+	void emitTick(CodeEmitter code, ClassEmitter classEmitter, int labelFailSteps) {
+		code.u1(0x15); code.u1(LOCALSTEPS); // iload
+		code.u1(0xb8); code.u2(classEmitter.methodref(OPSCLASS, "tick", "(I)I")); // invokestatic
+		code.u1(0x59); // dup
+		code.u1(0x36); code.u1(LOCALSTEPS); // istore
+		code.u1(0x10); code.u1(-3 & 0xff); // bipush -3
+		code.jump(0x9f, labelFailSteps); // if_icmpeq
+	}
+
+	void emitWriteBackSteps(CodeEmitter code, ClassEmitter classEmitter) {
+		code.u1(0x19); code.u1(LOCALCTX); // aload
+		code.u1(0x15); code.u1(LOCALSTEPS); // iload
+		code.u1(0xb5); code.u2(classEmitter.fieldref(CTXCLASS, "remainingSteps", "I")); // putfield
+	}
+
+	// emits the bytecode of a method with labels and 16 bit relative branches
+	static class CodeEmitter {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		int[] labelPositions;
+		List<int[]> fixups = new ArrayList<>(); // (position of branch opcode, label)
+
+		void u1(int v) {
+			out.write(v);
+		}
+
+		void u2(int v) {
+			out.write(v >> 8);
+			out.write(v);
+		}
+
+		void placeLabel(int label) {
+			labelPositions[label] = out.size();
+		}
+
+		// emits a branch instruction with the given opcode to the label
+		void jump(int opcode, int label) {
+			fixups.add(new int[]{out.size(), label});
+			u1(opcode);
+			u2(0);
+		}
+
+		byte[] retResolvedCode() throws CodeTooLargeException {
+			byte[] code = out.toByteArray();
+			if( code.length > 32767 )   throw new CodeTooLargeException(); // we only emit 16 bit branches
+
+			for( int[] iFixup : fixups ) {
+				int offset = labelPositions[iFixup[1]] - iFixup[0];
+				code[iFixup[0] + 1] = (byte)(offset >> 8);
+				code[iFixup[0] + 2] = (byte)offset;
+			}
+			return code;
+		}
+	}
+
+	// emits a class with a default constructor and the method run() which implements ICompiledProgram
+	// the class file version is 49 so no StackMapTable is required
+	static class ClassEmitter {
+		ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+		DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+		int constantPoolCount = 1;
+		Map<String, Integer> constantPoolIndices = new HashMap<>();
+
+		int utf8(String str) {
+			return constant("U" + str, 1, () -> constantPool.writeUTF(str), 1);
+		}
+
+		int clazz(String internalName) {
+			int nameIdx = utf8(internalName);
+			return constant("C" + internalName, 7, () -> constantPool.writeShort(nameIdx), 1);
+		}
+
+		int nameAndType(String name, String descriptor) {
+			int nameIdx = utf8(name);
+			int descriptorIdx = utf8(descriptor);
+			return constant("N" + name + " " + descriptor, 12, () -> { constantPool.writeShort(nameIdx); constantPool.writeShort(descriptorIdx); }, 1);
+		}
+
+		int fieldref(String owner, String name, String descriptor) {
+			int classIdx = clazz(owner);
+			int nameAndTypeIdx = nameAndType(name, descriptor);
+			return constant("F" + owner + " " + name, 9, () -> { constantPool.writeShort(classIdx); constantPool.writeShort(nameAndTypeIdx); }, 1);
+		}
+
+		int methodref(String owner, String name, String descriptor) {
+			int classIdx = clazz(owner);
+			int nameAndTypeIdx = nameAndType(name, descriptor);
+			return constant("M" + owner + " " + name + descriptor, 10, () -> { constantPool.writeShort(classIdx); constantPool.writeShort(nameAndTypeIdx); }, 1);
+		}
+
+		int integer(int v) {
+			return constant("I" + v, 3, () -> constantPool.writeInt(v), 1);
+		}
+
+		int dbl(double v) {
+			return constant("D" + Double.doubleToRawLongBits(v), 6, () -> constantPool.writeDouble(v), 2); // doubles take two slots in the constant pool
+		}
+
+		interface IConstantWriter {
+			void write() throws IOException;
+		}
+
+		int constant(String key, int tag, IConstantWriter writer, int slots) {
+			Integer existingIdx = constantPoolIndices.get(key);
+			if( existingIdx != null )   return existingIdx;
+
+			int idx = constantPoolCount;
+			try {
+				constantPool.writeByte(tag);
+				writer.write();
+			}
+			catch( IOException e ) {
+				throw new RuntimeException(e); // can't happen for a ByteArrayOutputStream
+			}
+			constantPoolCount += slots;
+			constantPoolIndices.put(key, idx);
+			return idx;
+		}
+
+		byte[] emit(byte[] runCode, int runMaxStack, int runMaxLocals) {
+			int thisClassIdx = clazz("ls/CompiledProgram");
+			int superClassIdx = clazz("java/lang/Object");
+			int interfaceIdx = clazz("ls/BytecodeCompiler$ICompiledProgram");
+			int codeIdx = utf8("Code");
+			int initIdx = utf8("<init>");
+			int initDescriptorIdx = utf8("()V");
+			int objectInitIdx = methodref("java/lang/Object", "<init>", "()V");
+			int runIdx = utf8("run");
+			int runDescriptorIdx = utf8("(L" + CTXCLASS + ";L" + VMCLASS + ";)Z");
+
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0); // minor version
+				out.writeShort(49); // major version
+				out.writeShort(constantPoolCount);
+				out.write(constantPoolBytes.toByteArray());
+
+				out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+				out.writeShort(thisClassIdx);
+				out.writeShort(superClassIdx);
+				out.writeShort(1); // interfaces
+				out.writeShort(interfaceIdx);
+				out.writeShort(0); // fields
+				out.writeShort(2); // methods
+
+				// constructor
+				byte[] initCode = new byte[]{0x2a, (byte)0xb7, (byte)(objectInitIdx >> 8), (byte)objectInitIdx, (byte)0xb1}; // aload_0, invokespecial, return
+				writeMethod(out, 0x0001, initIdx, initDescriptorIdx, codeIdx, initCode, 1, 1);
+
+				// run()
+				writeMethod(out, 0x0001, runIdx, runDescriptorIdx, codeIdx, runCode, runMaxStack, runMaxLocals);
+
+				out.writeShort(0); // attributes
+				return bytes.toByteArray();
+			}
+			catch( IOException e ) {
+				throw new RuntimeException(e); // can't happen for a ByteArrayOutputStream
+			}
+		}
+
+		static void writeMethod(DataOutputStream out, int accessFlags, int nameIdx, int descriptorIdx, int codeIdx, byte[] code, int maxStack, int maxLocals) throws IOException {
+			out.writeShort(accessFlags);
+			out.writeShort(nameIdx);
+			out.writeShort(descriptorIdx);
+			out.writeShort(1); // attributes
+
+			out.writeShort(codeIdx);
+			out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+		}
+	}
+
+	// implementations of the instructions which are called by the compiled programs
+	// all have the same signature to keep the code generator simple, the JIT removes the unused arguments after inlining
+	public static class Ops {
+		// accounts one step of the time limit
+		// returns -3 if the time limit is hit
+		public static int tick(int steps) {
+			if( steps == -2 )   return -2; // no time limit
+			if( steps == 0 )   return -3;
+			return steps - 1;
+		}
+
+		public static void postExec(Instrs.Ctx ctx) {
+			ctx.terminatedGracefully = true;
+			if( ctx.domainSpecificCtx != null )   ctx.domainSpecificCtx.terminatedInterpreationGracefully(ctx);
+		}
+
+		public static boolean add2(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			stack.push(stack.pop() + stack.pop());
+			return true;
+		}
+
+		public static boolean add2R(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return stack.push(0.0);
+			stack.push(stack.pop() + stack.pop());
+			return true;
+		}
+
+		public static boolean sub2(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			double inputA = stack.pop();
+			double inputB = stack.pop();
+			stack.push(inputA - inputB);
+			return true;
+		}
+
+		public static boolean sub2R(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return stack.push(0.0);
+			double inputA = stack.pop();
+			double inputB = stack.pop();
+			stack.push(inputA - inputB);
+			return true;
+		}
+
+		public static boolean mul2(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			stack.push(stack.pop() * stack.pop());
+			return true;
+		}
+
+		public static boolean mul2R(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return stack.push(1.0);
+			stack.push(stack.pop() * stack.pop());
+			return true;
+		}
+
+		public static boolean div2(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			double inputA = stack.pop();
+			double inputB = stack.pop();
+			if( inputB == 0.0 )   return false;
+			stack.push(inputA / inputB);
+			return true;
+		}
+
+		public static boolean div2R(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return stack.push(1.0);
+			double inputA = stack.pop();
+			double inputB = stack.pop();
+			stack.push(inputB == 0.0 ? 1.0 : inputA / inputB);
+			return true;
+		}
+
+		public static boolean exp(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.exp(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean sqrt(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.sqrt(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean sin(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.sin(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean log(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.log(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean tanh(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.tanh(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean atan(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] = Math.atan(stack.arr[stack.topIdx]);
+			return true;
+		}
+
+		public static boolean cmpgt(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			vm.flag = stack.arr[stack.topIdx] > stack.arr[stack.topIdx-1];
+			return true;
+		}
+
+		public static boolean cmpgtpop(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			vm.flag = stack.arr[stack.topIdx] > stack.arr[stack.topIdx-1];
+			stack.topIdx -= 2;
+			return true;
+		}
+
+		public static boolean cmpequal(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			vm.flag = Math.abs(stack.arr[stack.topIdx] - stack.arr[stack.topIdx-1]) < 0.001; // epsilon
+			return true;
+		}
+
+		public static boolean cmpequalpop(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < 2 )   return false;
+			vm.flag = Math.abs(stack.arr[stack.topIdx] - stack.arr[stack.topIdx-1]) < 0.001; // epsilon
+			stack.topIdx -= 2;
+			return true;
+		}
+
+		public static boolean pushconst(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			return ctx.stack.push(doubleArg);
+		}
+
+		public static boolean pop(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.topIdx--;
+			return true;
+		}
+
+		// intArg : rel
+		public static boolean xchg(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.size() < intArg + 1 )   return false;
+			double inputA = stack.arr[stack.topIdx];
+			stack.arr[stack.topIdx] = stack.arr[stack.topIdx-intArg];
+			stack.arr[stack.topIdx-intArg] = inputA;
+			return true;
+		}
+
+		public static boolean dup(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			return stack.push(stack.peek());
+		}
+
+		// returns true if the instructions are skiped
+		public static boolean predignoreifflag(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			return vm.flag;
+		}
+
+		// returns true if the instructions are skiped
+		public static boolean predignoreifnotflag(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			return !vm.flag;
+		}
+
+		public static boolean macro(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			return false; // not executable
+		}
+
+		public static boolean mulvalue(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			stack.arr[stack.topIdx] *= doubleArg;
+			return true;
+		}
+
+		// doubleArg : value if the flag is false, doubleArg2 : value if the flag is true
+		public static boolean pushifflag(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			return ctx.stack.push(vm.flag ? doubleArg2 : doubleArg);
+		}
+
+		public static boolean cmpgtzero(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			vm.flag = stack.peek() > 0;
+			return true;
+		}
+
+		public static boolean cmpgtzeropop(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			Instrs.DoubleStack stack = ctx.stack;
+			if( stack.empty() )   return false;
+			vm.flag = stack.pop() > 0;
+			return true;
+		}
+
+		// intArg : array index
+		public static boolean arrpopappend(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			if( ctx.stack.empty() )   return false;
+			double val = ctx.stack.pop();
+
+			ctx.arrayCtx.append(val, intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			int arrLength = ctx.arrayCtx.retArrLength(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			ctx.arrayCtx.setArrIdx(arrLength - 1, intArg);
+			return ctx.arrayCtx.isOk();
+		}
+
+		// intArg : array index
+		public static boolean arrdel(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			int idx = ctx.arrayCtx.retArrIdx(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			ctx.arrayCtx.delAtIdx(idx, intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			int arrLength = ctx.arrayCtx.retArrLength(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			if( idx >= arrLength ) {
+				ctx.arrayCtx.setArrIdx(arrLength - 1, intArg);
+				if( !ctx.arrayCtx.isOk() )   return false;
+			}
+			return true;
+		}
+
+		// intArg : array index
+		public static boolean arrlen(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			int arrLength = ctx.arrayCtx.retArrLength(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			return ctx.stack.push((double)arrLength);
+		}
+
+		// intArg : array index
+		public static boolean arrsetidx(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			if( ctx.stack.empty() )   return false;
+			long idxLong = Math.round(ctx.stack.peek());
+			if( idxLong >= Integer.MAX_VALUE )   return false; // check for index overflow
+			ctx.arrayCtx.setArrIdx((int)idxLong, intArg);
+			return ctx.arrayCtx.isOk();
+		}
+
+		// intArg : array index
+		public static boolean arrretidx(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			int idx = ctx.arrayCtx.retArrIdx(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			return ctx.stack.push((double)idx);
+		}
+
+		// intArg : array index
+		public static boolean arrcheckidx(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			vm.flag = ctx.arrayCtx.retCheckIdx(intArg);
+			return ctx.arrayCtx.isOk();
+		}
+
+		// intArg : array index
+		public static boolean arrreadnpush(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			int idx = ctx.arrayCtx.retArrIdx(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			double val = ctx.arrayCtx.retAt(idx, intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			return ctx.stack.push(val);
+		}
+
+		// intArg : array index, intArg2 : rel
+		public static boolean arrrel(Instrs.Ctx ctx, Instrs.Ctx.Vm vm, int intArg, int intArg2, double doubleArg, double doubleArg2) {
+			int idx = ctx.arrayCtx.retArrIdx(intArg);
+			if( !ctx.arrayCtx.isOk() )   return false;
+			ctx.arrayCtx.setArrIdx(idx + intArg2, intArg);
+			return true;
+		}
+	}
+}
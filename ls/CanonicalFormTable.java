@@ -0,0 +1,235 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// table of the forbidden instructions, adjacent pairs and triples of the canonical form of the programs, used by PruningLevinSearch to enumerate only canonical programs
+//
+// the table is derived from the semantics of the instructions of a InstructionLookupTable (see OpcodeTable)
+// a pattern is forbidden if it can be replaced by a shorter sequence or by a sequence with lower instruction indices with the same effect
+// * instructions with the same semantics as a instruction with a lower index (see PeepholeOptimizer)
+// * NOP (JMP 0), PREDIGNOREIFFLAG 0, XCHG 0 and MULVALUE 1 are removed
+// * XCHG r, XCHG r and DUP/PUSH, POP and MULVALUE -1, MULVALUE -1 are removed
+// * DUP, XCHG 1 is DUP and XCHG 1, ADD2/MUL2 is ADD2/MUL2
+// * PUSH a, PUSH b, XCHG 1 is PUSH b, PUSH a
+// * XCHG r, XCHG s, XCHG r is XCHG s, XCHG r, XCHG s, the sequence with the greater indices is forbidden
+// each replacement lowers the length or the indices, so every program can be replaced by a canonical program which isn't longer
+//
+// the replacement has the same result (stack, flag and arrays) as the original program if the original program succeeds, a failure can turn into a success
+// so a search whose tester rejects failed programs finds a solution with the same result, the shorter programs have to be searched too
+// the patterns contain no jumps, a pattern is only forbidden in a program if no jump or skip lands inside of it or crosses it with a changed distance
+// and if it's at the end of the program the instruction before it must not be a JMP, because the pending jump of the last instruction isn't executed
+// a pattern after a XMACRO isn't forbidden, because the body of the slot can skip instructions of the caller
+// domain specific actions must not change the control flow
+public class CanonicalFormTable {
+	public int nInstrs; // number of instructions
+	public boolean hasBackwardJumps; // the table contains backward jumps or generic instructions, the patterns can only be checked in the complete program
+
+	boolean[] isForbiddenInstr; // instruction has the same semantics as a instruction with a lower index
+	boolean[] isRemovableInstr;
+	byte[] pairRemovedCnts; // number of instructions which are removed by the replacement of the pair, indexed by a*nInstrs+b, -1 if the pair is allowed
+	int[][] tripleLastInstrs; // last instructions of the forbidden triples which begin with the pair, indexed by a*nInstrs+b, null if there is none
+	byte[][] tripleRemovedCnts; // number of instructions which are removed by the replacement of the triples of tripleLastInstrs
+
+	int[] jumpOffsets; // offset of the target of the jump or skip from the next instruction, 0 if the instruction doesn't jump
+	boolean[] isPendingJmp; // JMP whose pending jump isn't executed if it's the last instruction
+	boolean[] hasUnknownSkips; // XMACRO and generic instructions, a XMACRO can skip instructions after it
+	boolean[] isGeneric; // generic instructions can jump anywhere
+
+	OpcodeTable opcodeTable;
+
+	public CanonicalFormTable(Instrs.InstructionLookupTable instrLookup) {
+		opcodeTable = OpcodeTable.decode(instrLookup);
+		int[] canonicalIdx = new PeepholeOptimizer(instrLookup).canonicalIdx;
+		nInstrs = opcodeTable.opcodes.length;
+
+		isForbiddenInstr = new boolean[nInstrs];
+		isRemovableInstr = new boolean[nInstrs];
+		jumpOffsets = new int[nInstrs];
+		isPendingJmp = new boolean[nInstrs];
+		hasUnknownSkips = new boolean[nInstrs];
+		isGeneric = new boolean[nInstrs];
+		for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ ) {
+			isForbiddenInstr[instrIdx] = canonicalIdx[instrIdx] != instrIdx;
+
+			int intArg = opcodeTable.intArgs[instrIdx];
+			switch( opcodeTable.opcodes[instrIdx] ) {
+				case OpcodeTable.OP_JMP:
+				jumpOffsets[instrIdx] = intArg;
+				isPendingJmp[instrIdx] = intArg != 0;
+				isRemovableInstr[instrIdx] = intArg == 0;
+				if( intArg < 0 )   hasBackwardJumps = true;
+				break;
+
+				case OpcodeTable.OP_PREDIGNOREIFFLAG:
+				case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+				if( intArg > 0 )   jumpOffsets[instrIdx] = intArg;
+				isRemovableInstr[instrIdx] = intArg <= 0;
+				break;
+
+				case OpcodeTable.OP_XCHG:
+				isRemovableInstr[instrIdx] = intArg == 0;
+				break;
+
+				case OpcodeTable.OP_MULVALUE:
+				isRemovableInstr[instrIdx] = opcodeTable.doubleArgs[instrIdx] == 1.0;
+				break;
+
+				case OpcodeTable.OP_XMACRO:
+				hasUnknownSkips[instrIdx] = true;
+				break;
+
+				case OpcodeTable.OP_GENERIC:
+				hasUnknownSkips[instrIdx] = true;
+				isGeneric[instrIdx] = true;
+				hasBackwardJumps = true;
+				break;
+			}
+		}
+
+		pairRemovedCnts = new byte[nInstrs * nInstrs];
+		for( int a = 0; a < nInstrs; a++ ) {
+			for( int b = 0; b < nInstrs; b++ ) {
+				pairRemovedCnts[a * nInstrs + b] = isForbiddenInstr[a] || isForbiddenInstr[b] ? -1 : retPairRemovedCnt(a, b);
+			}
+		}
+
+		buildTriples();
+	}
+
+	// number of instructions which are removed by the replacement of the pair, -1 if the pair is allowed
+	byte retPairRemovedCnt(int a, int b) {
+		int opcodeA = opcodeTable.opcodes[a], opcodeB = opcodeTable.opcodes[b];
+
+		if( opcodeA == OpcodeTable.OP_XCHG && opcodeB == OpcodeTable.OP_XCHG && opcodeTable.intArgs[a] == opcodeTable.intArgs[b] && opcodeTable.intArgs[a] > 0 )   return 2;
+		if( (opcodeA == OpcodeTable.OP_DUP || isPush(a)) && opcodeB == OpcodeTable.OP_POP )   return 2;
+		if( opcodeA == OpcodeTable.OP_MULVALUE && opcodeB == OpcodeTable.OP_MULVALUE && opcodeTable.doubleArgs[a] == -1.0 && opcodeTable.doubleArgs[b] == -1.0 )   return 2; // negation is exact
+		if( opcodeA == OpcodeTable.OP_DUP && isXchg1(b) )   return 1; // swaps equal values
+		if( isXchg1(a) && isCommutative(b) )   return 1; // XCHG succeeded, so both operands are on the stack and the resilience doesn't apply
+		return -1;
+	}
+
+	void buildTriples() {
+		List<int[]> triples = new ArrayList<>(); // a, b, c, number of removed instructions
+
+		int xchg1Idx = -1;
+		for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ ) {
+			if( !isForbiddenInstr[instrIdx] && isXchg1(instrIdx) )   xchg1Idx = instrIdx;
+		}
+
+		for( int a = 0; a < nInstrs; a++ ) {
+			if( isForbiddenInstr[a] )   continue;
+			for( int b = 0; b < nInstrs; b++ ) {
+				if( isForbiddenInstr[b] )   continue;
+
+				// PUSH a, PUSH b, XCHG 1 -> PUSH b, PUSH a
+				if( isPush(a) && isPush(b) && xchg1Idx != -1 )   triples.add(new int[]{a, b, xchg1Idx, 1});
+
+				// XCHG r, XCHG s, XCHG r and XCHG s, XCHG r, XCHG s swap the values at the depths r and s, the one with the greater indices is forbidden
+				if(
+					opcodeTable.opcodes[a] == OpcodeTable.OP_XCHG && opcodeTable.opcodes[b] == OpcodeTable.OP_XCHG &&
+					opcodeTable.intArgs[a] > 0 && opcodeTable.intArgs[b] > 0 && opcodeTable.intArgs[a] != opcodeTable.intArgs[b] &&
+					a > b
+				) {
+					triples.add(new int[]{a, b, a, 0});
+				}
+			}
+		}
+
+		tripleLastInstrs = new int[nInstrs * nInstrs][];
+		tripleRemovedCnts = new byte[nInstrs * nInstrs][];
+		for( int[] iTriple : triples ) {
+			int pairIdx = iTriple[0] * nInstrs + iTriple[1];
+			int cnt = tripleLastInstrs[pairIdx] == null ? 0 : tripleLastInstrs[pairIdx].length;
+
+			int[] lastInstrs = new int[cnt + 1];
+			byte[] removedCnts = new byte[cnt + 1];
+			if( cnt > 0 ) {
+				System.arraycopy(tripleLastInstrs[pairIdx], 0, lastInstrs, 0, cnt);
+				System.arraycopy(tripleRemovedCnts[pairIdx], 0, removedCnts, 0, cnt);
+			}
+			lastInstrs[cnt] = iTriple[2];
+			removedCnts[cnt] = (byte)iTriple[3];
+			tripleLastInstrs[pairIdx] = lastInstrs;
+			tripleRemovedCnts[pairIdx] = removedCnts;
+		}
+	}
+
+	boolean isPush(int instrIdx) {
+		return opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_PUSHCONST || opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_PUSHIFFLAG;
+	}
+
+	boolean isXchg1(int instrIdx) {
+		return opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_XCHG && opcodeTable.intArgs[instrIdx] == 1;
+	}
+
+	boolean isCommutative(int instrIdx) {
+		switch( opcodeTable.opcodes[instrIdx] ) {
+			case OpcodeTable.OP_ADD2:
+			case OpcodeTable.OP_ADD2_R:
+			case OpcodeTable.OP_MUL2:
+			case OpcodeTable.OP_MUL2_R:
+			return true;
+
+			default:
+			return false;
+		}
+	}
+
+	// checks the patterns which end at the position, the patterns which end before the position must have been checked
+	// the instructions after the position are not read if the table has no backward jumps, the complete program is checked at the last position otherwise
+	// returns false if the program isn't in the canonical form
+	public boolean isCanonicalAt(int[] program, int position) {
+		if( isForbiddenInstr[program[position]] )   return false;
+		if( !hasBackwardJumps )   return !isReplaceableAt(program, position, false);
+
+		if( position < program.length - 1 )   return true; // a backward jump after the position could land inside of a pattern
+		for( int iPosition = 0; iPosition < program.length; iPosition++ ) {
+			if( isReplaceableAt(program, iPosition, true) )   return false;
+		}
+		return true;
+	}
+
+	// is a pattern which ends at the position replaceable
+	boolean isReplaceableAt(int[] program, int position, boolean isComplete) {
+		int instrIdx = program[position];
+		if( isRemovableInstr[instrIdx] && isReplaceable(program, position, 1, 1, isComplete) )   return true;
+		if( position < 1 )   return false;
+
+		int pairIdx = program[position - 1] * nInstrs + instrIdx;
+		if( pairRemovedCnts[pairIdx] != -1 && isReplaceable(program, position - 1, 2, pairRemovedCnts[pairIdx], isComplete) )   return true;
+		if( position < 2 )   return false;
+
+		int[] lastInstrs = tripleLastInstrs[program[position - 2] * nInstrs + program[position - 1]];
+		if( lastInstrs == null )   return false;
+		for( int idx = 0; idx < lastInstrs.length; idx++ ) {
+			if( lastInstrs[idx] == instrIdx && isReplaceable(program, position - 2, 3, tripleRemovedCnts[program[position - 2] * nInstrs + program[position - 1]][idx], isComplete) )   return true;
+		}
+		return false;
+	}
+
+	// can the pattern at begin be replaced without a change of the result, the instructions after the pattern are only read if isComplete is true
+	// a replacement which removes instructions moves the instructions after the pattern, a replacement of the same length only changes the instructions inside of it
+	boolean isReplaceable(int[] program, int begin, int patternLength, int removedCnt, boolean isComplete) {
+		int end = begin + patternLength;
+		if( program.length - removedCnt < 1 )   return false; // programs of length zero are not enumerated
+
+		for( int ip = 0; ip < begin; ip++ ) {
+			if( hasUnknownSkips[program[ip]] )   return false;
+			int target = ip + 1 + jumpOffsets[program[ip]];
+			if( target > begin && target < (removedCnt > 0 ? program.length : end) )   return false; // jumps beyond the end terminate in both programs
+		}
+
+		if( isComplete ) {
+			for( int ip = end; ip < program.length; ip++ ) {
+				if( isGeneric[program[ip]] )   return false;
+				int target = ip + 1 + jumpOffsets[program[ip]];
+				if( target < end && (removedCnt > 0 || target > begin) )   return false;
+			}
+		}
+
+		// the instruction before a removed pattern at the end becomes the last instruction
+		if( removedCnt > 0 && end == program.length && begin > 0 && isPendingJmp[program[begin - 1]] )   return false;
+		return true;
+	}
+}
@@ -0,0 +1,98 @@
+package ls;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// interpreter which compiles programs which get interpreted often to JVM bytecode with the BytecodeCompiler
+// programs are executed with the SwitchInterpreter until they hit the compile threshold or if they aren't compilable
+// programs with XMACRO are never compiled, the slots are installed into the xmacroSlots of the fallbackInterpreter
+//
+// the compiled programs are cached by the content of the program, the least recently used programs are evicted
+// evicted compiled programs are unloaded by the JVM because they are hidden classes
+public class CompilingInterpreter {
+	public Instrs.Ctx ctx;
+
+	public int compileThreshold = 64; // number of interpretations of a program before it gets compiled
+	public int cacheCapacity = 1024; // maximal number of cached programs
+
+	public SwitchInterpreter fallbackInterpreter;
+	public BytecodeCompiler compiler;
+
+	public long compiledProgramsCnt = 0; // statistics
+
+	static class CacheEntry {
+		public int[] program; // copy of the program
+		public int interpretationCnt = 0;
+		public boolean isCompilable = true;
+		public BytecodeCompiler.ICompiledProgram compiled = null;
+
+		public CacheEntry(int[] program) {
+			this.program = program;
+		}
+	}
+
+	Map<ProgramKey, CacheEntry> cache = new LinkedHashMap<ProgramKey, CacheEntry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ProgramKey, CacheEntry> eldest) {
+			return size() > cacheCapacity;
+		}
+	};
+
+	CacheEntry lastEntry = null; // most programs are executed many times in a row, so we check it before looking into the cache
+	ProgramKey lookupKey = new ProgramKey(new int[0]); // key of the lookups, refers to the program of the caller
+
+	Instrs.Ctx.Vm rootVm = new Instrs.Ctx.Vm();
+
+	public CompilingInterpreter(Instrs.InstructionLookupTable instrLookup) {
+		fallbackInterpreter = new SwitchInterpreter(instrLookup);
+		compiler = new BytecodeCompiler(fallbackInterpreter.opcodeTable);
+	}
+
+	public boolean interpret(int[] instrsIndices) {
+		CacheEntry entry = lookup(instrsIndices);
+
+		if( entry.compiled == null && entry.isCompilable ) {
+			entry.interpretationCnt++;
+			if( entry.interpretationCnt >= compileThreshold ) {
+				entry.compiled = compiler.compile(entry.program);
+				entry.isCompilable = entry.compiled != null;
+				if( entry.isCompilable )   compiledProgramsCnt++;
+			}
+		}
+
+		if( entry.compiled == null ) {
+			fallbackInterpreter.ctx = ctx;
+			return fallbackInterpreter.interpret(instrsIndices);
+		}
+
+		// prepare the context like Instrs.Interpreter does it
+		ctx.terminatedGracefully = false;
+		ctx.skipedInstrsCnt = 0;
+		ctx.isJumpPending = false;
+
+		rootVm.flag = false;
+		rootVm.xmacros.clear();
+		ctx.vms.clear();
+		ctx.vms.add(rootVm);
+		ctx.currentSelectedVmIdx = 0;
+
+		return entry.compiled.run(ctx, rootVm);
+	}
+
+	CacheEntry lookup(int[] instrsIndices) {
+		if( lastEntry != null && Arrays.equals(lastEntry.program, instrsIndices) )   return lastEntry;
+
+		lookupKey.set(instrsIndices);
+		CacheEntry entry = cache.get(lookupKey);
+		if( entry == null ) {
+			// we have to copy the program because the caller may modify it, for example LevinSearch does this
+			int[] programCopy = Arrays.copyOf(instrsIndices, instrsIndices.length);
+			entry = new CacheEntry(programCopy);
+			cache.put(new ProgramKey(programCopy), entry);
+		}
+
+		lastEntry = entry;
+		return entry;
+	}
+}
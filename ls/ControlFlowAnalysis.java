@@ -0,0 +1,344 @@
+package ls;
+
+import java.util.Arrays;
+
+// control flow analysis to find programs which don't terminate
+//
+// the control flow graph is built over the instructions, relative jumps and both outcomes of predicated skips are resolved
+// the loops are the strongly connected components of it
+// the loops are classified with the graph of the abstract states (ip, stack height, flag) of the StackEffectVerifier
+// * LOOP_INFINITE : the program never leaves the loop after it entered it, because no abstract state of the loop reaches the end or a failure
+// * LOOP_BOUNDED : the abstract states don't repeat in the loop, so the number of iterations is bounded
+// * LOOP_UNKNOWN
+//
+// if the graph of the abstract states is acyclic the maximal number of steps of the interpreter is known
+// a time budget of this number of steps gives the same results as a infinite budget
+// the steps of the body of a XMACRO are unknown, so the maximal number of steps of a program with a XMACRO is unknown
+public class ControlFlowAnalysis extends StackEffectVerifier {
+	public static final int LOOP_BOUNDED = 0;
+	public static final int LOOP_UNKNOWN = 1;
+	public static final int LOOP_INFINITE = 2;
+
+	// results of the last analyse() call
+	public int[] loopOfInstr = new int[0]; // index of the loop of the instruction, -1 if the instruction isn't in a loop
+	public int[] loopClassifications = new int[0]; // indexed by the index of the loop
+	public int loopsCnt;
+	public boolean isProvablyInfinite; // no execution of the program terminates
+	public int maxSteps; // maximal number of steps the interpreter needs to execute the program, -1 if it is unknown
+
+	static final int TERMINAL = -1; // target of the edges to the end of the program or to a failure
+
+	// edges of the graph of the abstract states, the nodes are the encoded states
+	int[] edgeFroms = new int[16];
+	int[] edgeTos = new int[16];
+	int[] edgeTicks = new int[16];
+	int edgesCnt;
+
+	// graph of the abstract states with dense node indices
+	int[] nodeOfState = new int[0];
+	int[] adjStarts; // adjacency in compressed sparse row format
+	int[] adjTos;
+	int[] adjTicks;
+
+	public ControlFlowAnalysis(Instrs.InstructionLookupTable instrLookup) {
+		super(instrLookup);
+	}
+
+	// /param entryDepth number of values on the stack before the program is executed
+	public void analyse(int[] instrsIndices, int entryDepth) {
+		final int len = instrsIndices.length;
+
+		edgesCnt = 0;
+		verify(instrsIndices, entryDepth);
+
+		classifyInstrLoops(instrsIndices);
+
+		if( len == 0 ) {
+			isProvablyInfinite = false;
+			maxSteps = 1;
+			return;
+		}
+
+		// build the graph of the abstract states
+		int nNodes = visitedCnt;
+		if( nodeOfState.length < visited.length ) {
+			nodeOfState = new int[visited.length];
+		}
+		for( int node = 0; node < nNodes; node++ )   nodeOfState[visitedStates[node]] = node;
+
+		adjStarts = new int[nNodes + 1];
+		adjTos = new int[edgesCnt];
+		adjTicks = new int[edgesCnt];
+		for( int edgeIdx = 0; edgeIdx < edgesCnt; edgeIdx++ )   adjStarts[nodeOfState[edgeFroms[edgeIdx]] + 1]++;
+		for( int node = 0; node < nNodes; node++ )   adjStarts[node + 1] += adjStarts[node];
+		int[] fillIdx = Arrays.copyOf(adjStarts, nNodes);
+		for( int edgeIdx = 0; edgeIdx < edgesCnt; edgeIdx++ ) {
+			int from = nodeOfState[edgeFroms[edgeIdx]];
+			adjTos[fillIdx[from]] = edgeTos[edgeIdx] == TERMINAL ? TERMINAL : nodeOfState[edgeTos[edgeIdx]];
+			adjTicks[fillIdx[from]] = edgeTicks[edgeIdx];
+			fillIdx[from]++;
+		}
+
+		boolean[] canTerminate = retCanTerminate(nNodes);
+		isProvablyInfinite = !canTerminate[0]; // node 0 is the entry
+
+		int[] sccOfNode = new int[nNodes];
+		int sccsCnt = retSccs(nNodes, adjStarts, adjTos, sccOfNode);
+		boolean[] isInCycle = retIsInCycle(nNodes, adjStarts, adjTos, sccOfNode, sccsCnt);
+
+		// classify the loops of the instructions with the abstract states
+		boolean[] isLoopEntered = new boolean[loopsCnt];
+		boolean[] canLoopTerminate = new boolean[loopsCnt];
+		boolean[] isLoopCyclic = new boolean[loopsCnt];
+		for( int node = 0; node < nNodes; node++ ) {
+			int loop = loopOfInstr[retIp(visitedStates[node])];
+			if( loop == -1 )   continue;
+			isLoopEntered[loop] = true;
+			canLoopTerminate[loop] |= canTerminate[node];
+			isLoopCyclic[loop] |= isInCycle[node];
+		}
+		for( int loop = 0; loop < loopsCnt; loop++ ) {
+			if( isLoopEntered[loop] && !canLoopTerminate[loop] )   loopClassifications[loop] = LOOP_INFINITE;
+			else if( isLoopCyclic[loop] )                          loopClassifications[loop] = LOOP_UNKNOWN;
+			else                                                   loopClassifications[loop] = LOOP_BOUNDED;
+		}
+
+		boolean isCyclic = false;
+		for( int node = 0; node < nNodes; node++ )   isCyclic |= isInCycle[node];
+		maxSteps = isCyclic || isCallingXMacro(instrsIndices) ? -1 : retLongestPath(nNodes, sccOfNode, sccsCnt);
+	}
+
+	// returns the time budget for the program, which is the maximal number of steps if it is known
+	public int retTightenedBudget(int budget) {
+		if( maxSteps == -1 )   return budget;
+		if( budget == -2 )   return maxSteps;
+		return Math.min(budget, maxSteps);
+	}
+
+	// builds the control flow graph of the instructions and finds the loops
+	void classifyInstrLoops(int[] instrsIndices) {
+		final int len = instrsIndices.length;
+
+		int[] starts = new int[len + 1];
+		int[] tos = new int[len * 2];
+		int cnt = 0;
+		for( int ip = 0; ip < len; ip++ ) {
+			starts[ip] = cnt;
+			if( ip + 1 == len )   continue; // the program terminates after the last instruction
+
+			if( cnt + len + 1 > tos.length )   tos = Arrays.copyOf(tos, tos.length * 2 + len); // a XMACRO has up to len edges
+
+			int instrIdx = instrsIndices[ip];
+			int opcode = opcodeTable.opcodes[instrIdx];
+			if( opcode == OpcodeTable.OP_XMACRO ) { // the body can skip any number of the instructions after the call
+				for( int target = ip + 1; target < len; target++ )   tos[cnt++] = target;
+			}
+			else if( opcode == OpcodeTable.OP_JMP ) {
+				int target = ip + 1 + opcodeTable.intArgs[instrIdx];
+				if( target >= 0 && target < len )   tos[cnt++] = target;
+			}
+			else if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+				tos[cnt++] = ip + 1;
+				int target = ip + 1 + opcodeTable.intArgs[instrIdx];
+				if( target > ip + 1 && target < len )   tos[cnt++] = target;
+			}
+			else if( opcode != OpcodeTable.OP_MACRO ) { // MACRO always fails
+				tos[cnt++] = ip + 1;
+			}
+		}
+		starts[len] = cnt;
+
+		int[] sccOfInstr = new int[len];
+		int sccsCnt = retSccs(len, starts, tos, sccOfInstr);
+		boolean[] isInCycle = retIsInCycle(len, starts, tos, sccOfInstr, sccsCnt);
+
+		// number the loops
+		if( loopOfInstr.length < len )   loopOfInstr = new int[len];
+		int[] loopOfScc = new int[sccsCnt];
+		Arrays.fill(loopOfScc, -1);
+		loopsCnt = 0;
+		for( int ip = 0; ip < len; ip++ ) {
+			loopOfInstr[ip] = -1;
+			if( !isInCycle[ip] )   continue;
+			if( loopOfScc[sccOfInstr[ip]] == -1 )   loopOfScc[sccOfInstr[ip]] = loopsCnt++;
+			loopOfInstr[ip] = loopOfScc[sccOfInstr[ip]];
+		}
+		if( loopClassifications.length < loopsCnt )   loopClassifications = new int[loopsCnt];
+		Arrays.fill(loopClassifications, 0, loopsCnt, LOOP_BOUNDED);
+	}
+
+	boolean isCallingXMacro(int[] instrsIndices) {
+		for( int iInstrIdx : instrsIndices ) {
+			if( opcodeTable.opcodes[iInstrIdx] == OpcodeTable.OP_XMACRO )   return true;
+		}
+		return false;
+	}
+
+	// returns for each node if it can reach the end of the program or a failure
+	boolean[] retCanTerminate(int nNodes) {
+		int[] reverseStarts = new int[nNodes + 1];
+		int[] reverseFroms = new int[adjTos.length];
+		for( int edge = 0; edge < adjTos.length; edge++ ) {
+			if( adjTos[edge] != TERMINAL )   reverseStarts[adjTos[edge] + 1]++;
+		}
+		for( int node = 0; node < nNodes; node++ )   reverseStarts[node + 1] += reverseStarts[node];
+		int[] fillIdx = Arrays.copyOf(reverseStarts, nNodes);
+
+		boolean[] canTerminate = new boolean[nNodes];
+		int[] queue = new int[nNodes];
+		int queueCnt = 0;
+		for( int node = 0; node < nNodes; node++ ) {
+			for( int edge = adjStarts[node]; edge < adjStarts[node + 1]; edge++ ) {
+				if( adjTos[edge] == TERMINAL ) {
+					if( !canTerminate[node] )   queue[queueCnt++] = node;
+					canTerminate[node] = true;
+				}
+				else {
+					reverseFroms[fillIdx[adjTos[edge]]++] = node;
+				}
+			}
+		}
+
+		for( int queueIdx = 0; queueIdx < queueCnt; queueIdx++ ) {
+			int node = queue[queueIdx];
+			for( int edge = reverseStarts[node]; edge < reverseStarts[node + 1]; edge++ ) {
+				int from = reverseFroms[edge];
+				if( canTerminate[from] )   continue;
+				canTerminate[from] = true;
+				queue[queueCnt++] = from;
+			}
+		}
+		return canTerminate;
+	}
+
+	// longest path in steps from the entry to a terminal edge, the graph must be acyclic
+	// tarjan numbers the sccs in reverse topological order, so all successors of a node are computed before the node
+	int retLongestPath(int nNodes, int[] sccOfNode, int sccsCnt) {
+		int[] nodeOfScc = new int[sccsCnt]; // every scc is a single node because the graph is acyclic
+		for( int node = 0; node < nNodes; node++ )   nodeOfScc[sccOfNode[node]] = node;
+
+		int[] longest = new int[nNodes];
+		for( int scc = 0; scc < sccsCnt; scc++ ) {
+			int node = nodeOfScc[scc];
+			int maxSuccessor = 0;
+			for( int edge = adjStarts[node]; edge < adjStarts[node + 1]; edge++ ) {
+				int successorSteps = adjTicks[edge] + (adjTos[edge] == TERMINAL ? 0 : longest[adjTos[edge]]);
+				maxSuccessor = Math.max(maxSuccessor, successorSteps);
+			}
+			longest[node] = 1 + maxSuccessor; // one step for the execution of the instruction
+		}
+		return longest[0];
+	}
+
+	// a node is in a cycle if its scc has more than one node or if it has a edge to itself
+	static boolean[] retIsInCycle(int nNodes, int[] starts, int[] tos, int[] sccOfNode, int sccsCnt) {
+		int[] sccSizes = new int[sccsCnt];
+		for( int node = 0; node < nNodes; node++ )   sccSizes[sccOfNode[node]]++;
+
+		boolean[] isInCycle = new boolean[nNodes];
+		for( int node = 0; node < nNodes; node++ ) {
+			isInCycle[node] = sccSizes[sccOfNode[node]] > 1;
+			for( int edge = starts[node]; edge < starts[node + 1]; edge++ ) {
+				if( tos[edge] == node )   isInCycle[node] = true;
+			}
+		}
+		return isInCycle;
+	}
+
+	// iterative tarjan algorithm for the strongly connected components
+	// edges to TERMINAL are ignored
+	// returns the number of sccs, the sccs are numbered in reverse topological order
+	static int retSccs(int nNodes, int[] starts, int[] tos, int[] sccOfNode) {
+		int[] indices = new int[nNodes];
+		int[] lowlinks = new int[nNodes];
+		boolean[] isOnStack = new boolean[nNodes];
+		int[] stack = new int[nNodes];
+		int stackCnt = 0;
+		int[] callStack = new int[nNodes]; // nodes of the simulated recursion
+		int[] callEdge = new int[nNodes]; // next edge of the node in the simulated recursion
+		Arrays.fill(indices, -1);
+
+		int index = 0;
+		int sccsCnt = 0;
+		for( int root = 0; root < nNodes; root++ ) {
+			if( indices[root] != -1 )   continue;
+
+			int depth = 0;
+			callStack[0] = root;
+			callEdge[0] = starts[root];
+			indices[root] = lowlinks[root] = index++;
+			stack[stackCnt++] = root;
+			isOnStack[root] = true;
+
+			while( depth >= 0 ) {
+				int node = callStack[depth];
+				if( callEdge[depth] < starts[node + 1] ) {
+					int to = tos[callEdge[depth]++];
+					if( to == TERMINAL )   continue;
+
+					if( indices[to] == -1 ) {
+						// recurse
+						depth++;
+						callStack[depth] = to;
+						callEdge[depth] = starts[to];
+						indices[to] = lowlinks[to] = index++;
+						stack[stackCnt++] = to;
+						isOnStack[to] = true;
+					}
+					else if( isOnStack[to] ) {
+						lowlinks[node] = Math.min(lowlinks[node], indices[to]);
+					}
+					continue;
+				}
+
+				// all edges are visited, node is the root of a scc if its lowlink is its index
+				if( lowlinks[node] == indices[node] ) {
+					int member;
+					do {
+						member = stack[--stackCnt];
+						isOnStack[member] = false;
+						sccOfNode[member] = sccsCnt;
+					} while( member != node );
+					sccsCnt++;
+				}
+
+				depth--;
+				if( depth >= 0 ) {
+					int parent = callStack[depth];
+					lowlinks[parent] = Math.min(lowlinks[parent], lowlinks[node]);
+				}
+			}
+		}
+		return sccsCnt;
+	}
+
+	@Override
+	void transition(int ip, int height, int flag, int ticks) {
+		addEdge(currentState, retState(ip, height, flag), ticks);
+		super.transition(ip, height, flag, ticks);
+	}
+
+	@Override
+	void terminate(int height, int ticks) {
+		if( currentState != -1 )   addEdge(currentState, TERMINAL, ticks);
+		super.terminate(height, ticks);
+	}
+
+	@Override
+	void failHard(int ticks) {
+		addEdge(currentState, TERMINAL, ticks);
+		super.failHard(ticks);
+	}
+
+	void addEdge(int from, int to, int ticks) {
+		if( edgesCnt == edgeFroms.length ) {
+			edgeFroms = Arrays.copyOf(edgeFroms, edgesCnt * 2);
+			edgeTos = Arrays.copyOf(edgeTos, edgesCnt * 2);
+			edgeTicks = Arrays.copyOf(edgeTicks, edgesCnt * 2);
+		}
+		edgeFroms[edgesCnt] = from;
+		edgeTos[edgesCnt] = to;
+		edgeTicks[edgesCnt] = ticks;
+		edgesCnt++;
+	}
+}
@@ -54,6 +54,12 @@ public class Instrs {
 
 		// checks if last call wasn't errorous
 		boolean isOk();
+
+		// returns the immutable state of the arrays, used by Ctx.snapshot()
+		// the implementation should share the arrays copy-on-write with the snapshot
+		Object retSnapshot();
+		// restores the state returned by retSnapshot(), the snapshot can be restored multiple times
+		void restoreSnapshot(Object snapshot);
 	}
 
 	public interface IDomainSpecificCtx extends IResetable {
@@ -69,6 +75,53 @@ public class Instrs {
 
 
 
+	// operand stack of doubles with a fixed capacity
+	// values are stored unboxed and the operations aren't synchronized (like in java.util.Stack), so nothing gets allocated
+	public static class DoubleStack {
+		public double[] arr;
+		public int topIdx = -1; // index of the top element, -1 if the stack is empty
+
+		public DoubleStack(int capacity) {
+			arr = new double[capacity];
+		}
+
+		// returns false if the capacity is exhausted, the value is not pushed in this case
+		public boolean push(double val) {
+			if( topIdx+1 >= arr.length )   return false;
+			arr[++topIdx] = val;
+			return true;
+		}
+
+		public double pop() {
+			return arr[topIdx--];
+		}
+
+		public double peek() {
+			return arr[topIdx];
+		}
+
+		// access with the index from the bottom of the stack
+		public double get(int idx) {
+			return arr[idx];
+		}
+
+		public void set(int idx, double val) {
+			arr[idx] = val;
+		}
+
+		public int size() {
+			return topIdx+1;
+		}
+
+		public boolean empty() {
+			return topIdx < 0;
+		}
+
+		public void clear() {
+			topIdx = -1;
+		}
+	}
+
 	// context for interpretation
 	public static class Ctx {
 		// execution context which shares common datastructures
@@ -78,29 +131,57 @@ public class Instrs {
 		}
 
 
-		public Stack<Double> stack = new Stack<>();
+		public DoubleStack stack = new DoubleStack(STACKCAPACITY);
 
 		public boolean verbose = false;
 
 		public boolean terminatedGracefully; // used to indicate a gracefully termination done by the program or a fatal unrecoverable error while executing the program
+		public boolean fatalInstrError; // set by a instruction if the interpretation has to fail, even if it is the last instruction
 
 		public IDomainSpecificCtx domainSpecificCtx; // context used for specialized domain specific instructions
 		public IArrayCtx arrayCtx; // context for the array
 
 		public int skipedInstrsCnt; // number of remaining skiped instructions
 
-		public Integer jumpRelative; // if it is not null then a relative jump has to be executed
+		public boolean isJumpPending; // if it is true then a relative jump has to be executed
+		public int jumpDelta; // delta of the pending relative jump
 
 		public boolean configInterpretInvalidIndicesAsTermination;
 
 		public int remainingSteps = -2; // used to terminate the VM after a time horizon
                                         // is infinite if == -2
+		public boolean isOutOfSteps; // did the last interpretation fail because remainingSteps reached 0, the interpretation can be resumed with more steps then
+
+		// highest position of the program from which Interpreter fetched a instruction, the instructions after it didn't influence the interpretation
+		// is only raised by the interpretation, the caller sets it to -1 before the evaluation of a program so it covers all interpretations of the evaluation
+		// the other engines (SwitchInterpreter, CompilingInterpreter, ...) don't track it
+		// is only tracked if configTrackMaxFetchedIp is set, so only the callers which prune with it pay for the compare in the fetch
+		public int maxFetchedIp = -1;
+		public boolean configTrackMaxFetchedIp;
+
+		public static final int STACKCAPACITY = 256; // maximal number of values on the stack, a push onto a full stack fails the instruction
+		public static final int MAXCALLDEPTH = 64; // maximal number of execution contexts of a VM, a XMACRO call which would exceed it fails
 
 
 
 		List<Vm> vms = new ArrayList();
 		int currentSelectedVmIdx = 0;
 
+		// reused by Interpreter for each interpretation so the interpretation doesn't allocate anything
+		Vm rootVm = new Vm();
+		ExecutionCtx rootExecutionCtx = new ExecutionCtx();
+		ExecutionCtx[] macroFramePool = new ExecutionCtx[MAXCALLDEPTH]; // execution contexts of XMACRO calls indexed by the call depth, allocated on the first call and reused
+
+		// returns the pooled execution context for a XMACRO call at the depth (size of the execCtxStack before the call)
+		ExecutionCtx retMacroFrame(int depth) {
+			if( macroFramePool[depth] == null )   macroFramePool[depth] = new ExecutionCtx();
+			return macroFramePool[depth];
+		}
+
+		public boolean isSuspended; // was the last interpretation suspended at the end of the prefix by Interpreter.interpretPrefix() or Interpreter.resume()
+
+		public InterpreterProfiler.Counters profilerCounters; // counters of the profiler of the thread which uses the ctx, is null if the profiling is disabled
+
 		public Vm retCurrentVm() {
 			return vms.get(currentSelectedVmIdx);
 		}
@@ -118,6 +199,64 @@ public class Instrs {
 			if( arrayCtx != null )   arrayCtx.reset();
 		}
 
+		// state of a suspended interpretation, see Interpreter.interpretPrefix()
+		public static class Snapshot {
+			public double[] stackValues;
+			public int stackSize;
+			public boolean flag; // flag of the root VM
+			public int ip; // ip of the root execution context
+			public int skipedInstrsCnt;
+			public boolean isJumpPending;
+			public int jumpDelta;
+			public int remainingSteps;
+			public boolean terminatedGracefully;
+			public Object arrayCtxSnapshot; // shares the arrays copy-on-write with the array context
+
+			public Snapshot() {
+				this(STACKCAPACITY);
+			}
+
+			// a snapshot with a smaller capacity is grown by Ctx.snapshot() if the stack is deeper, used for snapshots which are kept for a long time
+			public Snapshot(int stackCapacity) {
+				stackValues = new double[stackCapacity];
+			}
+		}
+
+		// stores the state of the interpretation into the snapshot, the snapshot is reused so it doesn't allocate
+		// only the values on the stack are copied, the arrays are shared copy-on-write
+		// the domain specific context is not part of the snapshot
+		public void snapshot(Snapshot dest) {
+			assert vms.size() == 1 && retCurrentVm().execCtxStack.size() == 1; // only the root execution context can be captured
+
+			if( dest.stackValues.length < stack.size() )   dest.stackValues = new double[stack.size()];
+			dest.stackSize = stack.size();
+			System.arraycopy(stack.arr, 0, dest.stackValues, 0, dest.stackSize);
+			dest.flag = retCurrentVm().flag;
+			dest.ip = retCurrentVm().execCtxStack.peek().ip;
+			dest.skipedInstrsCnt = skipedInstrsCnt;
+			dest.isJumpPending = isJumpPending;
+			dest.jumpDelta = jumpDelta;
+			dest.remainingSteps = remainingSteps;
+			dest.terminatedGracefully = terminatedGracefully;
+			dest.arrayCtxSnapshot = arrayCtx != null ? arrayCtx.retSnapshot() : null;
+		}
+
+		// restores the state of the interpretation, the snapshot can be restored multiple times
+		public void restore(Snapshot src) {
+			assert vms.size() == 1 && retCurrentVm().execCtxStack.size() == 1;
+
+			System.arraycopy(src.stackValues, 0, stack.arr, 0, src.stackSize);
+			stack.topIdx = src.stackSize - 1;
+			retCurrentVm().flag = src.flag;
+			retCurrentVm().execCtxStack.peek().ip = src.ip;
+			skipedInstrsCnt = src.skipedInstrsCnt;
+			isJumpPending = src.isJumpPending;
+			jumpDelta = src.jumpDelta;
+			remainingSteps = src.remainingSteps;
+			terminatedGracefully = src.terminatedGracefully;
+			if( arrayCtx != null )   arrayCtx.restoreSnapshot(src.arrayCtxSnapshot);
+		}
+
 		// VM "context"
 		// we need multiple VM's because we can change the VM as we please with special instructions
 		//
@@ -142,6 +281,7 @@ public class Instrs {
 	}
 
 	// abstract instruction
+	// instructions must be stateless, all state of the interpretation is in the Ctx, so the tables can be shared between threads
 	public interface IInstr {
 		boolean exec(Ctx ctx);
 
@@ -175,59 +315,124 @@ public class Instrs {
 		}
 	}
 
+	// the interpreter is reentrant, all state of the interpretation is in the Ctx
+	// a interpreter can be shared between threads if each thread interprets with its own Ctx and the instrLookup is not modified
 	static public class Interpreter {
-		public Ctx ctx;
+		public Ctx ctx; // ctx of the methods without a ctx parameter
 		public InstructionLookupTable instrLookup;
 
+		// slots which are installed into the root VM at the begin of each interpretation, are static for a run, callable with XMACRO
+		// SwitchInterpreter and CompilingInterpreter have their own slots, the analyses (StackEffectVerifier, ControlFlowAnalysis, PeepholeOptimizer) treat the effect of a XMACRO as unknown
+		// XMacroInliner can inline the calls, see there
+		public List<Ctx.Vm.XMacroSlot> xmacroSlots = new ArrayList<>();
+
 		public boolean interpret(int[] instrsIndicesParam) {
-			ctx.terminatedGracefully = false;
-			ctx.skipedInstrsCnt = 0;
+			return interpret(ctx, instrsIndicesParam);
+		}
 
-			boolean execedOpSuccessfully = true;
+		public boolean interpret(Ctx ctx, int[] instrsIndicesParam) {
+			beginInterpretation(ctx);
+			return continueInterpretation(ctx, instrsIndicesParam, Integer.MAX_VALUE);
+		}
+
+		// interprets the program until the ip of the program reaches the end of the prefix, the interpretation is suspended then
+		// the instructions after the prefix are not read before the suspension, so the state (captured with Ctx.snapshot()) is the same for all programs with the same prefix
+		// returns false if the interpretation failed, Ctx.isSuspended is false if the interpretation terminated before the end of the prefix
+		// the result is the result of all programs with the same prefix in this case
+		public boolean interpretPrefix(int[] instrsIndicesParam, int prefixLength) {
+			return interpretPrefix(ctx, instrsIndicesParam, prefixLength);
+		}
 
-			// we need to have a root-VM
+		public boolean interpretPrefix(Ctx ctx, int[] instrsIndicesParam, int prefixLength) {
+			beginInterpretation(ctx);
+			return continueInterpretation(ctx, instrsIndicesParam, prefixLength);
+		}
+
+		// continues a suspended interpretation with a longer prefix, the state is usually restored with Ctx.restore()
+		// the program is interpreted to the end if the prefixLength is the length of the program
+		public boolean resume(int[] instrsIndicesParam, int prefixLength) {
+			return resume(ctx, instrsIndicesParam, prefixLength);
+		}
+
+		public boolean resume(Ctx ctx, int[] instrsIndicesParam, int prefixLength) {
+			ctx.fatalInstrError = false;
+			return continueInterpretation(ctx, instrsIndicesParam, prefixLength);
+		}
+
+		void beginInterpretation(Ctx ctx) {
+			ctx.terminatedGracefully = false;
+			ctx.skipedInstrsCnt = 0;
+			ctx.isJumpPending = false; // a jump of the last instruction of the previous program must not leak into this program
+			ctx.fatalInstrError = false;
+
+			// we need to have a fresh root-VM
+			// the VM and the execution context are reused so the interpretation doesn't allocate anything
+			Ctx.Vm rootVm = ctx.rootVm;
+			rootVm.flag = false;
+			rootVm.xmacros.clear();
+			for( int slotIdx = 0; slotIdx < xmacroSlots.size(); slotIdx++ )   rootVm.xmacros.add(xmacroSlots.get(slotIdx));
 			ctx.vms.clear();
-			ctx.vms.add(new Ctx.Vm());
+			ctx.vms.add(rootVm);
+			ctx.currentSelectedVmIdx = 0;
 
 			// we need to have a root execution context
-			Ctx.ExecutionCtx mainExecutionContext = new Ctx.ExecutionCtx();
-			mainExecutionContext.instrs = null; // to fetch the instructions from instrsIndicesParam
+			ctx.rootExecutionCtx.ip = 0;
+			ctx.rootExecutionCtx.instrs = null; // to fetch the instructions from instrsIndicesParam
 
-			ctx.retCurrentVm().execCtxStack.clear();
-			ctx.retCurrentVm().execCtxStack.push(mainExecutionContext);
+			rootVm.execCtxStack.clear();
+			rootVm.execCtxStack.push(ctx.rootExecutionCtx);
+		}
+
+		boolean continueInterpretation(Ctx ctx, int[] instrsIndicesParam, int prefixLength) {
+			boolean execedOpSuccessfully = true;
+			final int suspendIp = prefixLength < instrsIndicesParam.length ? prefixLength : Integer.MAX_VALUE;
+			ctx.isSuspended = false;
+			ctx.isOutOfSteps = false;
 
 			for(;;) {
+				Ctx.ExecutionCtx cachedCurrentExecCtx = ctx.retCurrentVm().execCtxStack.peek();
+
+				// suspend at the end of the prefix
+				if( cachedCurrentExecCtx.ip >= suspendIp && cachedCurrentExecCtx.instrs == null ) {
+					ctx.isSuspended = true;
+					return true;
+				}
+
 				// limit time steps
 				if( ctx.remainingSteps != -2 ) { // if the time limit is active
 					assert ctx.remainingSteps != -1 && ctx.remainingSteps > -3; // we have some internal problem if this is false
 					if( ctx.remainingSteps == 0 ) {
+						ctx.isOutOfSteps = true; // nothing of the next step was executed, so the interpretation can be resumed
 						return false;
 					}
 
 					ctx.remainingSteps--;
 				}
 
-				Ctx.ExecutionCtx cachedCurrentExecCtx = ctx.retCurrentVm().execCtxStack.peek();
-
 				// check if ip is valid
 				if( cachedCurrentExecCtx.instrs == null ) {
 					if( cachedCurrentExecCtx.ip >= instrsIndicesParam.length )   break;
 				}
-				else {
-					if( cachedCurrentExecCtx.ip >= cachedCurrentExecCtx.instrs.length )   break;
+				else if( cachedCurrentExecCtx.ip >= cachedCurrentExecCtx.instrs.length && !ctx.isJumpPending ) {
+					// return from the macro to the caller, the ip of the caller was already advanced by the call
+					// skiped instructions which reach over the end of the macro are skiped in the caller
+					// a pending jump of the last instruction of the macro is relative to the macro, so it is executed before the return
+					ctx.retCurrentVm().execCtxStack.pop();
+					continue;
 				}
 
 				// ignore ignored instructions
 				if( ctx.skipedInstrsCnt > 0 ) {
+					if( ctx.profilerCounters != null && cachedCurrentExecCtx.instrs == null )   ctx.profilerCounters.skips[instrsIndicesParam[cachedCurrentExecCtx.ip]]++;
 					ctx.skipedInstrsCnt--;
 					cachedCurrentExecCtx.ip++;
 					continue;
 				}
 
 				// execute relative jump
-				if( ctx.jumpRelative != null ) {
-					cachedCurrentExecCtx.ip += ctx.jumpRelative;
-					ctx.jumpRelative = null;
+				if( ctx.isJumpPending ) {
+					cachedCurrentExecCtx.ip += ctx.jumpDelta;
+					ctx.isJumpPending = false;
 					continue;
 				}
 
@@ -243,8 +448,10 @@ public class Instrs {
 
 				// look up instruction / fetch
 				IInstr instr; // looked up instruction
+				int instrIdx = -1; // index of the instruction, -1 for instructions of macros
 				if( cachedCurrentExecCtx.instrs == null ) {
-					int instrIdx = instrsIndicesParam[cachedCurrentExecCtx.ip];
+					instrIdx = instrsIndicesParam[cachedCurrentExecCtx.ip];
+					if( ctx.configTrackMaxFetchedIp && cachedCurrentExecCtx.ip > ctx.maxFetchedIp )   ctx.maxFetchedIp = cachedCurrentExecCtx.ip;
 					instr = instrLookup.lookupByIdx(instrIdx);
 				}
 				else {
@@ -252,9 +459,17 @@ public class Instrs {
 				}
 
 				// interpret / execute instruction
-				execedOpSuccessfully = interpret(instr); // interpret single instruction in current VM
+				if( ctx.profilerCounters != null && instrIdx != -1 ) {
+					execedOpSuccessfully = interpretProfiled(ctx, instr, instrIdx);
+				}
+				else {
+					execedOpSuccessfully = interpret(ctx, instr); // interpret single instruction in current VM
+				}
 				cachedCurrentExecCtx = ctx.retCurrentVm().execCtxStack.peek(); // we need to update the cache because interpret could have changed it
 				
+				if( !execedOpSuccessfully && ctx.fatalInstrError ) {
+					return false;
+				}
 
 				// valid terminating condition
 				boolean isValidTermination;
@@ -262,10 +477,9 @@ public class Instrs {
 					isValidTermination = cachedCurrentExecCtx.ip == instrsIndicesParam.length;
 				}
 				else {
-					isValidTermination = cachedCurrentExecCtx.ip == cachedCurrentExecCtx.instrs.length;
+					isValidTermination = false; // the macro returns to the caller, the failure of the last instruction of a macro is a failure
 				}
 
-				// TODO< pop of exec stack and check if it is empty, if it is we can terminate >
 				if( isValidTermination ) {
 					break;
 				}
@@ -280,12 +494,12 @@ public class Instrs {
 				}
 			}
 
-			if( !postExec() )   return false;
+			if( !postExec(ctx) )   return false;
 
 			return true;
 		}
 
-		boolean postExec() {
+		boolean postExec(Ctx ctx) {
 			ctx.terminatedGracefully = true;
 			if( ctx.domainSpecificCtx != null )   ctx.domainSpecificCtx.terminatedInterpreationGracefully(ctx);
 
@@ -293,8 +507,28 @@ public class Instrs {
 			
 		}
 
+		// interpretation of the instruction with counting and sampling of the time
+		boolean interpretProfiled(Ctx ctx, IInstr instr, int instrIdx) {
+			InterpreterProfiler.Counters counters = ctx.profilerCounters;
+			counters.executions[instrIdx]++;
+
+			boolean res;
+			if( (counters.executions[instrIdx] & counters.sampleMask) == 0 ) {
+				long startNanos = System.nanoTime();
+				res = interpret(ctx, instr);
+				counters.sampledNanos[instrIdx] += System.nanoTime() - startNanos;
+				counters.samplesCnt[instrIdx]++;
+			}
+			else {
+				res = interpret(ctx, instr);
+			}
+
+			if( !res )   counters.failures[instrIdx]++;
+			return res;
+		}
+
 		// interpretation of the instruction
-		boolean interpret(IInstr instr) {
+		boolean interpret(Ctx ctx, IInstr instr) {
 			boolean res = false;
 			if( instr instanceof XMACRO ) {
 				XMACRO macroInstr = (XMACRO)instr;
@@ -304,13 +538,20 @@ public class Instrs {
 				if( macroInstr.macroIdx < 0 || macroInstr.macroIdx >= ctx.retCurrentVm().xmacros.size() ) { // is the macroIdx valid
 					return false;
 				}
+				int callDepth = ctx.retCurrentVm().execCtxStack.size();
+				if( callDepth >= Ctx.MAXCALLDEPTH ) { // recursion too deep
+					return false;
+				}
 
 				ctx.retCurrentVm().execCtxStack.peek().ip++;
 
 				//  do it
-				Ctx.ExecutionCtx mainExecutionContext = new Ctx.ExecutionCtx();
-				mainExecutionContext.instrs = ctx.retCurrentVm().xmacros.get(macroInstr.macroIdx).instrs;
-				ctx.retCurrentVm().execCtxStack.push(mainExecutionContext);
+				// the execution context is pooled so the call doesn't allocate
+				Ctx.ExecutionCtx macroExecutionCtx = ctx.retMacroFrame(callDepth);
+				macroExecutionCtx.ip = 0;
+				macroExecutionCtx.instrs = ctx.retCurrentVm().xmacros.get(macroInstr.macroIdx).instrs;
+				ctx.retCurrentVm().execCtxStack.push(macroExecutionCtx);
+				res = true;
 			}
 			else {
 				res = instr.exec(ctx);
@@ -327,6 +568,375 @@ public class Instrs {
 		
 	}
 
+	// executes one program over many inputs in lockstep
+	// each input has its own lane with its own stack, flag, ip, skip count and pending jump
+	// the stacks are stored as structure of arrays (all values of the same depth are adjacent) so the arithmetic over the lanes is a tight loop
+	//
+	// lanes which are at the same ip are executed together, lanes which diverged (because of PREDIGNOREIFFLAG or jumps) are masked out and executed in their own group
+	// gives the same results for each lane as Instrs.Interpreter with a stack which holds the input(s)
+	static public class BatchInterpreter {
+		public OpcodeTable opcodeTable;
+
+		public int remainingSteps = -2; // time limit for each lane, is infinite if == -2
+		public boolean configInterpretInvalidIndicesAsTermination;
+		public int stackCapacity = Ctx.STACKCAPACITY;
+
+		// results of the last interpret() call
+		public double[] outputs; // value on top of the stack of each lane
+		public long[] failureBits; // bit is set for each lane for which the interpretation failed or which left an empty stack
+
+		int nLanes;
+		double[] stacks; // value at depth d of lane l is at [d * nLanes + l]
+		int[] tops;
+		boolean[] flags;
+		int[] ips;
+		int[] skips;
+		boolean[] isJumpPendings;
+		int[] jumpDeltas;
+		int[] steps;
+		boolean[] isActives;
+
+		int[] groupLanes; // lanes which execute the instruction at the same ip
+		int[] execLanes; // lanes which execute a instruction in the current iteration
+
+		public BatchInterpreter(InstructionLookupTable instrLookup) {
+			opcodeTable = OpcodeTable.decode(instrLookup);
+		}
+
+		// returns if the program can be executed by the BatchInterpreter
+		// instructions which use a context (arrays, domain specific actions, macros) or which are unknown can't be executed
+		public boolean isSupported(int[] instrsIndices) {
+			for( int iInstrIdx : instrsIndices ) {
+				int opcode = opcodeTable.opcodes[iInstrIdx];
+				if( opcode == OpcodeTable.OP_GENERIC || opcode == OpcodeTable.OP_ACTION || opcode == OpcodeTable.OP_XMACRO || opcode >= OpcodeTable.OP_ARRPOPAPPEND ) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public boolean isFailed(int lane) {
+			return (failureBits[lane >> 6] & (1L << (lane & 63))) != 0;
+		}
+
+		// runs the program for each input, the input is the only value on the stack of the lane
+		public void interpret(int[] instrsIndices, double[] inputs) {
+			interpret(instrsIndices, new double[][]{inputs}, inputs.length);
+		}
+
+		// /param args args[argIdx][lane] are pushed in the order of argIdx before the program is executed
+		public void interpret(int[] instrsIndices, double[][] args, int nLanes) {
+			assert isSupported(instrsIndices);
+
+			resize(nLanes);
+
+			for( int lane = 0; lane < nLanes; lane++ ) {
+				tops[lane] = args.length - 1;
+				flags[lane] = false;
+				ips[lane] = 0;
+				skips[lane] = 0;
+				isJumpPendings[lane] = false;
+				steps[lane] = remainingSteps;
+				isActives[lane] = true;
+			}
+			for( int argIdx = 0; argIdx < args.length; argIdx++ ) {
+				System.arraycopy(args[argIdx], 0, stacks, argIdx * nLanes, nLanes);
+			}
+			java.util.Arrays.fill(failureBits, 0, (nLanes + 63) >> 6, 0L);
+
+			final int len = instrsIndices.length;
+			int activeCnt = nLanes;
+
+			while( activeCnt > 0 ) {
+				// part of the interpreter loop before the execution of a instruction
+				int execCnt = 0;
+				for( int lane = 0; lane < nLanes; lane++ ) {
+					if( !isActives[lane] )   continue;
+
+					// limit time steps
+					if( steps[lane] != -2 ) {
+						if( steps[lane] == 0 ) {
+							terminateLane(lane, false);
+							activeCnt--;
+							continue;
+						}
+						steps[lane]--;
+					}
+
+					if( ips[lane] >= len ) {
+						terminateLane(lane, true);
+						activeCnt--;
+						continue;
+					}
+
+					// ignore ignored instructions
+					if( skips[lane] > 0 ) {
+						skips[lane]--;
+						ips[lane]++;
+						continue;
+					}
+
+					// execute relative jump
+					if( isJumpPendings[lane] ) {
+						ips[lane] += jumpDeltas[lane];
+						isJumpPendings[lane] = false;
+						continue;
+					}
+
+					if( ips[lane] < 0 ) {
+						terminateLane(lane, configInterpretInvalidIndicesAsTermination);
+						activeCnt--;
+						continue;
+					}
+
+					execLanes[execCnt++] = lane;
+				}
+
+				// execute the instructions, grouped by ip
+				while( execCnt > 0 ) {
+					int groupIp = ips[execLanes[0]];
+					int groupCnt = 0;
+					int remainingCnt = 0;
+					for( int i = 0; i < execCnt; i++ ) {
+						int lane = execLanes[i];
+						if( ips[lane] == groupIp )   groupLanes[groupCnt++] = lane;
+						else                         execLanes[remainingCnt++] = lane; // masked out for this group
+					}
+					execCnt = remainingCnt;
+
+					execGroup(instrsIndices[groupIp], groupCnt);
+
+					// valid terminating condition, the result of the last instruction is ignored like in Instrs.Interpreter
+					for( int i = 0; i < groupCnt; i++ ) {
+						int lane = groupLanes[i];
+						ips[lane]++;
+						if( ips[lane] == len ) {
+							terminateLane(lane, true);
+							activeCnt--;
+						}
+						else if( !isActives[lane] ) { // instruction failed
+							terminateLane(lane, false);
+							activeCnt--;
+						}
+					}
+				}
+			}
+		}
+
+		void resize(int nLanes) {
+			this.nLanes = nLanes;
+			if( tops != null && tops.length >= nLanes && stacks.length >= stackCapacity * nLanes )   return;
+
+			stacks = new double[stackCapacity * nLanes];
+			tops = new int[nLanes];
+			flags = new boolean[nLanes];
+			ips = new int[nLanes];
+			skips = new int[nLanes];
+			isJumpPendings = new boolean[nLanes];
+			jumpDeltas = new int[nLanes];
+			steps = new int[nLanes];
+			isActives = new boolean[nLanes];
+			groupLanes = new int[nLanes];
+			execLanes = new int[nLanes];
+			outputs = new double[nLanes];
+			failureBits = new long[(nLanes + 63) >> 6];
+		}
+
+		void terminateLane(int lane, boolean success) {
+			isActives[lane] = false;
+			if( success && tops[lane] >= 0 ) {
+				outputs[lane] = stacks[tops[lane] * nLanes + lane];
+			}
+			else {
+				outputs[lane] = 0.0;
+				failureBits[lane >> 6] |= 1L << (lane & 63);
+			}
+		}
+
+		// executes the instruction for all lanes in groupLanes
+		// a failed instruction is signaled by clearing isActives of the lane
+		void execGroup(int instrIdx, int groupCnt) {
+			final int opcode = opcodeTable.opcodes[instrIdx];
+			final int intArg = opcodeTable.intArgs[instrIdx];
+			final double doubleArg = opcodeTable.doubleArgs[instrIdx];
+			final double doubleArg2 = opcodeTable.doubleArgs2[instrIdx];
+			final int n = nLanes;
+			final int capacity = stackCapacity;
+			final double[] stacks = this.stacks;
+			final int[] tops = this.tops;
+
+			switch( opcode ) {
+				case OpcodeTable.OP_ADD2:
+				case OpcodeTable.OP_ADD2_R:
+				case OpcodeTable.OP_SUB2:
+				case OpcodeTable.OP_SUB2_R:
+				case OpcodeTable.OP_MUL2:
+				case OpcodeTable.OP_MUL2_R:
+				case OpcodeTable.OP_DIV2:
+				case OpcodeTable.OP_DIV2_R:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					boolean withResilence = opcode == OpcodeTable.OP_ADD2_R || opcode == OpcodeTable.OP_SUB2_R || opcode == OpcodeTable.OP_MUL2_R || opcode == OpcodeTable.OP_DIV2_R;
+					if( top < 1 ) {
+						// alternative codepath for resilence
+						if( withResilence && top+1 < capacity ) {
+							tops[lane] = ++top;
+							stacks[top * n + lane] = (opcode == OpcodeTable.OP_ADD2_R || opcode == OpcodeTable.OP_SUB2_R) ? 0.0 : 1.0;
+						}
+						else {
+							isActives[lane] = false;
+						}
+						continue;
+					}
+
+					double inputA = stacks[top * n + lane];
+					double inputB = stacks[(top-1) * n + lane];
+					top--;
+					double res;
+					if( opcode == OpcodeTable.OP_ADD2 || opcode == OpcodeTable.OP_ADD2_R )        res = inputA + inputB;
+					else if( opcode == OpcodeTable.OP_SUB2 || opcode == OpcodeTable.OP_SUB2_R )   res = inputA - inputB;
+					else if( opcode == OpcodeTable.OP_MUL2 || opcode == OpcodeTable.OP_MUL2_R )   res = inputA * inputB;
+					else if( inputB != 0.0 )   res = inputA / inputB;
+					else if( withResilence )   res = 1.0;
+					else {
+						tops[lane] = top - 1; // both are poped even if the division fails
+						isActives[lane] = false;
+						continue;
+					}
+					stacks[top * n + lane] = res;
+					tops[lane] = top;
+				}
+				break;
+
+				case OpcodeTable.OP_EXP:
+				case OpcodeTable.OP_SQRT:
+				case OpcodeTable.OP_SIN:
+				case OpcodeTable.OP_LOG:
+				case OpcodeTable.OP_TANH:
+				case OpcodeTable.OP_ATAN:
+				case OpcodeTable.OP_MULVALUE:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					if( top < 0 ) {
+						isActives[lane] = false;
+						continue;
+					}
+					int valIdx = top * n + lane;
+					double v = stacks[valIdx];
+					switch( opcode ) {
+						case OpcodeTable.OP_EXP: v = Math.exp(v); break;
+						case OpcodeTable.OP_SQRT: v = Math.sqrt(v); break;
+						case OpcodeTable.OP_SIN: v = Math.sin(v); break;
+						case OpcodeTable.OP_LOG: v = Math.log(v); break;
+						case OpcodeTable.OP_TANH: v = Math.tanh(v); break;
+						case OpcodeTable.OP_ATAN: v = Math.atan(v); break;
+						default: v *= doubleArg; break; // OP_MULVALUE
+					}
+					stacks[valIdx] = v;
+				}
+				break;
+
+				case OpcodeTable.OP_JMP:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					isJumpPendings[lane] = true;
+					jumpDeltas[lane] = intArg;
+				}
+				break;
+
+				case OpcodeTable.OP_CMPGT:
+				case OpcodeTable.OP_CMPGTPOP:
+				case OpcodeTable.OP_CMPEQUAL:
+				case OpcodeTable.OP_CMPEQUALPOP:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					if( top < 1 ) {
+						isActives[lane] = false;
+						continue;
+					}
+					double inputA = stacks[top * n + lane];
+					double inputB = stacks[(top-1) * n + lane];
+					boolean isGt = opcode == OpcodeTable.OP_CMPGT || opcode == OpcodeTable.OP_CMPGTPOP;
+					flags[lane] = isGt ? inputA > inputB : Math.abs(inputA - inputB) < 0.001; // epsilon
+					if( opcode == OpcodeTable.OP_CMPGTPOP || opcode == OpcodeTable.OP_CMPEQUALPOP )   tops[lane] = top - 2;
+				}
+				break;
+
+				case OpcodeTable.OP_CMPGTZERO:
+				case OpcodeTable.OP_CMPGTZEROPOP:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					if( top < 0 ) {
+						isActives[lane] = false;
+						continue;
+					}
+					flags[lane] = stacks[top * n + lane] > 0;
+					if( opcode == OpcodeTable.OP_CMPGTZEROPOP )   tops[lane] = top - 1;
+				}
+				break;
+
+				case OpcodeTable.OP_PUSHCONST:
+				case OpcodeTable.OP_PUSHIFFLAG:
+				case OpcodeTable.OP_DUP:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					if( top+1 >= capacity || (opcode == OpcodeTable.OP_DUP && top < 0) ) {
+						isActives[lane] = false;
+						continue;
+					}
+					double v;
+					if( opcode == OpcodeTable.OP_PUSHCONST )         v = doubleArg;
+					else if( opcode == OpcodeTable.OP_PUSHIFFLAG )   v = flags[lane] ? doubleArg2 : doubleArg;
+					else                                             v = stacks[top * n + lane]; // OP_DUP
+					stacks[(top+1) * n + lane] = v;
+					tops[lane] = top + 1;
+				}
+				break;
+
+				case OpcodeTable.OP_POP:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					if( tops[lane] < 0 )   isActives[lane] = false;
+					else                   tops[lane]--;
+				}
+				break;
+
+				case OpcodeTable.OP_XCHG:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					int top = tops[lane];
+					if( top < intArg ) {
+						isActives[lane] = false;
+						continue;
+					}
+					int idxA = top * n + lane;
+					int idxB = (top - intArg) * n + lane;
+					double inputA = stacks[idxA];
+					stacks[idxA] = stacks[idxB];
+					stacks[idxB] = inputA;
+				}
+				break;
+
+				case OpcodeTable.OP_PREDIGNOREIFFLAG:
+				case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+				for( int i = 0; i < groupCnt; i++ ) {
+					int lane = groupLanes[i];
+					if( flags[lane] == (opcode == OpcodeTable.OP_PREDIGNOREIFFLAG) )   skips[lane] = intArg;
+				}
+				break;
+
+				default: // OP_MACRO is not executable, other opcodes are rejected by isSupported()
+				for( int i = 0; i < groupCnt; i++ )   isActives[groupLanes[i]] = false;
+				break;
+			}
+		}
+	}
+
 	// add - with or without resilence
 	public static class ADD2 implements IInstr {
 		public ADD2(boolean withResilence) {
@@ -342,7 +952,7 @@ public class Instrs {
 			else {
 				if( withResilence ) {
 					// alternative codepath for resilence
-					ctx.stack.push(0.0);
+					return ctx.stack.push(0.0);
 				}
 				else {
 					return false;
@@ -360,7 +970,7 @@ public class Instrs {
 			return retHumanName();
 		}
 
-		boolean withResilence;
+		public boolean withResilence;
 	}
 
 	// sub - with or without resilence
@@ -378,7 +988,7 @@ public class Instrs {
 			else {
 				if( withResilence ) {
 					// alternative codepath for resilence
-					ctx.stack.push(0.0);
+					return ctx.stack.push(0.0);
 				}
 				else {
 					return false;
@@ -396,7 +1006,7 @@ public class Instrs {
 			return retHumanName();
 		}
 
-		boolean withResilence;
+		public boolean withResilence;
 	}
 
 	// mul - with resilence
@@ -414,7 +1024,7 @@ public class Instrs {
 			else {
 				if( withResilence ) {
 					// alternative codepath for resilence
-					ctx.stack.push(1.0);
+					return ctx.stack.push(1.0);
 				}
 				else {
 					return false;
@@ -432,7 +1042,7 @@ public class Instrs {
 			return retHumanName();
 		}
 
-		boolean withResilence;
+		public boolean withResilence;
 	}
 
 	// div - with resilence
@@ -448,7 +1058,7 @@ public class Instrs {
 				if( inputB == 0.0f ) {
 					if( withResilence ) {
 						// alternative codepath for resilence
-						ctx.stack.push(1.0);
+						return ctx.stack.push(1.0);
 					}
 					else {
 						return false;
@@ -461,7 +1071,7 @@ public class Instrs {
 			else {
 				if( withResilence ) {
 					// alternative codepath for resilence
-					ctx.stack.push(1.0);
+					return ctx.stack.push(1.0);
 				}
 				else {
 					return false;
@@ -479,7 +1089,7 @@ public class Instrs {
 			return retHumanName();
 		}
 
-		boolean withResilence;
+		public boolean withResilence;
 	}
 
 	// exp
@@ -605,14 +1215,15 @@ public class Instrs {
 	// control flow
 
 	public static class JMP implements IInstr {
-		int delta;
+		public int delta;
 
 		public JMP(int delta) {
 			this.delta = delta;
 		}
 
 		public boolean exec(Ctx ctx) {
-			ctx.jumpRelative = new Integer(delta);
+			ctx.isJumpPending = true;
+			ctx.jumpDelta = delta;
 			return true;
 		}
 
@@ -629,7 +1240,7 @@ public class Instrs {
 	// misc/helpers
 
 	public static class CMPGT implements IInstr {
-		private boolean enablePop;
+		public boolean enablePop;
 
 		public CMPGT(boolean enablePop) {
 			this.enablePop = enablePop;
@@ -658,7 +1269,7 @@ public class Instrs {
 	}
 
 	public static class CMPEQUAL implements IInstr {
-		private boolean enablePop;
+		public boolean enablePop;
 
 		public CMPEQUAL(boolean enablePop) {
 			this.enablePop = enablePop;
@@ -687,7 +1298,7 @@ public class Instrs {
 	}
 
 	public static class PUSHCONST implements IInstr {
-		double v = 0.0f;
+		public double v = 0.0f;
 		String exactHumanName;
 
 		public PUSHCONST(String exactHumanName, double v) {
@@ -696,8 +1307,7 @@ public class Instrs {
 		}
 
 		public boolean exec(Ctx ctx) {
-			ctx.stack.push(v);
-			return true;
+			return ctx.stack.push(v);
 		}
 
 		public String retHumanName() {
@@ -726,7 +1336,7 @@ public class Instrs {
 	}
 
 	public static class XCHG implements IInstr {
-		int rel;
+		public int rel;
 
 		public XCHG() {
 			rel = 1;
@@ -759,8 +1369,7 @@ public class Instrs {
 	public static class DUP implements IInstr {
 		public boolean exec(Ctx ctx) {
 			if( ctx.stack.size() < 1 )   return false;
-			ctx.stack.push(ctx.stack.peek());
-			return true;
+			return ctx.stack.push(ctx.stack.peek());
 		}
 
 		public String retHumanName() {
@@ -774,7 +1383,7 @@ public class Instrs {
 
 	// generic action
 	public static class ACTION implements IInstr {
-		int actionIdx;
+		public int actionIdx;
 
 		public ACTION(int actionIdx) {
 			this.actionIdx = actionIdx;
@@ -798,8 +1407,8 @@ public class Instrs {
 
 	// predicate to ignore next instruction(s) (numer of ignored instructions is the argument) if flag is set
 	public static class PREDIGNOREIFFLAG implements IInstr {
-		int nInstrs; // number of skiped instructions
-		boolean flagCheckValue;
+		public int nInstrs; // number of skiped instructions
+		public boolean flagCheckValue;
 
 		public PREDIGNOREIFFLAG(int nInstrs, boolean flagCheckValue) {
 			this.nInstrs = nInstrs;
@@ -865,6 +1474,49 @@ public class Instrs {
 		}
 	}
 
+	// superinstruction which executes a sequence of instructions, built by the SuperinstructionFusion
+	// consumes the same number of steps as the single instructions would consume in the interpreter
+	// the failure of a instruction which is not the last of the sequence is fatal, because the interpreter would have failed at it even if the sequence is at the end of the program
+	public static class FUSED implements IInstr {
+		public IInstr[] instrs;
+
+		public FUSED(IInstr[] instrs) {
+			this.instrs = instrs;
+		}
+
+		public boolean exec(Ctx ctx) {
+			for( int idx = 0; idx < instrs.length; idx++ ) {
+				// limit time steps, the first instruction was already counted by the interpreter
+				if( idx > 0 && ctx.remainingSteps != -2 ) {
+					if( ctx.remainingSteps == 0 ) {
+						ctx.fatalInstrError = true;
+						return false;
+					}
+					ctx.remainingSteps--;
+				}
+
+				if( !instrs[idx].exec(ctx) ) {
+					if( idx < instrs.length-1 && !ctx.terminatedGracefully )   ctx.fatalInstrError = true;
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		public String retHumanName() {
+			return "FUSED";
+		}
+
+		public String retExactHumanName() {
+			String res = "FUSED(";
+			for( int idx = 0; idx < instrs.length; idx++ ) {
+				res += (idx > 0 ? "; " : "") + instrs[idx].retExactHumanName();
+			}
+			return res + ")";
+		}
+	}
+
 
 	//////////////////////////////////
 	//////////////////////////////////
@@ -873,7 +1525,7 @@ public class Instrs {
 	
 
 	public static class MULVALUE implements IInstr {
-		double v;
+		public double v;
 		String humanValue;
 
 		public MULVALUE(double v, String humanValue) {
@@ -903,7 +1555,7 @@ public class Instrs {
 
 	// TODO< reencode PONG and remove >
 	public static class PUSHIFFLAG implements IInstr {
-		double trueV, falseV;
+		public double trueV, falseV;
 
 		public PUSHIFFLAG(double falseV, double trueV) {
 			this.falseV = falseV;
@@ -911,8 +1563,7 @@ public class Instrs {
 		}
 
 		public boolean exec(Ctx ctx) {
-			ctx.stack.push(ctx.retCurrentVm().flag ? trueV : falseV);
-			return true;
+			return ctx.stack.push(ctx.retCurrentVm().flag ? trueV : falseV);
 		}
 
 		public String retHumanName() {
@@ -929,7 +1580,7 @@ public class Instrs {
 	// TODO< write as XMACRO which uses PUSHCONST 0, CMPGT, POP
 	// compare greater than zero, update flag, pop (if enabled)
 	public static class CMPGTZERO implements IInstr {
-		private boolean enablePop;
+		public boolean enablePop;
 
 		public CMPGTZERO(boolean enablePop) {
 			this.enablePop = enablePop;
@@ -0,0 +1,170 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// opt-in profiler of Instrs.Interpreter which counts per instruction index of the InstructionLookupTable
+// * executions
+// * failures, the execution returned false
+// * skiped executions because of PREDIGNOREIFFLAG
+// * nanoseconds of every sampleInterval-th execution, the total time is estimated from the samples
+//
+// each thread has its own counters which are merged on demand, so the interpreters don't need to synchronize
+// the profiling is enabled by setting Ctx.profilerCounters to the counters of the thread, it only costs a null check per instruction if it is disabled
+// instructions of macros are not counted because they don't have a index
+public class InterpreterProfiler {
+	public static class Counters {
+		public long[] executions;
+		public long[] failures;
+		public long[] skips;
+		public long[] sampledNanos;
+		public long[] samplesCnt;
+
+		public long sampleMask; // a execution is sampled if (executions & sampleMask) == 0
+
+		public Counters(int nInstrs, long sampleMask) {
+			this.sampleMask = sampleMask;
+			executions = new long[nInstrs];
+			failures = new long[nInstrs];
+			skips = new long[nInstrs];
+			sampledNanos = new long[nInstrs];
+			samplesCnt = new long[nInstrs];
+		}
+
+		public void ensureCapacity(int nInstrs) {
+			if( executions.length >= nInstrs )   return;
+			executions = Arrays.copyOf(executions, nInstrs);
+			failures = Arrays.copyOf(failures, nInstrs);
+			skips = Arrays.copyOf(skips, nInstrs);
+			sampledNanos = Arrays.copyOf(sampledNanos, nInstrs);
+			samplesCnt = Arrays.copyOf(samplesCnt, nInstrs);
+		}
+
+		public void add(Counters other) {
+			ensureCapacity(other.executions.length);
+			for( int instrIdx = 0; instrIdx < other.executions.length; instrIdx++ ) {
+				executions[instrIdx] += other.executions[instrIdx];
+				failures[instrIdx] += other.failures[instrIdx];
+				skips[instrIdx] += other.skips[instrIdx];
+				sampledNanos[instrIdx] += other.sampledNanos[instrIdx];
+				samplesCnt[instrIdx] += other.samplesCnt[instrIdx];
+			}
+		}
+
+		public void reset() {
+			Arrays.fill(executions, 0);
+			Arrays.fill(failures, 0);
+			Arrays.fill(skips, 0);
+			Arrays.fill(sampledNanos, 0);
+			Arrays.fill(samplesCnt, 0);
+		}
+
+		// estimated time of one execution of the instruction
+		// /param nanoTimeOverhead time of the measurement which is subtracted from each sample
+		public double retNanosPerExecution(int instrIdx, double nanoTimeOverhead) {
+			if( samplesCnt[instrIdx] == 0 )   return 0.0;
+			return Math.max(0.0, (double)sampledNanos[instrIdx] / (double)samplesCnt[instrIdx] - nanoTimeOverhead);
+		}
+	}
+
+	public int sampleInterval = 64; // every n-th execution of a instruction is timed, must be a power of two
+	public double nanoTimeOverhead; // time of two calls to System.nanoTime(), is included in each sample
+
+	public InterpreterProfiler() {
+		nanoTimeOverhead = retMeasuredNanoTimeOverhead();
+	}
+
+	// minimal time between two calls to System.nanoTime()
+	static double retMeasuredNanoTimeOverhead() {
+		long minNanos = Long.MAX_VALUE;
+		for( int i = 0; i < 10000; i++ ) {
+			long startNanos = System.nanoTime();
+			minNanos = Math.min(minNanos, System.nanoTime() - startNanos);
+		}
+		return (double)minNanos;
+	}
+
+	List<Counters> countersOfThreads = new ArrayList<>(); // guarded by itself
+	ThreadLocal<Counters> countersOfCurrentThread = new ThreadLocal<>();
+
+	// returns the counters of the current thread, they are created if the thread doesn't have counters
+	public Counters retCountersOfCurrentThread(int nInstrs) {
+		Counters counters = countersOfCurrentThread.get();
+		if( counters == null ) {
+			assert Long.bitCount(sampleInterval) == 1;
+			counters = new Counters(nInstrs, sampleInterval - 1);
+			countersOfCurrentThread.set(counters);
+			synchronized(countersOfThreads) {
+				countersOfThreads.add(counters);
+			}
+		}
+		counters.ensureCapacity(nInstrs);
+		return counters;
+	}
+
+	// enables the profiling of the interpretations with the ctx with the counters of the current thread
+	// the ctx must only be used by the current thread
+	public void enable(Instrs.Ctx ctx, Instrs.InstructionLookupTable instrLookup) {
+		ctx.profilerCounters = retCountersOfCurrentThread(instrLookup.table.length);
+	}
+
+	// sum of the counters of all threads
+	// the counters of running interpreters can be slightly off
+	public Counters retMerged() {
+		Counters merged = new Counters(0, sampleInterval - 1);
+		synchronized(countersOfThreads) {
+			for( Counters iCounters : countersOfThreads )   merged.add(iCounters);
+		}
+		return merged;
+	}
+
+	public void reset() {
+		synchronized(countersOfThreads) {
+			for( Counters iCounters : countersOfThreads )   iCounters.reset();
+		}
+	}
+
+	// row of the table, ordered by the estimated time
+	static class Row implements Comparable<Row> {
+		public int instrIdx;
+		public double estimatedNanos;
+
+		public Row(int instrIdx, double estimatedNanos) {
+			this.instrIdx = instrIdx;
+			this.estimatedNanos = estimatedNanos;
+		}
+
+		@Override
+		public int compareTo(Row other) {
+			return Double.compare(other.estimatedNanos, estimatedNanos);
+		}
+	}
+
+	// returns the merged counters as table sorted by the estimated time, instructions which were never executed or skiped are omitted
+	public String retTable(Instrs.InstructionLookupTable instrLookup) {
+		Counters merged = retMerged();
+
+		List<Row> rows = new ArrayList<>();
+		double totalNanos = 0.0;
+		for( int instrIdx = 0; instrIdx < merged.executions.length; instrIdx++ ) {
+			if( merged.executions[instrIdx] == 0 && merged.skips[instrIdx] == 0 )   continue;
+			double estimatedNanos = merged.retNanosPerExecution(instrIdx, nanoTimeOverhead) * (double)merged.executions[instrIdx];
+			rows.add(new Row(instrIdx, estimatedNanos));
+			totalNanos += estimatedNanos;
+		}
+		Collections.sort(rows);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-5s %-28s %14s %12s %12s %12s %9s %7s\n", "idx", "instruction", "executions", "failures", "skips", "est. ms", "ns/exec", "time%"));
+		for( Row iRow : rows ) {
+			int instrIdx = iRow.instrIdx;
+			String name = instrIdx < instrLookup.table.length ? instrLookup.table[instrIdx].retExactHumanName() : "?";
+			double nsPerExec = merged.retNanosPerExecution(instrIdx, nanoTimeOverhead);
+			double timePercent = totalNanos == 0.0 ? 0.0 : iRow.estimatedNanos / totalNanos * 100.0;
+			sb.append(String.format("%-5d %-28s %14d %12d %12d %12.3f %9.1f %7.2f\n", instrIdx, name, merged.executions[instrIdx], merged.failures[instrIdx], merged.skips[instrIdx], iRow.estimatedNanos / 1e6, nsPerExec, timePercent));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,188 @@
+package ls;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// time allocation of Levin search
+//
+// the search runs in phases, the total budget T doubles with each phase
+// each program p gets T*P(p) steps in a phase, P(p) is the product of the probabilities of the instructions given by the IInstrProb
+// so each program gets the share of the time which corresponds to its probability, cheap programs don't wait behind expensive programs
+// and a solution with probability P and runtime t is found in the phase with T >= t/P, the optimal order up to a constant factor
+//
+// the state of a program which ran out of steps is kept (as a Ctx.Snapshot), the program is resumed with the additional steps in the next phase
+// so no work of a earlier phase is redone, programs which terminated are remembered and are not interpreted again
+// programs which ran out of steps inside of a XMACRO can't be captured, they are interpreted from the beginning in the next phase
+//
+// the programs of a phase are enumerated depth first, the subtrees whose prefix can't reach a budget of one step are pruned
+// the memory for the kept states grows linearly with T
+// the domain specific context is not part of the snapshots, so the instructions must not use it
+public class LevinScheduler {
+	public interface ISolutionTester {
+		// called for each program which terminated successfully, the ctx holds the state after the interpretation
+		// returns if the program is a solution
+		boolean isSolution(int[] program, Instrs.Ctx ctx);
+	}
+
+	public Instrs.Interpreter interpreter; // interprets with its ctx
+	public LevinSearchUtils.IInstrProb<Integer> instrProb; // probability of the instruction index at the position
+	public int nInstrs; // number of instructions
+	public int maxLength;
+	public long initialTotalBudget = 1; // T of the first phase
+	public int maxPhases = 40;
+	public double[] inputs = new double[0]; // are pushed onto the stack before the interpretation
+
+	// statistics
+	public int phasesCnt;
+	public long startedProgramsCnt; // number of programs which were interpreted from the beginning
+	public long resumedProgramsCnt; // number of programs which were resumed from the state of a earlier phase
+	public long restartedProgramsCnt; // number of programs which ran out of steps inside of a XMACRO, they have to be interpreted again
+	public long executedStepsCnt;
+
+	// state of a program which ran out of steps
+	static class PausedProgram {
+		public Instrs.Ctx.Snapshot snapshot;
+		public long usedSteps;
+	}
+
+	static final PausedProgram TERMINATED = new PausedProgram(); // marks programs which terminated, they are not interpreted again
+
+	// keyed by the content of the program, the rank of LevinSearch overflows for long programs which get steps with a non uniform IInstrProb
+	HashMap<ProgramKey, PausedProgram> states = new HashMap<>();
+	ProgramKey lookupKey = new ProgramKey(new int[0]); // key of the lookups, refers to the current program
+
+	double[][] probabilities; // probability of the instruction at the position, indexed by [position][instruction]
+	double[] maxSuffixProbabilities; // product of the maximal probabilities from the position to the end of the current program
+
+	int[] program;
+	long totalBudget;
+	ISolutionTester tester;
+
+	// returns the first found solution, null if no solution was found in maxPhases phases
+	public int[] search(ISolutionTester tester) {
+		assert interpreter.ctx.domainSpecificCtx == null;
+
+		this.tester = tester;
+		initProbabilities();
+
+		for( int phase = 0; phase < maxPhases; phase++ ) {
+			totalBudget = initialTotalBudget << phase;
+			phasesCnt++;
+
+			for( int length = 1; length <= maxLength; length++ ) {
+				if( totalBudget * retMaxProbability(length) < 1.0 )   break; // no program of this or a greater length gets a step
+
+				program = new int[length];
+				if( searchPosition(0, 1.0) )   return program;
+			}
+		}
+		return null;
+	}
+
+	// the probabilities are position dependent, they are cached for the positions of the programs
+	void initProbabilities() {
+		probabilities = new double[maxLength][nInstrs];
+		for( int position = 0; position < maxLength; position++ ) {
+			for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ )   probabilities[position][instrIdx] = instrProb.retByInstr(instrIdx, position);
+		}
+	}
+
+	// maximal probability of a program of the length
+	double retMaxProbability(int length) {
+		double res = 1.0;
+		for( int position = 0; position < length; position++ ) {
+			double maxProbability = 0.0;
+			for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ )   maxProbability = Math.max(maxProbability, probabilities[position][instrIdx]);
+			res *= maxProbability;
+		}
+		return res;
+	}
+
+	// enumerates the instructions at the position, prefixProbability is the probability of the instructions before it
+	// returns if a solution was found, the program holds the solution then
+	boolean searchPosition(int position, double prefixProbability) {
+		for( int instrIdx = nInstrs - 1; instrIdx >= 0; instrIdx-- ) {
+			program[position] = instrIdx;
+			double probability = prefixProbability * probabilities[position][instrIdx];
+			if( totalBudget * probability * retMaxSuffixProbability(position + 1) < 1.0 )   continue; // no program with this prefix gets a step
+
+			if( position + 1 < program.length ) {
+				if( searchPosition(position + 1, probability) )   return true;
+			}
+			else if( runProgram((long)(totalBudget * probability)) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// maximal probability of the instructions from the position to the end of the program
+	double retMaxSuffixProbability(int position) {
+		if( maxSuffixProbabilities == null || maxSuffixProbabilities.length != program.length + 1 ) {
+			maxSuffixProbabilities = new double[program.length + 1];
+			maxSuffixProbabilities[program.length] = 1.0;
+			for( int iPosition = program.length - 1; iPosition >= 0; iPosition-- ) {
+				double maxProbability = 0.0;
+				for( int instrIdx = 0; instrIdx < nInstrs; instrIdx++ )   maxProbability = Math.max(maxProbability, probabilities[iPosition][instrIdx]);
+				maxSuffixProbabilities[iPosition] = maxProbability * maxSuffixProbabilities[iPosition + 1];
+			}
+		}
+		return maxSuffixProbabilities[position];
+	}
+
+	// interprets the program until it used the budget of steps, continues the interpretation of a earlier phase
+	// returns if the program is a solution
+	boolean runProgram(long budget) {
+		lookupKey.set(program);
+		PausedProgram state = states.get(lookupKey);
+		if( state == TERMINATED )   return false;
+
+		long usedSteps = state != null ? state.usedSteps : 0;
+		if( budget <= usedSteps )   return false; // no additional steps in this phase
+		int additionalSteps = (int)Math.min(budget - usedSteps, Integer.MAX_VALUE - 1); // -1 is a invalid value of remainingSteps
+
+		Instrs.Ctx ctx = interpreter.ctx;
+		boolean isSuccess;
+		if( state != null ) {
+			interpreter.interpretPrefix(ctx, program, 0); // begins the interpretation and suspends immediately, so the snapshot can be restored
+			ctx.restore(state.snapshot);
+			ctx.remainingSteps = additionalSteps;
+			isSuccess = interpreter.resume(ctx, program, program.length);
+			resumedProgramsCnt++;
+		}
+		else {
+			ctx.reset();
+			for( double iInput : inputs )   ctx.stack.push(iInput);
+			ctx.remainingSteps = additionalSteps;
+			isSuccess = interpreter.interpret(ctx, program);
+			startedProgramsCnt++;
+		}
+		executedStepsCnt += additionalSteps - ctx.remainingSteps;
+
+		if( !isSuccess && ctx.isOutOfSteps ) {
+			if( ctx.vms.size() == 1 && ctx.retCurrentVm().execCtxStack.size() == 1 ) {
+				if( state == null ) {
+					state = new PausedProgram();
+					state.snapshot = new Instrs.Ctx.Snapshot(ctx.stack.size());
+					states.put(new ProgramKey(Arrays.copyOf(program, program.length)), state);
+				}
+				ctx.snapshot(state.snapshot);
+				state.usedSteps = usedSteps + additionalSteps;
+			}
+			else { // inside of a XMACRO, is interpreted from the beginning with the budget of the next phase
+				if( state != null )   states.remove(lookupKey);
+				restartedProgramsCnt++;
+			}
+			return false;
+		}
+
+		if( state != null )   states.put(lookupKey, TERMINATED); // the map keeps its key, which refers to a copy of the program
+		else                  states.put(new ProgramKey(Arrays.copyOf(program, program.length)), TERMINATED);
+		return isSuccess && tester.isSolution(program, ctx);
+	}
+
+	// number of programs whose state is kept
+	public long retKeptStatesCnt() {
+		return states.size();
+	}
+}
@@ -9,6 +9,37 @@ public class LevinSearch {
 		for( int idx = 0; idx < size; idx++ )   arr[idx] = nInstrs - 1;
 	}
 
+	// index of the program in the order of next() for programs of its length
+	// next() begins with all instructions at nInstrs-1 and decrements the first position first, so the first position is the lowest digit
+	public long rank(int[] program) {
+		long index = 0;
+		for( int idx = program.length - 1; idx >= 0; idx-- )   index = index * nInstrs + (nInstrs - 1 - program[idx]);
+		return index;
+	}
+
+	// program with the index in the order of next() for programs of the length
+	public int[] unrank(long index, int length) {
+		int[] res = new int[length];
+		unrank(index, res);
+		return res;
+	}
+
+	// sets arr to the program with the index, the length is kept
+	public void setIndex(long index) {
+		unrank(index, arr);
+	}
+
+	public long retIndex() {
+		return rank(arr);
+	}
+
+	void unrank(long index, int[] program) {
+		for( int idx = 0; idx < program.length; idx++ ) {
+			program[idx] = nInstrs - 1 - (int)(index % nInstrs);
+			index /= nInstrs;
+		}
+	}
+
 	public boolean next() {
 		return next(0);
 	}
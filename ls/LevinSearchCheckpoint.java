@@ -0,0 +1,52 @@
+package ls;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// position of a search in the order of LevinSearch, used to resume a search after a restart
+// all programs of the length with a index below index and all shorter programs were searched
+//
+// the file is written to a temporary file first which is renamed atomically over the checkpoint, so a crash while writing leaves the last checkpoint intact
+public class LevinSearchCheckpoint {
+	static final int MAGIC = 0x4c534350; // "LSCP"
+
+	public int length; // program length
+	public long index; // index of the next program to search, see LevinSearch.rank()
+	public long elapsedBudget; // budget which was spent up to the checkpoint, the unit is chosen by the search
+
+	public LevinSearchCheckpoint(int length, long index, long elapsedBudget) {
+		this.length = length;
+		this.index = index;
+		this.elapsedBudget = elapsedBudget;
+	}
+
+	public void write(Path path) throws IOException {
+		Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try( DataOutputStream output = new DataOutputStream(Files.newOutputStream(tempPath)) ) {
+			output.writeInt(MAGIC);
+			output.writeInt(length);
+			output.writeLong(index);
+			output.writeLong(elapsedBudget);
+		}
+		Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	// returns null if there is no checkpoint
+	public static LevinSearchCheckpoint read(Path path) throws IOException {
+		try( DataInputStream input = new DataInputStream(Files.newInputStream(path)) ) {
+			if( input.readInt() != MAGIC )   throw new IOException("not a checkpoint: " + path);
+			int length = input.readInt();
+			long index = input.readLong();
+			long elapsedBudget = input.readLong();
+			return new LevinSearchCheckpoint(length, index, elapsedBudget);
+		}
+		catch( NoSuchFileException e ) {
+			return null;
+		}
+	}
+}
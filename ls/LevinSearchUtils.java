@@ -16,10 +16,10 @@ public class LevinSearchUtils {
 
     // approximation for not computable "solomonoff levin measure"
     // see mainly [2] and secondary [1]
-    public double calcSolomonoffLevinMeasure<AtomType>(IInstrProb<AtomType> instrProb, Program<AtomType> program) {
+    public static <AtomType> double calcSolomonoffLevinMeasure(IInstrProb<AtomType> instrProb, Program<AtomType> program) {
         double prod = 1.0;
-        for(int instructionI = 0; instructionI < program.instructions.Count; instructionI++)
-            prod *= instrProb.retByInstr(program.instrs[instructionI], instructionI);
+        for(int instructionI = 0; instructionI < program.instrs.size(); instructionI++)
+            prod *= instrProb.retByInstr(program.instrs.get(instructionI), instructionI);
         return prod;
     }
 }
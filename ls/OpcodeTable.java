@@ -0,0 +1,180 @@
+package ls;
+
+import instr.ArrayInstrs;
+
+// dense decoded form of a InstructionLookupTable
+// every instruction of the table is lowered to a opcode and its operands, all arrays are indexed by the instruction index
+// used by the interpreters and analysis passes which don't want to dispatch over IInstr
+public class OpcodeTable {
+	public static final int OP_GENERIC = 0; // unknown instruction, executed with IInstr.exec()
+	public static final int OP_ADD2 = 1;
+	public static final int OP_ADD2_R = 2;
+	public static final int OP_SUB2 = 3;
+	public static final int OP_SUB2_R = 4;
+	public static final int OP_MUL2 = 5;
+	public static final int OP_MUL2_R = 6;
+	public static final int OP_DIV2 = 7;
+	public static final int OP_DIV2_R = 8;
+	public static final int OP_EXP = 9;
+	public static final int OP_SQRT = 10;
+	public static final int OP_SIN = 11;
+	public static final int OP_LOG = 12;
+	public static final int OP_TANH = 13;
+	public static final int OP_ATAN = 14;
+	public static final int OP_JMP = 15; // intArg : delta
+	public static final int OP_CMPGT = 16;
+	public static final int OP_CMPGTPOP = 17;
+	public static final int OP_CMPEQUAL = 18;
+	public static final int OP_CMPEQUALPOP = 19;
+	public static final int OP_PUSHCONST = 20; // doubleArg : value
+	public static final int OP_POP = 21;
+	public static final int OP_XCHG = 22; // intArg : rel
+	public static final int OP_DUP = 23;
+	public static final int OP_ACTION = 24; // intArg : action index
+	public static final int OP_PREDIGNOREIFFLAG = 25; // intArg : number of skiped instructions
+	public static final int OP_PREDIGNOREIFNOTFLAG = 26; // intArg : number of skiped instructions
+	public static final int OP_MACRO = 27;
+	public static final int OP_XMACRO = 28; // intArg : macro index
+	public static final int OP_MULVALUE = 29; // doubleArg : value
+	public static final int OP_PUSHIFFLAG = 30; // doubleArg : false value, doubleArg2 : true value
+	public static final int OP_CMPGTZERO = 31;
+	public static final int OP_CMPGTZEROPOP = 32;
+	public static final int OP_ARRPOPAPPEND = 33; // intArg : array index
+	public static final int OP_ARRDEL = 34; // intArg : array index
+	public static final int OP_ARRLEN = 35; // intArg : array index
+	public static final int OP_ARRSETIDX = 36; // intArg : array index
+	public static final int OP_ARRRETIDX = 37; // intArg : array index
+	public static final int OP_ARRCHECKIDX = 38; // intArg : array index
+	public static final int OP_ARRREADNPUSH = 39; // intArg : array index
+	public static final int OP_ARRREL = 40; // intArg : array index, intArg2 : rel
+
+	public static final int NUMBEROFOPCODES = 41;
+
+	public int[] opcodes;
+	public int[] intArgs;
+	public int[] intArgs2;
+	public double[] doubleArgs;
+	public double[] doubleArgs2;
+	public Instrs.IInstr[] instrs; // the original instructions, used for OP_GENERIC
+
+	// lowers the table
+	// classes are compared exactly because a subclass could override exec()
+	public static OpcodeTable decode(Instrs.InstructionLookupTable instrLookup) {
+		int n = instrLookup.table.length;
+
+		OpcodeTable res = new OpcodeTable();
+		res.opcodes = new int[n];
+		res.intArgs = new int[n];
+		res.intArgs2 = new int[n];
+		res.doubleArgs = new double[n];
+		res.doubleArgs2 = new double[n];
+		res.instrs = new Instrs.IInstr[n];
+
+		for( int idx = 0; idx < n; idx++ ) {
+			Instrs.IInstr instr = instrLookup.table[idx];
+			res.instrs[idx] = instr;
+			res.opcodes[idx] = OP_GENERIC;
+
+			Class<?> c = instr.getClass();
+			if( c == Instrs.ADD2.class ) {
+				res.opcodes[idx] = ((Instrs.ADD2)instr).withResilence ? OP_ADD2_R : OP_ADD2;
+			}
+			else if( c == Instrs.SUB2.class ) {
+				res.opcodes[idx] = ((Instrs.SUB2)instr).withResilence ? OP_SUB2_R : OP_SUB2;
+			}
+			else if( c == Instrs.MUL2.class ) {
+				res.opcodes[idx] = ((Instrs.MUL2)instr).withResilence ? OP_MUL2_R : OP_MUL2;
+			}
+			else if( c == Instrs.DIV2.class ) {
+				res.opcodes[idx] = ((Instrs.DIV2)instr).withResilence ? OP_DIV2_R : OP_DIV2;
+			}
+			else if( c == Instrs.EXP.class )   res.opcodes[idx] = OP_EXP;
+			else if( c == Instrs.SQRT.class )   res.opcodes[idx] = OP_SQRT;
+			else if( c == Instrs.SIN.class )   res.opcodes[idx] = OP_SIN;
+			else if( c == Instrs.LOG.class )   res.opcodes[idx] = OP_LOG;
+			else if( c == Instrs.TANH.class )   res.opcodes[idx] = OP_TANH;
+			else if( c == Instrs.ATAN.class )   res.opcodes[idx] = OP_ATAN;
+			else if( c == Instrs.JMP.class ) {
+				res.opcodes[idx] = OP_JMP;
+				res.intArgs[idx] = ((Instrs.JMP)instr).delta;
+			}
+			else if( c == Instrs.CMPGT.class ) {
+				res.opcodes[idx] = ((Instrs.CMPGT)instr).enablePop ? OP_CMPGTPOP : OP_CMPGT;
+			}
+			else if( c == Instrs.CMPEQUAL.class ) {
+				res.opcodes[idx] = ((Instrs.CMPEQUAL)instr).enablePop ? OP_CMPEQUALPOP : OP_CMPEQUAL;
+			}
+			else if( c == Instrs.PUSHCONST.class ) {
+				res.opcodes[idx] = OP_PUSHCONST;
+				res.doubleArgs[idx] = ((Instrs.PUSHCONST)instr).v;
+			}
+			else if( c == Instrs.POP.class )   res.opcodes[idx] = OP_POP;
+			else if( c == Instrs.XCHG.class ) {
+				res.opcodes[idx] = OP_XCHG;
+				res.intArgs[idx] = ((Instrs.XCHG)instr).rel;
+			}
+			else if( c == Instrs.DUP.class )   res.opcodes[idx] = OP_DUP;
+			else if( c == Instrs.ACTION.class ) {
+				res.opcodes[idx] = OP_ACTION;
+				res.intArgs[idx] = ((Instrs.ACTION)instr).actionIdx;
+			}
+			else if( c == Instrs.PREDIGNOREIFFLAG.class ) {
+				Instrs.PREDIGNOREIFFLAG pred = (Instrs.PREDIGNOREIFFLAG)instr;
+				res.opcodes[idx] = pred.flagCheckValue ? OP_PREDIGNOREIFFLAG : OP_PREDIGNOREIFNOTFLAG;
+				res.intArgs[idx] = pred.nInstrs;
+			}
+			else if( c == Instrs.MACRO.class )   res.opcodes[idx] = OP_MACRO;
+			else if( c == Instrs.XMACRO.class ) {
+				res.opcodes[idx] = OP_XMACRO;
+				res.intArgs[idx] = ((Instrs.XMACRO)instr).macroIdx;
+			}
+			else if( c == Instrs.MULVALUE.class ) {
+				res.opcodes[idx] = OP_MULVALUE;
+				res.doubleArgs[idx] = ((Instrs.MULVALUE)instr).v;
+			}
+			else if( c == Instrs.PUSHIFFLAG.class ) {
+				res.opcodes[idx] = OP_PUSHIFFLAG;
+				res.doubleArgs[idx] = ((Instrs.PUSHIFFLAG)instr).falseV;
+				res.doubleArgs2[idx] = ((Instrs.PUSHIFFLAG)instr).trueV;
+			}
+			else if( c == Instrs.CMPGTZERO.class ) {
+				res.opcodes[idx] = ((Instrs.CMPGTZERO)instr).enablePop ? OP_CMPGTZEROPOP : OP_CMPGTZERO;
+			}
+			else if( c == ArrayInstrs.ARRPOPAPPEND.class ) {
+				res.opcodes[idx] = OP_ARRPOPAPPEND;
+				res.intArgs[idx] = ((ArrayInstrs.ARRPOPAPPEND)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRDEL.class ) {
+				res.opcodes[idx] = OP_ARRDEL;
+				res.intArgs[idx] = ((ArrayInstrs.ARRDEL)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRLEN.class ) {
+				res.opcodes[idx] = OP_ARRLEN;
+				res.intArgs[idx] = ((ArrayInstrs.ARRLEN)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRSETIDX.class ) {
+				res.opcodes[idx] = OP_ARRSETIDX;
+				res.intArgs[idx] = ((ArrayInstrs.ARRSETIDX)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRRETIDX.class ) {
+				res.opcodes[idx] = OP_ARRRETIDX;
+				res.intArgs[idx] = ((ArrayInstrs.ARRRETIDX)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRCHECKIDX.class ) {
+				res.opcodes[idx] = OP_ARRCHECKIDX;
+				res.intArgs[idx] = ((ArrayInstrs.ARRCHECKIDX)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRREADNPUSH.class ) {
+				res.opcodes[idx] = OP_ARRREADNPUSH;
+				res.intArgs[idx] = ((ArrayInstrs.ARRREADNPUSH)instr).arrayIdx;
+			}
+			else if( c == ArrayInstrs.ARRREL.class ) {
+				res.opcodes[idx] = OP_ARRREL;
+				res.intArgs[idx] = ((ArrayInstrs.ARRREL)instr).arrayIdx;
+				res.intArgs2[idx] = ((ArrayInstrs.ARRREL)instr).rel;
+			}
+		}
+
+		return res;
+	}
+}
@@ -0,0 +1,213 @@
+package ls;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// enumerates the programs of LevinSearch with several threads
+//
+// the programs of a length are numbered in the order of LevinSearch.next(), the index space 0 .. nInstrs^length-1 is split into contiguous ranges
+// the workers take the next range from a shared counter and enumerate it with their own LevinSearch, so the load is balanced without coordination per program
+// * the lengths are searched one after another, all workers finish a length before the next length is begun, so shorter programs are always found first
+// * a worker which finds a solution publishes its index, all workers skip the ranges and programs after the lowest published index
+//   so the returned solution is the first solution of the sequential search, independent of the scheduling
+// lengths whose index space doesn't fit into a long are not searched
+//
+// if checkpointPath is set the search writes a LevinSearchCheckpoint periodically and at the end of each length
+// the index of the checkpoint is the begin of the lowest range which is not finished, so a resumed search repeats at most the ranges which were in progress
+// the elapsed budget of the checkpoints is the wall clock time of the search in milliseconds, accumulated over the resumed searches
+public class ParallelLevinSearch {
+	public interface IProgramTester {
+		// called concurrently by the workers, the tester has to keep its mutable state per worker
+		// the program must not be modified or kept after the call
+		// returns if the program is a solution
+		boolean test(int[] program, int workerIdx);
+	}
+
+	public int nInstrs; // number of instructions
+	public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+	public long rangeSize = 4096; // number of programs of a range, small enough for balancing and large enough to keep the shared counter cold
+
+	public final AtomicLong testedProgramsCnt = new AtomicLong(); // statistics, number of tested programs
+
+	public Path checkpointPath; // null if no checkpoints are written
+	public long checkpointIntervalMilliseconds = 10000;
+
+	LevinSearch levinSearch = new LevinSearch(); // used for rank/unrank
+
+	int resumedLength; // position of the loaded checkpoint, the programs before it are not searched
+	long resumedIndex;
+	long elapsedMillisecondsBefore; // elapsed budget of the loaded checkpoint
+	long searchBeginMilliseconds = -1; // time of the first search() call, -1 if search() wasn't called
+	AtomicLong lastCheckpointMilliseconds = new AtomicLong();
+
+	public ParallelLevinSearch(int nInstrs) {
+		this.nInstrs = nInstrs;
+		levinSearch.nInstrs = nInstrs;
+	}
+
+	// loads the checkpoint from checkpointPath, the following searches begin at its position
+	// returns if a checkpoint was found
+	public boolean loadCheckpoint() throws IOException {
+		LevinSearchCheckpoint checkpoint = LevinSearchCheckpoint.read(checkpointPath);
+		if( checkpoint == null )   return false;
+
+		resumedLength = checkpoint.length;
+		resumedIndex = checkpoint.index;
+		elapsedMillisecondsBefore = checkpoint.elapsedBudget;
+		return true;
+	}
+
+	// elapsed wall clock time of the search including the time before the loaded checkpoint
+	public long retElapsedMilliseconds() {
+		return elapsedMillisecondsBefore + (searchBeginMilliseconds == -1 ? 0 : System.currentTimeMillis() - searchBeginMilliseconds);
+	}
+
+	// searches the programs from minLength to maxLength
+	// returns the first solution in the order of the sequential search, null if there is none
+	public int[] search(int minLength, int maxLength, IProgramTester tester) throws InterruptedException, ExecutionException, IOException {
+		if( searchBeginMilliseconds == -1 ) {
+			searchBeginMilliseconds = System.currentTimeMillis();
+			lastCheckpointMilliseconds.set(searchBeginMilliseconds);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			for( int length = minLength; length <= maxLength; length++ ) {
+				long programsCnt = retProgramsCnt(length);
+				if( programsCnt == -1 )   return null;
+				if( length < resumedLength )   continue; // was searched before the checkpoint
+
+				LengthSearch lengthSearch = new LengthSearch(length, programsCnt, length == resumedLength ? resumedIndex : 0, numberOfThreads);
+
+				List<Callable<Void>> workers = new ArrayList<>();
+				for( int workerIdx = 0; workerIdx < numberOfThreads; workerIdx++ ) {
+					workers.add(new Worker(workerIdx, lengthSearch, tester));
+				}
+				for( Future<Void> iResult : executor.invokeAll(workers) )   iResult.get(); // rethrows the exceptions of the workers
+
+				if( lengthSearch.solutionIdx.get() != Long.MAX_VALUE ) {
+					return levinSearch.unrank(lengthSearch.solutionIdx.get(), length);
+				}
+
+				resumedLength = length + 1;
+				resumedIndex = 0;
+				if( checkpointPath != null )   new LevinSearchCheckpoint(resumedLength, 0, retElapsedMilliseconds()).write(checkpointPath);
+			}
+			return null;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	// number of programs of the length, -1 if it doesn't fit into the index space
+	long retProgramsCnt(int length) {
+		long res = 1;
+		for( int i = 0; i < length; i++ ) {
+			if( res > (Long.MAX_VALUE / 2) / nInstrs )   return -1; // the half leaves room for the overshoot of nextRangeBegin
+			res *= nInstrs;
+		}
+		return res;
+	}
+
+	// writes a checkpoint if the interval elapsed since the last checkpoint, only one of the concurrent callers writes it
+	void writeCheckpointIfDue(LengthSearch lengthSearch) throws IOException {
+		long lastMilliseconds = lastCheckpointMilliseconds.get();
+		long nowMilliseconds = System.currentTimeMillis();
+		if( nowMilliseconds - lastMilliseconds < checkpointIntervalMilliseconds || !lastCheckpointMilliseconds.compareAndSet(lastMilliseconds, nowMilliseconds) )   return;
+
+		synchronized(this) { // a slow write can overlap with the next one
+			new LevinSearchCheckpoint(lengthSearch.length, lengthSearch.retFinishedIndex(), retElapsedMilliseconds()).write(checkpointPath);
+		}
+	}
+
+	// shared state of the workers for the search of one length
+	static class LengthSearch {
+		final int length;
+		final long programsCnt;
+		final AtomicLong nextRangeBegin;
+		final AtomicLong solutionIdx = new AtomicLong(Long.MAX_VALUE);
+
+		// lower bound of the begin of the range of each worker, Long.MAX_VALUE if the worker finished
+		// is set before the worker takes a range, so a range is always covered by nextRangeBegin or by this
+		final AtomicLongArray workerRangeBegins;
+
+		public LengthSearch(int length, long programsCnt, long beginIdx, int numberOfWorkers) {
+			this.length = length;
+			this.programsCnt = programsCnt;
+			nextRangeBegin = new AtomicLong(beginIdx);
+			workerRangeBegins = new AtomicLongArray(numberOfWorkers);
+			for( int workerIdx = 0; workerIdx < numberOfWorkers; workerIdx++ )   workerRangeBegins.set(workerIdx, beginIdx);
+		}
+
+		// index below which all programs were searched
+		long retFinishedIndex() {
+			long res = nextRangeBegin.get(); // must be read before the ranges of the workers
+			for( int workerIdx = 0; workerIdx < workerRangeBegins.length(); workerIdx++ )   res = Math.min(res, workerRangeBegins.get(workerIdx));
+			return Math.min(res, programsCnt);
+		}
+	}
+
+	// lowers the published index of the solution to the index
+	static void publishSolution(AtomicLong solutionIdx, long index) {
+		for(;;) {
+			long currentIdx = solutionIdx.get();
+			if( currentIdx <= index || solutionIdx.compareAndSet(currentIdx, index) )   return;
+		}
+	}
+
+	class Worker implements Callable<Void> {
+		final int workerIdx;
+		final LengthSearch lengthSearch;
+		final IProgramTester tester;
+
+		public Worker(int workerIdx, LengthSearch lengthSearch, IProgramTester tester) {
+			this.workerIdx = workerIdx;
+			this.lengthSearch = lengthSearch;
+			this.tester = tester;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			LevinSearch ls = new LevinSearch();
+			ls.nInstrs = nInstrs;
+			ls.resize(lengthSearch.length);
+
+			AtomicLong solutionIdx = lengthSearch.solutionIdx;
+			for(;;) {
+				lengthSearch.workerRangeBegins.set(workerIdx, lengthSearch.nextRangeBegin.get());
+				long rangeBegin = lengthSearch.nextRangeBegin.getAndAdd(rangeSize);
+				if( rangeBegin >= lengthSearch.programsCnt || rangeBegin > solutionIdx.get() ) {
+					lengthSearch.workerRangeBegins.set(workerIdx, Long.MAX_VALUE);
+					return null;
+				}
+				lengthSearch.workerRangeBegins.set(workerIdx, rangeBegin);
+				long rangeEnd = Math.min(rangeBegin + rangeSize, lengthSearch.programsCnt);
+
+				ls.setIndex(rangeBegin);
+				long index = rangeBegin;
+				for(; index < rangeEnd; index++ ) {
+					if( index > solutionIdx.get() )   break; // a earlier solution was found by another worker
+					if( tester.test(ls.arr, workerIdx) ) {
+						publishSolution(solutionIdx, index);
+						index++;
+						break;
+					}
+					ls.next();
+				}
+				testedProgramsCnt.addAndGet(index - rangeBegin);
+
+				if( checkpointPath != null )   writeCheckpointIfDue(lengthSearch);
+			}
+		}
+	}
+}
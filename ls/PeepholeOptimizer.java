@@ -0,0 +1,411 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import instr.InstrCode;
+import instr.Program;
+
+// peephole optimizer which removes dead and no-op instructions and folds constant arithmetic
+//
+// the result is a canonical normal form, programs which differ only by removed instructions or by equivalent instructions of the table are optimized to the same program
+// * unreachable instructions are removed
+// * NOP (JMP 0), jumps to the next remaining instruction and PREDIGNOREIFFLAG which can't skip a remaining instruction are removed
+// * DUP, POP and PUSH, POP pairs are removed
+// * PUSH a, PUSH b, binary op and PUSH a, unary op are folded to the PUSH of the result if the table contains it
+// * offsets of the remaining jumps and skips are recomputed
+// * each instruction is replaced by the instruction with the lowest index with the same semantics
+//
+// the optimized program has the same result (stack, flag and arrays) as the original program for the entry stack depth
+// it needs less or the same number of steps, so a optimized program can terminate within a time limit in which the original program runs out of time
+// the stack heights, the flag and the reachability are determined with the StackEffectVerifier, instructions are only removed if the removal can't change a failure into a success
+// the instructions after a XMACRO are not rewritten, because the body can skip instructions of the caller
+public class PeepholeOptimizer {
+	public boolean configInterpretInvalidIndicesAsTermination = false; // must be the same as in the Ctx
+
+	OpcodeTable opcodeTable;
+	StackEffectVerifier verifier;
+	int[] canonicalIdx; // index of the instruction with the lowest index with the same semantics, indexed by the instruction index
+
+	// analysis of the current program, indexed by ip
+	boolean[] isReachable = new boolean[0];
+	boolean[] canFail = new boolean[0]; // can the instruction fail in any reachable state
+	boolean[] canSkip = new boolean[0]; // can the PREDIGNOREIFFLAG skip in any reachable state
+	boolean[] isLanding = new boolean[0]; // does a jump or a skip land at the position
+
+	// rewrites of the current program, indexed by ip
+	boolean[] isRemoved = new boolean[0];
+	boolean[] isProtected = new boolean[0]; // instruction can't be removed because a jump or skip over it can't be encoded
+	int[] replacements = new int[0];
+	int[] newIps = new int[0]; // position in the optimized program of each position, has one more element for the end
+
+	public PeepholeOptimizer(Instrs.InstructionLookupTable instrLookup) {
+		opcodeTable = OpcodeTable.decode(instrLookup);
+		verifier = new StackEffectVerifier(instrLookup);
+
+		int n = opcodeTable.opcodes.length;
+		canonicalIdx = new int[n];
+		for( int instrIdx = 0; instrIdx < n; instrIdx++ ) {
+			canonicalIdx[instrIdx] = instrIdx;
+			for( int otherIdx = 0; otherIdx < instrIdx; otherIdx++ ) {
+				if( isSameSemantics(instrIdx, otherIdx) ) {
+					canonicalIdx[instrIdx] = otherIdx;
+					break;
+				}
+			}
+		}
+	}
+
+	boolean isSameSemantics(int instrIdxA, int instrIdxB) {
+		if( opcodeTable.opcodes[instrIdxA] != opcodeTable.opcodes[instrIdxB] )   return false;
+		if( opcodeTable.opcodes[instrIdxA] == OpcodeTable.OP_GENERIC )   return opcodeTable.instrs[instrIdxA] == opcodeTable.instrs[instrIdxB];
+		return
+			opcodeTable.intArgs[instrIdxA] == opcodeTable.intArgs[instrIdxB] &&
+			opcodeTable.intArgs2[instrIdxA] == opcodeTable.intArgs2[instrIdxB] &&
+			Double.doubleToLongBits(opcodeTable.doubleArgs[instrIdxA]) == Double.doubleToLongBits(opcodeTable.doubleArgs[instrIdxB]) &&
+			Double.doubleToLongBits(opcodeTable.doubleArgs2[instrIdxA]) == Double.doubleToLongBits(opcodeTable.doubleArgs2[instrIdxB]);
+	}
+
+	public Program<InstrCode> optimize(Program<InstrCode> program, int entryDepth) {
+		int[] instrsIndices = new int[program.instrs.size()];
+		for( int idx = 0; idx < instrsIndices.length; idx++ )   instrsIndices[idx] = program.instrs.get(idx).instrIdx;
+
+		int[] optimized = optimize(instrsIndices, entryDepth);
+
+		List<InstrCode> instrs = new ArrayList<>();
+		for( int iInstrIdx : optimized )   instrs.add(new InstrCode(iInstrIdx));
+		return new Program<>(instrs);
+	}
+
+	// /param entryDepth number of values on the stack before the program is executed
+	public int[] optimize(int[] instrsIndices, int entryDepth) {
+		int[] program = new int[instrsIndices.length];
+		for( int ip = 0; ip < program.length; ip++ )   program[ip] = canonicalIdx[instrsIndices[ip]];
+
+		// every pass which changes the program removes at least one instruction
+		for(;;) {
+			int[] optimized = optimizePass(program, entryDepth);
+			if( Arrays.equals(optimized, program) )   return program;
+			program = optimized;
+		}
+	}
+
+	int[] optimizePass(int[] program, int entryDepth) {
+		final int len = program.length;
+		if( len == 0 )   return program;
+
+		if( isRemoved.length < len + 1 ) {
+			isReachable = new boolean[len + 1];
+			canFail = new boolean[len + 1];
+			canSkip = new boolean[len + 1];
+			isLanding = new boolean[len + 1];
+			isRemoved = new boolean[len + 1];
+			isProtected = new boolean[len + 1];
+			replacements = new int[len + 1];
+			newIps = new int[len + 1];
+		}
+
+		analyse(program, entryDepth);
+
+		Arrays.fill(isProtected, 0, len, false);
+		for( int ip = 0; ip < len; ip++ ) {
+			if( opcodeTable.opcodes[program[ip]] != OpcodeTable.OP_XMACRO )   continue;
+			for( int iIp = ip + 1; iIp < len; iIp++ )   isProtected[iIp] = true;
+			break;
+		}
+		for(;;) {
+			if( !selectRewrites(program) )   continue; // instructions at the end were protected
+
+			int[] res = rebuild(program);
+			if( res != null )   return res;
+			// the range of a jump or skip which can't be encoded was protected
+		}
+	}
+
+	// determines the reachable instructions, which instructions can fail and the landing positions
+	void analyse(int[] program, int entryDepth) {
+		final int len = program.length;
+
+		Arrays.fill(isReachable, 0, len, false);
+		Arrays.fill(canFail, 0, len, false);
+		Arrays.fill(canSkip, 0, len, false);
+		Arrays.fill(isLanding, 0, len, false);
+
+		verifier.configInterpretInvalidIndicesAsTermination = configInterpretInvalidIndicesAsTermination;
+		verifier.verify(program, entryDepth);
+		for( int stateIdx = 0; stateIdx < verifier.visitedCnt; stateIdx++ ) {
+			int state = verifier.visitedStates[stateIdx];
+			int ip = verifier.retIp(state);
+			int height = verifier.retHeight(state);
+			int flag = state % 3;
+			int instrIdx = program[ip];
+
+			isReachable[ip] = true;
+			if( retCanFail(instrIdx, height) )   canFail[ip] = true;
+
+			int opcode = opcodeTable.opcodes[instrIdx];
+			if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG && flag != StackEffectVerifier.FLAG_FALSE )   canSkip[ip] = true;
+			if( opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG && flag != StackEffectVerifier.FLAG_TRUE )   canSkip[ip] = true;
+		}
+
+		for( int ip = 0; ip < len; ip++ ) {
+			int target = retTarget(program, ip);
+			if( target >= 0 && target < len )   isLanding[target] = true;
+		}
+	}
+
+	// same conditions as in StackEffectVerifier.step()
+	boolean retCanFail(int instrIdx, int height) {
+		StackEffectVerifier.StackEffect effect = verifier.effects[instrIdx];
+		if( opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_XMACRO || effect.neverSucceeds || effect.isUnknown || effect.mayFailAtRuntime )   return true;
+		if( height == StackEffectVerifier.HEIGHT_UNKNOWN )   return effect.minDepth > 0 || effect.pushes > effect.pops;
+		if( height < effect.minDepth )   return !(effect.withResilence && height + 1 <= verifier.stackCapacity);
+		return height - effect.pops + effect.pushes > verifier.stackCapacity;
+	}
+
+	// returns the position after the jump or the skip of the instruction, -1 if it isn't a jump or skip
+	// the position can be outside of the program
+	int retTarget(int[] program, int ip) {
+		int instrIdx = program[ip];
+		switch( opcodeTable.opcodes[instrIdx] ) {
+			case OpcodeTable.OP_JMP:
+			return ip + 1 + opcodeTable.intArgs[instrIdx];
+
+			case OpcodeTable.OP_PREDIGNOREIFFLAG:
+			case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+			if( opcodeTable.intArgs[instrIdx] <= 0 )   return -1;
+			return ip + 1 + opcodeTable.intArgs[instrIdx];
+
+			default:
+			return -1;
+		}
+	}
+
+	// selects the removed and replaced instructions
+	// returns false if instructions at the end had to be protected, the selection has to be repeated in this case
+	boolean selectRewrites(int[] program) {
+		final int len = program.length;
+
+		for( int ip = 0; ip < len; ip++ ) {
+			isRemoved[ip] = !isReachable[ip] && !isProtected[ip];
+			replacements[ip] = program[ip];
+		}
+
+		for( int ip = 0; ip < len; ip++ ) {
+			if( isRemoved[ip] || isProtected[ip] )   continue;
+
+			int instrIdx = program[ip];
+			int opcode = opcodeTable.opcodes[instrIdx];
+
+			// NOP
+			if( opcode == OpcodeTable.OP_JMP && opcodeTable.intArgs[instrIdx] == 0 ) {
+				isRemoved[ip] = true;
+				continue;
+			}
+
+			// skip which never skips
+			if( (opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG) && (opcodeTable.intArgs[instrIdx] <= 0 || !canSkip[ip]) ) {
+				isRemoved[ip] = true;
+				continue;
+			}
+
+			// DUP, POP and PUSH, POP
+			if( (opcode == OpcodeTable.OP_DUP || opcode == OpcodeTable.OP_PUSHCONST || opcode == OpcodeTable.OP_PUSHIFFLAG) && !canFail[ip] && isRewritable(ip + 1, len) && opcodeTable.opcodes[program[ip + 1]] == OpcodeTable.OP_POP ) {
+				isRemoved[ip] = true;
+				isRemoved[ip + 1] = true;
+				ip++;
+				continue;
+			}
+
+			// PUSH a, PUSH b, binary op
+			if( opcode == OpcodeTable.OP_PUSHCONST && !canFail[ip] && isRewritable(ip + 1, len) && isRewritable(ip + 2, len) && opcodeTable.opcodes[program[ip + 1]] == OpcodeTable.OP_PUSHCONST && !canFail[ip + 1] ) {
+				int foldedIdx = retFoldedBinary(opcodeTable.opcodes[program[ip + 2]], opcodeTable.doubleArgs[program[ip + 1]], opcodeTable.doubleArgs[instrIdx]);
+				if( foldedIdx != -1 ) {
+					replacements[ip] = foldedIdx;
+					isRemoved[ip + 1] = true;
+					isRemoved[ip + 2] = true;
+					ip += 2;
+					continue;
+				}
+			}
+
+			// PUSH a, unary op
+			if( opcode == OpcodeTable.OP_PUSHCONST && !canFail[ip] && isRewritable(ip + 1, len) ) {
+				int foldedIdx = retFoldedUnary(program[ip + 1], opcodeTable.doubleArgs[instrIdx]);
+				if( foldedIdx != -1 ) {
+					replacements[ip] = foldedIdx;
+					isRemoved[ip + 1] = true;
+					ip++;
+					continue;
+				}
+			}
+		}
+
+		// jumps and skips over removed instructions are NOPs
+		for( boolean isChanged = true; isChanged; ) {
+			isChanged = false;
+			for( int ip = 0; ip < len; ip++ ) {
+				if( isRemoved[ip] || isProtected[ip] )   continue;
+
+				int target = retTarget(program, ip);
+				if( target <= ip )   continue; // no jump or skip or a backward jump
+
+				boolean isOverRemovedOnly = true;
+				for( int iIp = ip + 1; iIp < Math.min(target, len); iIp++ ) {
+					if( !isRemoved[iIp] )   isOverRemovedOnly = false;
+				}
+				if( isOverRemovedOnly ) {
+					isRemoved[ip] = true;
+					isChanged = true;
+				}
+			}
+		}
+
+		// the last instruction gets special treatment by the interpreter, its failure is ignored and a pending jump isn't executed
+		// so the removal of instructions at the end must not make a instruction the last one which can fail or jump
+		int lastIp = len - 1;
+		while( lastIp >= 0 && isRemoved[lastIp] )   lastIp--;
+		if( lastIp >= 0 && lastIp < len - 1 ) {
+			boolean isJmp = opcodeTable.opcodes[program[lastIp]] == OpcodeTable.OP_JMP && retTarget(program, lastIp) < len;
+			if( isReachable[lastIp] && (canFail[lastIp] || isJmp) ) {
+				for( int ip = lastIp + 1; ip < len; ip++ )   isProtected[ip] = true;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// can the instruction at ip be removed as part of a rewrite of the instruction before it
+	boolean isRewritable(int ip, int len) {
+		return ip < len && isReachable[ip] && !isLanding[ip] && !isProtected[ip] && !isRemoved[ip];
+	}
+
+	// returns the index of the PUSH of the result, -1 if the table doesn't contain it or if the operation fails
+	// /param a value on top of the stack
+	// /param b value below the top
+	int retFoldedBinary(int opcode, double a, double b) {
+		double res;
+		switch( opcode ) {
+			case OpcodeTable.OP_ADD2:
+			case OpcodeTable.OP_ADD2_R:
+			res = a + b;
+			break;
+
+			case OpcodeTable.OP_SUB2:
+			case OpcodeTable.OP_SUB2_R:
+			res = a - b;
+			break;
+
+			case OpcodeTable.OP_MUL2:
+			case OpcodeTable.OP_MUL2_R:
+			res = a * b;
+			break;
+
+			case OpcodeTable.OP_DIV2:
+			if( b == 0.0f )   return -1;
+			res = a / b;
+			break;
+
+			case OpcodeTable.OP_DIV2_R:
+			res = b == 0.0f ? 1.0 : a / b;
+			break;
+
+			default:
+			return -1;
+		}
+		return retPushIdx(res);
+	}
+
+	int retFoldedUnary(int instrIdx, double a) {
+		double res;
+		switch( opcodeTable.opcodes[instrIdx] ) {
+			case OpcodeTable.OP_MULVALUE: res = a * opcodeTable.doubleArgs[instrIdx]; break;
+			case OpcodeTable.OP_EXP: res = Math.exp(a); break;
+			case OpcodeTable.OP_SQRT: res = Math.sqrt(a); break;
+			case OpcodeTable.OP_SIN: res = Math.sin(a); break;
+			case OpcodeTable.OP_LOG: res = Math.log(a); break;
+			case OpcodeTable.OP_TANH: res = Math.tanh(a); break;
+			case OpcodeTable.OP_ATAN: res = Math.atan(a); break;
+			default: return -1;
+		}
+		return retPushIdx(res);
+	}
+
+	// returns the index of the PUSH with exactly the value, -1 if the table doesn't contain it
+	int retPushIdx(double value) {
+		for( int instrIdx = 0; instrIdx < opcodeTable.opcodes.length; instrIdx++ ) {
+			if( opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_PUSHCONST && Double.doubleToLongBits(opcodeTable.doubleArgs[instrIdx]) == Double.doubleToLongBits(value) )   return instrIdx;
+		}
+		return -1;
+	}
+
+	// builds the optimized program, returns null if a jump or skip can't be encoded, its range is protected in this case
+	int[] rebuild(int[] program) {
+		final int len = program.length;
+
+		int newLen = 0;
+		for( int ip = 0; ip < len; ip++ ) {
+			newIps[ip] = newLen;
+			if( !isRemoved[ip] )   newLen++;
+		}
+		newIps[len] = newLen;
+
+		int[] res = new int[newLen];
+		for( int ip = 0; ip < len; ip++ ) {
+			if( isRemoved[ip] )   continue;
+
+			int instrIdx = replacements[ip];
+			int opcode = opcodeTable.opcodes[instrIdx];
+			if( opcode == OpcodeTable.OP_JMP || opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+				instrIdx = retCorrectedInstr(program, ip, newLen);
+				if( instrIdx == -1 ) {
+					int target = ip + 1 + opcodeTable.intArgs[program[ip]];
+					for( int iIp = Math.max(0, Math.min(ip + 1, target)); iIp < Math.min(len, Math.max(ip + 1, target)); iIp++ )   isProtected[iIp] = true;
+					return null;
+				}
+			}
+			res[newIps[ip]] = instrIdx;
+		}
+		return res;
+	}
+
+	// returns the instruction with the lowest index which jumps or skips to the same position in the optimized program, -1 if the table doesn't contain it
+	int retCorrectedInstr(int[] program, int ip, int newLen) {
+		final int len = program.length;
+		final int instrIdx = program[ip];
+		final int opcode = opcodeTable.opcodes[instrIdx];
+		final int offset = opcodeTable.intArgs[instrIdx];
+		final int newIpAfter = newIps[ip] + 1;
+
+		// range of valid offsets in the optimized program
+		// targets after the end terminate the program and targets before the start are invalid, in both cases the exact target doesn't matter
+		int minOffset, maxOffset;
+		if( opcode != OpcodeTable.OP_JMP && offset <= 0 ) { // skip of nothing
+			minOffset = Integer.MIN_VALUE;
+			maxOffset = 0;
+		}
+		else {
+			int target = ip + 1 + offset;
+			if( target >= len ) {
+				minOffset = newLen - newIpAfter;
+				maxOffset = Integer.MAX_VALUE;
+			}
+			else if( target < 0 ) {
+				minOffset = Integer.MIN_VALUE;
+				maxOffset = -newIpAfter - 1;
+			}
+			else {
+				minOffset = maxOffset = newIps[target] - newIpAfter;
+			}
+		}
+
+		for( int iInstrIdx = 0; iInstrIdx < opcodeTable.opcodes.length; iInstrIdx++ ) {
+			if( opcodeTable.opcodes[iInstrIdx] != opcode )   continue;
+			int iOffset = opcodeTable.intArgs[iInstrIdx];
+			if( iOffset >= minOffset && iOffset <= maxOffset )   return iInstrIdx;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,94 @@
+package ls;
+
+// enumerates all programs of a length and interprets them with shared prefixes
+//
+// the programs are enumerated depth first, the state after the interpretation of each prefix is captured with Ctx.snapshot()
+// and each continuation of the prefix is interpreted from the restored state, so each prefix is interpreted only once
+// for straight line programs this executes one instruction per enumerated prefix instead of the whole program for each program
+// if the interpretation of a prefix terminates (or fails) the result is reported for all programs with the prefix without interpreting them
+//
+// the results are the same as the results of Instrs.Interpreter.interpret() for each program
+// the domain specific context is not part of the snapshots, so the instructions must not use it
+public class PrefixSharingEnumerator {
+	public interface IVisitor {
+		// called for each program with the result of the interpretation
+		// the ctx of the interpreter holds the state after the interpretation and must not be modified
+		// returns if the enumeration has to be stopped
+		boolean visit(int[] program, boolean isSuccess);
+	}
+
+	public Instrs.Interpreter interpreter;
+	public int nInstrs; // number of instructions
+	public int remainingSteps = -2; // time limit of each program, is infinite if == -2
+
+	public long interpretedPrefixesCnt; // statistics, number of interpreted prefixes
+
+	Instrs.Ctx.Snapshot[] snapshots = new Instrs.Ctx.Snapshot[0]; // state after the interpretation of the prefix of the length of the index
+	int[] program;
+	IVisitor visitor;
+
+	public PrefixSharingEnumerator(Instrs.Interpreter interpreter, int nInstrs) {
+		this.interpreter = interpreter;
+		this.nInstrs = nInstrs;
+	}
+
+	// enumerates all programs of the length in the order of LevinSearch with reversed indices (the last instruction changes first)
+	// the inputs are pushed onto the stack before the interpretation
+	// returns if the enumeration was stopped by the visitor
+	public boolean enumerate(int length, double[] inputs, IVisitor visitor) {
+		assert interpreter.ctx.domainSpecificCtx == null;
+
+		if( snapshots.length < length ) {
+			snapshots = new Instrs.Ctx.Snapshot[length];
+			for( int idx = 0; idx < length; idx++ )   snapshots[idx] = new Instrs.Ctx.Snapshot();
+		}
+		program = new int[length];
+		this.visitor = visitor;
+
+		interpreter.ctx.reset();
+		interpreter.ctx.remainingSteps = remainingSteps;
+		for( double iInput : inputs )   interpreter.ctx.stack.push(iInput);
+
+		if( length == 0 )   return visitor.visit(program, interpreter.interpret(program));
+
+		interpreter.interpretPrefix(program, 0); // suspends immediately
+		interpreter.ctx.snapshot(snapshots[0]);
+		return enumerate(0);
+	}
+
+	// enumerates all instructions at the position, the prefix before the position was interpreted into snapshots[position]
+	boolean enumerate(int position) {
+		for( int instrIdx = nInstrs - 1; instrIdx >= 0; instrIdx-- ) {
+			program[position] = instrIdx;
+
+			interpreter.ctx.restore(snapshots[position]);
+			boolean isSuccess = interpreter.resume(program, position + 1);
+			interpretedPrefixesCnt++;
+
+			boolean isStopped;
+			if( position + 1 == program.length ) {
+				isStopped = visitor.visit(program, isSuccess);
+			}
+			else if( interpreter.ctx.isSuspended ) {
+				interpreter.ctx.snapshot(snapshots[position + 1]);
+				isStopped = enumerate(position + 1);
+			}
+			else { // all programs with this prefix have the same result
+				isStopped = visitAll(position + 1, isSuccess);
+			}
+
+			if( isStopped )   return true;
+		}
+		return false;
+	}
+
+	boolean visitAll(int position, boolean isSuccess) {
+		if( position == program.length )   return visitor.visit(program, isSuccess);
+
+		for( int instrIdx = nInstrs - 1; instrIdx >= 0; instrIdx-- ) {
+			program[position] = instrIdx;
+			if( visitAll(position + 1, isSuccess) )   return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,30 @@
+package ls;
+
+import java.util.Arrays;
+
+// wrapper to key a map by the content of a program
+// the key refers to the program, so the program must not be modified while the key is in a map
+class ProgramKey {
+	int[] program;
+	int hash;
+
+	public ProgramKey(int[] program) {
+		set(program);
+	}
+
+	// reuses the key for a lookup, so the lookup doesn't allocate
+	public void set(int[] program) {
+		this.program = program;
+		this.hash = Arrays.hashCode(program);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ProgramKey && Arrays.equals(program, ((ProgramKey)other).program);
+	}
+}
@@ -0,0 +1,142 @@
+package ls;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// bounded cache of the results of pure programs, maps (program hash, input) to the value on top of the stack or the failure
+// a program is pure if the result only depends on the input, it must not use ACTION or the array context (see PurityAnalysis)
+//
+// the layout is lock free open addressing
+// * the slots are grouped into buckets of BUCKETSIZE slots, a key is only stored in its bucket
+// * each slot has a sequence number which is odd while the slot is written, a writer claims the slot by incrementing it with a CAS
+//   a reader reads the sequence number before and after the words, a read which overlapped a write is a miss
+//   a writer which can't claim the slot drops its result, so concurrent writers never mix their words
+// * a full bucket evicts with the clock algorithm, a hit marks the slot as referenced and the clock hand skips referenced slots once
+// the program hash is 64 bit, programs with colliding hashes share the results
+public class ProgramResultCache {
+	public static final long RESULTFAILURE = 0x7ff80000deadbeefL; // result of a failed program, is a NaN which is never returned by Double.doubleToLongBits()
+	public static final long RESULTMISS = 0x7ff80000deadbeeeL; // returned by lookup() if the key is not in the cache
+
+	public static final int BUCKETSIZE = 8;
+
+	// state of a slot
+	static final int SLOTEMPTY = 0;
+	static final int SLOTOCCUPIED = 1;
+	static final int SLOTREFERENCED = 2; // occupied and was hit since the clock hand passed it
+
+	public final LongAdder hitsCnt = new LongAdder();
+	public final LongAdder missesCnt = new LongAdder();
+	public final LongAdder evictionsCnt = new LongAdder();
+
+	final int slotMask;
+	final AtomicLongArray entries; // three words per slot: program hash, input bits, result
+	final AtomicIntegerArray slotStates;
+	final AtomicIntegerArray slotSequences; // odd while the slot is written
+	final int[] clockHands; // clock hand of each bucket, concurrent updates can lose a advance of the hand which is harmless
+
+	// /param capacityLog2 the cache holds 2^capacityLog2 results
+	public ProgramResultCache(int capacityLog2) {
+		assert capacityLog2 >= 3;
+		int capacity = 1 << capacityLog2;
+		slotMask = capacity - 1;
+		entries = new AtomicLongArray(capacity * 3);
+		slotStates = new AtomicIntegerArray(capacity);
+		slotSequences = new AtomicIntegerArray(capacity);
+		clockHands = new int[capacity / BUCKETSIZE];
+	}
+
+	// hash of the program and the time limit, the result depends on both
+	// is never 0, so a slot which is claimed but not written yet doesn't match
+	public static long retProgramHash(int[] instrsIndices, int remainingSteps) {
+		long hash = mix(((long)remainingSteps << 32) ^ instrsIndices.length);
+		for( int iInstrIdx : instrsIndices )   hash = mix(hash * 31 + iInstrIdx);
+		return hash | 1;
+	}
+
+	// finalizer of MurmurHash3
+	static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	// returns the result, RESULTMISS if the result is not in the cache
+	public long lookup(long programHash, double input) {
+		long inputBits = Double.doubleToLongBits(input);
+		int bucketBeginSlot = retBucketBeginSlot(programHash, inputBits);
+		for( int slot = bucketBeginSlot; slot < bucketBeginSlot + BUCKETSIZE; slot++ ) {
+			int slotState = slotStates.get(slot);
+			if( slotState == SLOTEMPTY )   continue;
+			int sequence = slotSequences.get(slot);
+			if( (sequence & 1) != 0 )   continue; // is written
+			long slotProgramHash = entries.get(slot * 3);
+			long slotInputBits = entries.get(slot * 3 + 1);
+			long result = entries.get(slot * 3 + 2);
+			if( slotSequences.get(slot) != sequence )   continue; // was written while it was read
+			if( slotProgramHash == programHash && slotInputBits == inputBits ) {
+				if( slotState != SLOTREFERENCED )   slotStates.lazySet(slot, SLOTREFERENCED); // hot slots are not written again
+				hitsCnt.increment();
+				return result;
+			}
+		}
+		missesCnt.increment();
+		return RESULTMISS;
+	}
+
+	// stores the result, the result must be RESULTFAILURE or returned by Double.doubleToLongBits()
+	public void store(long programHash, double input, long result) {
+		long inputBits = Double.doubleToLongBits(input);
+		int bucketBeginSlot = retBucketBeginSlot(programHash, inputBits);
+
+		int slot = retFreeSlot(bucketBeginSlot);
+		if( slot == -1 ) {
+			slot = retEvictedSlot(bucketBeginSlot);
+			evictionsCnt.increment();
+		}
+
+		int sequence = slotSequences.get(slot);
+		if( (sequence & 1) != 0 || !slotSequences.compareAndSet(slot, sequence, sequence + 1) )   return; // another writer claimed the slot, the result is dropped
+
+		entries.set(slot * 3, programHash);
+		entries.set(slot * 3 + 1, inputBits);
+		entries.set(slot * 3 + 2, result);
+		slotSequences.set(slot, sequence + 2);
+	}
+
+	// claims a empty slot of the bucket, returns -1 if the bucket is full
+	int retFreeSlot(int bucketBeginSlot) {
+		for( int slot = bucketBeginSlot; slot < bucketBeginSlot + BUCKETSIZE; slot++ ) {
+			if( slotStates.get(slot) == SLOTEMPTY && slotStates.compareAndSet(slot, SLOTEMPTY, SLOTOCCUPIED) )   return slot;
+		}
+		return -1;
+	}
+
+	// advances the clock hand of the bucket to the first slot which was not referenced, the passed referenced slots get a second chance
+	int retEvictedSlot(int bucketBeginSlot) {
+		int bucketIdx = bucketBeginSlot / BUCKETSIZE;
+		int slot = bucketBeginSlot;
+		for( int i = 0; i < 2 * BUCKETSIZE; i++ ) { // is bounded because concurrent hits can reference the slots again
+			int hand = clockHands[bucketIdx];
+			clockHands[bucketIdx] = (hand + 1) % BUCKETSIZE;
+
+			slot = bucketBeginSlot + hand;
+			if( slotStates.get(slot) == SLOTREFERENCED && slotStates.compareAndSet(slot, SLOTREFERENCED, SLOTOCCUPIED) )   continue;
+			return slot;
+		}
+		return slot;
+	}
+
+	int retBucketBeginSlot(long programHash, long inputBits) {
+		return (int)mix(programHash ^ (inputBits * 0x9e3779b97f4a7c15L)) & slotMask & ~(BUCKETSIZE - 1);
+	}
+
+	// ratio of the hits to the lookups
+	public double retHitRatio() {
+		long lookupsCnt = hitsCnt.sum() + missesCnt.sum();
+		return lookupsCnt == 0 ? 0.0 : (double)hitsCnt.sum() / (double)lookupsCnt;
+	}
+}
@@ -0,0 +1,82 @@
+package ls;
+
+// enumerates all programs of a length like LevinSearch, but the last position changes first
+// so all programs with a common prefix are contiguous and the subtree of a dead prefix can be skipped in one step
+//
+// a prefix is dead if all programs with it have the same result as the current program
+// for example if the interpretation only fetched the instructions of the prefix (Instrs.Ctx.maxFetchedIp with Instrs.Ctx.configTrackMaxFetchedIp set), so the instructions after it can't change the result
+//
+// if canonicalFormTable is set only the programs in its canonical form are enumerated
+// the patterns are checked incrementally from the changed position on, a prefix with a forbidden pattern is skipped with its subtree
+public class PruningLevinSearch {
+	public int[] arr;
+	public int nInstrs; // number of instructions
+	public CanonicalFormTable canonicalFormTable; // null if all programs are enumerated, must be set before resize()
+
+	// statistics
+	public long prunedProgramsCnt; // number of programs which were skipped by nextAfterDeadPrefix()
+	public long nonCanonicalProgramsCnt; // number of programs which were skipped because they are not in the canonical form
+
+	// returns if there is no program of this programlength, which is only possible with a canonicalFormTable
+	public boolean resize(int size) {
+		arr = new int[size];
+		for( int idx = 0; idx < size; idx++ )   arr[idx] = nInstrs - 1;
+		return skipNonCanonical(0);
+	}
+
+	// returns if the range overflowed and the search finished for this programlength
+	public boolean next() {
+		return skipNonCanonical(advanceAt(arr.length - 1));
+	}
+
+	// skips the programs with the same prefix arr[0..deadPosition] as the current program
+	// returns if the range overflowed and the search finished for this programlength
+	public boolean nextAfterDeadPrefix(int deadPosition) {
+		// the positions after the prefix count down to 0, so the value of the suffix is the number of the remaining programs with the prefix
+		long remainingCnt = 0;
+		for( int idx = deadPosition + 1; idx < arr.length; idx++ ) {
+			remainingCnt = remainingCnt * nInstrs + arr[idx];
+			arr[idx] = nInstrs - 1; // begin of the next subtree
+		}
+		prunedProgramsCnt += remainingCnt;
+		return skipNonCanonical(advanceAt(deadPosition));
+	}
+
+	// advances the instruction at the position, the positions after it must be at the begin of their subtree
+	// returns the position whose instruction changed, the positions after it are at the begin of their subtree, -1 if the range overflowed
+	int advanceAt(int position) {
+		for( int idx = position; idx >= 0; idx-- ) {
+			if( arr[idx] != 0 ) {
+				arr[idx]--;
+				return idx;
+			}
+			arr[idx] = nInstrs - 1; // propagate the overflow
+		}
+		return -1;
+	}
+
+	// skips the programs which are not in the canonical form
+	// the patterns which end before changedPosition were checked for the current prefix, the positions after it are at the begin of their subtree
+	// returns if the range overflowed
+	boolean skipNonCanonical(int changedPosition) {
+		if( changedPosition == -1 )   return true;
+		if( canonicalFormTable == null )   return false;
+
+		int position = changedPosition;
+		while( position < arr.length ) {
+			if( canonicalFormTable.isCanonicalAt(arr, position) ) {
+				position++;
+				continue;
+			}
+
+			// all programs of the subtree contain the pattern, the subtree is skipped
+			long subtreeCnt = 1;
+			for( int idx = position + 1; idx < arr.length; idx++ )   subtreeCnt *= nInstrs;
+			nonCanonicalProgramsCnt += subtreeCnt;
+
+			position = advanceAt(position);
+			if( position == -1 )   return true;
+		}
+		return false;
+	}
+}
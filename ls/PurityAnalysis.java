@@ -0,0 +1,55 @@
+package ls;
+
+// finds programs whose result only depends on the values on the stack at the begin of the interpretation
+// such programs can be memoized (ProgramResultCache) and compared by their behavior (BehavioralFingerprintSet)
+//
+// a program is not pure if it contains
+// * ACTION, because it changes the domain specific context
+// * instructions of the array context, because the arrays are state which is not reset by each caller
+// * XMACRO, because the body could contain the instructions above
+// * unknown instructions, except superinstructions whose fused instructions are pure
+public class PurityAnalysis {
+	boolean[] isPureInstr; // indexed by the instruction index
+
+	public PurityAnalysis(Instrs.InstructionLookupTable instrLookup) {
+		OpcodeTable opcodeTable = OpcodeTable.decode(instrLookup);
+		isPureInstr = new boolean[opcodeTable.opcodes.length];
+		for( int instrIdx = 0; instrIdx < opcodeTable.opcodes.length; instrIdx++ )   isPureInstr[instrIdx] = isPureInstr(opcodeTable.opcodes[instrIdx], opcodeTable.instrs[instrIdx]);
+	}
+
+	public boolean isPure(int[] instrsIndices) {
+		for( int iInstrIdx : instrsIndices ) {
+			if( !isPureInstr[iInstrIdx] )   return false;
+		}
+		return true;
+	}
+
+	static boolean isPureInstr(int opcode, Instrs.IInstr instr) {
+		switch( opcode ) {
+			case OpcodeTable.OP_ACTION:
+			case OpcodeTable.OP_XMACRO:
+			case OpcodeTable.OP_ARRPOPAPPEND:
+			case OpcodeTable.OP_ARRDEL:
+			case OpcodeTable.OP_ARRLEN:
+			case OpcodeTable.OP_ARRSETIDX:
+			case OpcodeTable.OP_ARRRETIDX:
+			case OpcodeTable.OP_ARRCHECKIDX:
+			case OpcodeTable.OP_ARRREADNPUSH:
+			case OpcodeTable.OP_ARRREL:
+			return false;
+
+			case OpcodeTable.OP_GENERIC:
+			if( !(instr instanceof Instrs.FUSED) )   return false;
+			Instrs.InstructionLookupTable fusedInstrs = new Instrs.InstructionLookupTable();
+			fusedInstrs.table = ((Instrs.FUSED)instr).instrs;
+			OpcodeTable fusedOpcodeTable = OpcodeTable.decode(fusedInstrs);
+			for( int idx = 0; idx < fusedOpcodeTable.opcodes.length; idx++ ) {
+				if( !isPureInstr(fusedOpcodeTable.opcodes[idx], fusedOpcodeTable.instrs[idx]) )   return false;
+			}
+			return true;
+
+			default:
+			return true;
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package ls;
+
+// static verifier which checks a program for stack underflows/overflows before it gets executed
+//
+// every instruction has a declared stack effect (minimal depth, number of poped and pushed values)
+// the verifier does a abstract interpretation over the stack height and the flag for all paths through the program, including jumps and both outcomes of PREDIGNOREIFFLAG
+// the semantics of the abstract interpretation are the same as in Instrs.Interpreter, for example a failing last instruction still terminates the program successfully
+//
+// the result is a verdict for a given entry stack depth
+// * VERDICT_ALWAYSFAILS : no path terminates successfully, the program doesn't have to be executed
+// * VERDICT_MAYFAIL : some paths fail or the failure depends on the values (division by zero, arrays, domain specific actions, calls of XMACRO)
+// * VERDICT_SAFE : no path fails
+// the time limit of the interpreter and nontermination are not considered
+public class StackEffectVerifier {
+	public static final int VERDICT_SAFE = 0;
+	public static final int VERDICT_MAYFAIL = 1;
+	public static final int VERDICT_ALWAYSFAILS = 2;
+
+	// declared stack effect of a instruction
+	public static class StackEffect {
+		public int minDepth; // minimal depth of the stack, the instruction fails if the stack is not deep enough
+		public int pops;
+		public int pushes;
+
+		public boolean withResilence; // pushes a value instead of failing if the stack is not deep enough
+		public boolean mayFailAtRuntime; // can fail depending on the values or the context
+		public boolean setsFlag;
+		public boolean isUnknown; // effect on the stack is unknown, for ACTION and instructions which are not known by the OpcodeTable
+		public boolean neverSucceeds; // MACRO isn't executable
+
+		public StackEffect(int minDepth, int pops, int pushes) {
+			this.minDepth = minDepth;
+			this.pops = pops;
+			this.pushes = pushes;
+		}
+	}
+
+	public OpcodeTable opcodeTable;
+	public StackEffect[] effects; // indexed by the instruction index
+
+	public int stackCapacity = Instrs.Ctx.STACKCAPACITY;
+	public boolean configInterpretInvalidIndicesAsTermination = false; // must be the same as in the Ctx
+	public boolean configRequireResult = false; // is a successful termination with a empty stack a failure?
+
+	static final int FLAG_FALSE = 0;
+	static final int FLAG_TRUE = 1;
+	static final int FLAG_UNKNOWN = 2;
+
+	static final int HEIGHT_UNKNOWN = -1;
+
+	boolean[] visited = new boolean[0]; // indexed by encoded state
+	int[] worklist = new int[0];
+	int[] visitedStates = new int[0]; // to clear visited after the verification
+	int visitedCnt;
+	int worklistCnt;
+	int currentState; // state which is currently executed by step()
+
+	boolean canSucceed;
+	boolean canFail;
+
+	public StackEffectVerifier(Instrs.InstructionLookupTable instrLookup) {
+		opcodeTable = OpcodeTable.decode(instrLookup);
+
+		effects = new StackEffect[opcodeTable.opcodes.length];
+		for( int instrIdx = 0; instrIdx < effects.length; instrIdx++ ) {
+			effects[instrIdx] = retDeclaredStackEffect(opcodeTable, instrIdx);
+		}
+	}
+
+	// declared stack effect of the instruction at the index of the table
+	public static StackEffect retDeclaredStackEffect(OpcodeTable opcodeTable, int instrIdx) {
+		StackEffect effect;
+
+		switch( opcodeTable.opcodes[instrIdx] ) {
+			case OpcodeTable.OP_ADD2:
+			case OpcodeTable.OP_SUB2:
+			case OpcodeTable.OP_MUL2:
+			return new StackEffect(2, 2, 1);
+
+			case OpcodeTable.OP_ADD2_R:
+			case OpcodeTable.OP_SUB2_R:
+			case OpcodeTable.OP_MUL2_R:
+			case OpcodeTable.OP_DIV2_R:
+			effect = new StackEffect(2, 2, 1);
+			effect.withResilence = true;
+			return effect;
+
+			case OpcodeTable.OP_DIV2:
+			effect = new StackEffect(2, 2, 1);
+			effect.mayFailAtRuntime = true; // division by zero
+			return effect;
+
+			case OpcodeTable.OP_EXP:
+			case OpcodeTable.OP_SQRT:
+			case OpcodeTable.OP_SIN:
+			case OpcodeTable.OP_LOG:
+			case OpcodeTable.OP_TANH:
+			case OpcodeTable.OP_ATAN:
+			case OpcodeTable.OP_MULVALUE:
+			return new StackEffect(1, 1, 1);
+
+			case OpcodeTable.OP_JMP:
+			case OpcodeTable.OP_PREDIGNOREIFFLAG:
+			case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+			return new StackEffect(0, 0, 0);
+
+			case OpcodeTable.OP_CMPGT:
+			case OpcodeTable.OP_CMPEQUAL:
+			case OpcodeTable.OP_CMPGTPOP:
+			case OpcodeTable.OP_CMPEQUALPOP:
+			case OpcodeTable.OP_CMPGTZERO:
+			case OpcodeTable.OP_CMPGTZEROPOP: {
+				int opcode = opcodeTable.opcodes[instrIdx];
+				boolean isUnary = opcode == OpcodeTable.OP_CMPGTZERO || opcode == OpcodeTable.OP_CMPGTZEROPOP;
+				boolean enablePop = opcode == OpcodeTable.OP_CMPGTPOP || opcode == OpcodeTable.OP_CMPEQUALPOP || opcode == OpcodeTable.OP_CMPGTZEROPOP;
+				int minDepth = isUnary ? 1 : 2;
+				effect = new StackEffect(minDepth, enablePop ? minDepth : 0, 0);
+				effect.setsFlag = true;
+				return effect;
+			}
+
+			case OpcodeTable.OP_PUSHCONST:
+			case OpcodeTable.OP_PUSHIFFLAG:
+			return new StackEffect(0, 0, 1);
+
+			case OpcodeTable.OP_POP:
+			return new StackEffect(1, 1, 0);
+
+			case OpcodeTable.OP_XCHG:
+			return new StackEffect(opcodeTable.intArgs[instrIdx] + 1, 0, 0);
+
+			case OpcodeTable.OP_DUP:
+			return new StackEffect(1, 0, 1);
+
+			case OpcodeTable.OP_MACRO:
+			effect = new StackEffect(0, 0, 0);
+			effect.neverSucceeds = true;
+			return effect;
+
+			case OpcodeTable.OP_XMACRO: // the body of the slot is unknown, see step()
+			effect = new StackEffect(0, 0, 0);
+			effect.isUnknown = true;
+			effect.mayFailAtRuntime = true;
+			effect.setsFlag = true;
+			return effect;
+
+			case OpcodeTable.OP_ARRPOPAPPEND:
+			effect = new StackEffect(1, 1, 0);
+			effect.mayFailAtRuntime = true;
+			return effect;
+
+			case OpcodeTable.OP_ARRLEN:
+			case OpcodeTable.OP_ARRRETIDX:
+			case OpcodeTable.OP_ARRREADNPUSH:
+			effect = new StackEffect(0, 0, 1);
+			effect.mayFailAtRuntime = true;
+			return effect;
+
+			case OpcodeTable.OP_ARRSETIDX:
+			effect = new StackEffect(1, 0, 0);
+			effect.mayFailAtRuntime = true;
+			return effect;
+
+			case OpcodeTable.OP_ARRCHECKIDX:
+			effect = new StackEffect(0, 0, 0);
+			effect.mayFailAtRuntime = true;
+			effect.setsFlag = true;
+			return effect;
+
+			case OpcodeTable.OP_ARRDEL:
+			case OpcodeTable.OP_ARRREL:
+			effect = new StackEffect(0, 0, 0);
+			effect.mayFailAtRuntime = true;
+			return effect;
+
+			default: // OP_ACTION and OP_GENERIC
+			effect = new StackEffect(0, 0, 0);
+			effect.isUnknown = true;
+			effect.mayFailAtRuntime = true;
+			effect.setsFlag = true;
+			return effect;
+		}
+	}
+
+	// /param entryDepth number of values on the stack before the program is executed
+	public int verify(int[] instrsIndices, int entryDepth) {
+		final int len = instrsIndices.length;
+
+		canSucceed = false;
+		canFail = false;
+
+		if( len == 0 ) {
+			currentState = -1;
+			terminate(entryDepth, 1);
+			return retVerdict();
+		}
+
+		int nStates = len * (stackCapacity + 2) * 3;
+		if( visited.length < nStates ) {
+			visited = new boolean[nStates];
+			worklist = new int[nStates];
+			visitedStates = new int[nStates];
+		}
+		visitedCnt = 0;
+		worklistCnt = 0;
+
+		addState(0, entryDepth > stackCapacity ? HEIGHT_UNKNOWN : entryDepth, FLAG_FALSE);
+
+		while( worklistCnt > 0 ) {
+			int state = worklist[--worklistCnt];
+			currentState = state;
+			step(instrsIndices, retIp(state), retHeight(state), state % 3);
+		}
+
+		for( int i = 0; i < visitedCnt; i++ )   visited[visitedStates[i]] = false;
+
+		return retVerdict();
+	}
+
+	int retVerdict() {
+		if( !canSucceed )   return VERDICT_ALWAYSFAILS;
+		return canFail ? VERDICT_MAYFAIL : VERDICT_SAFE;
+	}
+
+	// abstract execution of the instruction at ip
+	void step(int[] instrsIndices, int ip, int height, int flag) {
+		final int instrIdx = instrsIndices[ip];
+		final int opcode = opcodeTable.opcodes[instrIdx];
+		final StackEffect effect = effects[instrIdx];
+
+		// the slot of the call is unknown, a invalid call fails without advancing the ip, so the failure isn't ignored at the end of the program
+		// the body can fail, terminate, leave any stack and flag and skip any number of the instructions after the call
+		if( opcode == OpcodeTable.OP_XMACRO ) {
+			failHard(0);
+			terminate(HEIGHT_UNKNOWN, 0);
+			for( int target = ip + 1; target < instrsIndices.length; target++ )   transition(target, HEIGHT_UNKNOWN, FLAG_UNKNOWN, 0);
+			return;
+		}
+
+		if( effect.neverSucceeds ) {
+			fail(instrsIndices.length, ip, height);
+			return;
+		}
+
+		int flagAfter = effect.setsFlag ? FLAG_UNKNOWN : flag;
+
+		if( effect.isUnknown ) {
+			fail(instrsIndices.length, ip, height);
+			succeed(instrsIndices, ip, HEIGHT_UNKNOWN, flagAfter);
+			return;
+		}
+
+		if( height == HEIGHT_UNKNOWN ) {
+			if( effect.minDepth > 0 || effect.pushes > effect.pops || effect.mayFailAtRuntime ) {
+				fail(instrsIndices.length, ip, HEIGHT_UNKNOWN);
+			}
+			succeed(instrsIndices, ip, HEIGHT_UNKNOWN, flagAfter);
+			return;
+		}
+
+		if( height < effect.minDepth ) {
+			// alternative codepath for resilence
+			if( effect.withResilence && height + 1 <= stackCapacity ) {
+				succeed(instrsIndices, ip, height + 1, flag);
+			}
+			else {
+				fail(instrsIndices.length, ip, height);
+			}
+			return;
+		}
+
+		int heightAfter = height - effect.pops + effect.pushes;
+		if( heightAfter > stackCapacity ) {
+			fail(instrsIndices.length, ip, height);
+			return;
+		}
+
+		if( effect.mayFailAtRuntime ) {
+			// DIV2 pops both values before it fails, ARRPOPAPPEND pops the value
+			int heightAfterFailure = opcode == OpcodeTable.OP_DIV2 || opcode == OpcodeTable.OP_ARRPOPAPPEND ? height - effect.pops : height;
+			fail(instrsIndices.length, ip, heightAfterFailure);
+		}
+
+		succeed(instrsIndices, ip, heightAfter, flagAfter);
+	}
+
+	// instruction at ip executed successfully, follows the control flow
+	void succeed(int[] instrsIndices, int ip, int height, int flag) {
+		final int len = instrsIndices.length;
+
+		// valid terminating condition
+		if( ip + 1 == len ) {
+			terminate(height, 0);
+			return;
+		}
+
+		final int instrIdx = instrsIndices[ip];
+		final int opcode = opcodeTable.opcodes[instrIdx];
+
+		// the interpreter needs one step to execute the jump and one step to check a invalid target
+		if( opcode == OpcodeTable.OP_JMP ) {
+			int target = ip + 1 + opcodeTable.intArgs[instrIdx];
+			if( target >= len )   terminate(height, 2);
+			else if( target < 0 ) {
+				if( configInterpretInvalidIndicesAsTermination )   terminate(height, 2);
+				else                                               failHard(2);
+			}
+			else   transition(target, height, flag, 1);
+		}
+		else if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+			int nInstrs = opcodeTable.intArgs[instrIdx];
+			int skipFlag = opcode == OpcodeTable.OP_PREDIGNOREIFFLAG ? FLAG_TRUE : FLAG_FALSE;
+
+			boolean mayNotSkip = flag != skipFlag || nInstrs <= 0;
+			boolean maySkip = (flag == skipFlag || flag == FLAG_UNKNOWN) && nInstrs > 0;
+
+			// the interpreter needs one step for each skiped instruction
+			if( mayNotSkip )   transition(ip + 1, height, flag, 0);
+			if( maySkip ) {
+				int target = ip + 1 + nInstrs;
+				if( target >= len )   terminate(height, len - ip);
+				else                  transition(target, height, flag, nInstrs);
+			}
+		}
+		else {
+			transition(ip + 1, height, flag, 0);
+		}
+	}
+
+	// instruction at ip failed
+	void fail(int len, int ip, int height) {
+		// valid terminating condition, the result of the last instruction is ignored
+		if( ip + 1 == len ) {
+			terminate(height, 0);
+		}
+		else {
+			failHard(0);
+		}
+	}
+
+	// transition from currentState to the state at ip
+	// /param ticks number of steps the interpreter needs for the transition additionally to the step for the execution of the instruction
+	void transition(int ip, int height, int flag, int ticks) {
+		addState(ip, height, flag);
+	}
+
+	// program terminates successfully after currentState
+	void terminate(int height, int ticks) {
+		if( configRequireResult && height == 0 ) {
+			canFail = true;
+		}
+		else if( configRequireResult && height == HEIGHT_UNKNOWN ) {
+			canFail = true;
+			canSucceed = true;
+		}
+		else {
+			canSucceed = true;
+		}
+	}
+
+	// program fails after currentState
+	void failHard(int ticks) {
+		canFail = true;
+	}
+
+	void addState(int ip, int height, int flag) {
+		int state = retState(ip, height, flag);
+		if( visited[state] )   return;
+		visited[state] = true;
+		visitedStates[visitedCnt++] = state;
+		worklist[worklistCnt++] = state;
+	}
+
+	int retState(int ip, int height, int flag) {
+		return (ip * (stackCapacity + 2) + (height + 1)) * 3 + flag;
+	}
+
+	int retIp(int state) {
+		return state / 3 / (stackCapacity + 2);
+	}
+
+	int retHeight(int state) {
+		return (state / 3) % (stackCapacity + 2) - 1;
+	}
+}
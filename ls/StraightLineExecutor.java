@@ -0,0 +1,324 @@
+package ls;
+
+import java.util.Arrays;
+
+// executes programs without control flow over large batches of inputs
+//
+// all lanes of a straight line program execute the same instructions, so the height of the stack is the same for all lanes and known before the execution
+// the stack is stored as one column (array over all lanes) per depth and every instruction is a simple loop over the lanes which gets vectorized by the JIT
+// stack shuffling (XCHG, POP) only moves the references to the columns
+//
+// gives the same results for each lane as Instrs.Interpreter with a stack which holds the input(s)
+public class StraightLineExecutor {
+	public OpcodeTable opcodeTable;
+
+	public int remainingSteps = -2; // time limit for each lane, is infinite if == -2
+	public int stackCapacity = Instrs.Ctx.STACKCAPACITY;
+
+	// results of the last interpret() call
+	public double[] outputs; // value on top of the stack of each lane
+	public long[] failureBits; // bit is set for each lane for which the interpretation failed or which left an empty stack
+
+	int nLanes;
+	double[][] columns = new double[0][]; // columns[depth][lane]
+	boolean[] flags;
+	boolean[] isFailed; // failed because of a division by zero
+	boolean[] isDivByZeroInLast; // lanes which divided by zero in the last instruction
+
+	public StraightLineExecutor(Instrs.InstructionLookupTable instrLookup) {
+		opcodeTable = OpcodeTable.decode(instrLookup);
+	}
+
+	// returns if the program doesn't contain any control flow or instructions which use a context
+	// NOP (JMP 0) is allowed because it doesn't change the control flow
+	public boolean isStraightLine(int[] instrsIndices) {
+		for( int iInstrIdx : instrsIndices ) {
+			int opcode = opcodeTable.opcodes[iInstrIdx];
+			switch( opcode ) {
+				case OpcodeTable.OP_JMP:
+				if( opcodeTable.intArgs[iInstrIdx] != 0 )   return false;
+				break;
+
+				case OpcodeTable.OP_GENERIC:
+				case OpcodeTable.OP_ACTION:
+				case OpcodeTable.OP_PREDIGNOREIFFLAG:
+				case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+				case OpcodeTable.OP_XMACRO:
+				return false;
+
+				default:
+				if( opcode >= OpcodeTable.OP_ARRPOPAPPEND )   return false;
+				break;
+			}
+		}
+		return true;
+	}
+
+	public boolean isFailed(int lane) {
+		return (failureBits[lane >> 6] & (1L << (lane & 63))) != 0;
+	}
+
+	// /param args args[argIdx][lane] are pushed in the order of argIdx before the program is executed
+	public void interpret(int[] instrsIndices, double[][] args, int nLanes) {
+		assert isStraightLine(instrsIndices);
+
+		resize(nLanes);
+
+		Arrays.fill(flags, 0, nLanes, false);
+		Arrays.fill(isFailed, 0, nLanes, false);
+
+		final int len = instrsIndices.length;
+
+		// the interpreter needs one step for each instruction and a additional step for each NOP which isn't the last instruction
+		int neededSteps = len == 0 ? 1 : len;
+		for( int ip = 0; ip < len-1; ip++ ) {
+			if( opcodeTable.opcodes[instrsIndices[ip]] == OpcodeTable.OP_JMP )   neededSteps++;
+		}
+		if( remainingSteps != -2 && remainingSteps < neededSteps ) {
+			finish(0, false);
+			return;
+		}
+
+		int height = args.length;
+		if( height > stackCapacity ) {
+			finish(0, false);
+			return;
+		}
+		for( int argIdx = 0; argIdx < args.length; argIdx++ ) {
+			System.arraycopy(args[argIdx], 0, retColumn(argIdx), 0, nLanes);
+		}
+
+		for( int ip = 0; ip < len; ip++ ) {
+			int instrIdx = instrsIndices[ip];
+			boolean isLast = ip == len-1;
+
+			if( isLast && opcodeTable.opcodes[instrIdx] == OpcodeTable.OP_DIV2 && height >= 2 ) {
+				final double[] b = columns[height-2];
+				for( int lane = 0; lane < nLanes; lane++ )   isDivByZeroInLast[lane] = !isFailed[lane] && b[lane] == 0.0;
+			}
+			else if( isLast ) {
+				Arrays.fill(isDivByZeroInLast, 0, nLanes, false);
+			}
+
+			int heightAfter = execInstr(instrIdx, height);
+			if( heightAfter >= 0 ) {
+				height = heightAfter;
+				continue;
+			}
+
+			// instruction failed for all lanes
+
+			// valid terminating condition, the result of the last instruction is ignored like in Instrs.Interpreter
+			if( isLast )   break;
+
+			finish(0, false);
+			return;
+		}
+
+		finish(height, true);
+
+		// lanes which divided by zero in the last instruction are successful, but the stack of them has one element less
+		if( len > 0 && height >= 1 ) {
+			for( int lane = 0; lane < nLanes; lane++ ) {
+				if( !isDivByZeroInLast[lane] )   continue;
+				if( height >= 2 ) {
+					outputs[lane] = columns[height-2][lane];
+					failureBits[lane >> 6] &= ~(1L << (lane & 63));
+				}
+				else {
+					outputs[lane] = 0.0;
+				}
+			}
+		}
+	}
+
+	// executes the instruction for all lanes
+	// returns the new height of the stack or -1 if the instruction failed for all lanes
+	int execInstr(int instrIdx, int height) {
+		final int opcode = opcodeTable.opcodes[instrIdx];
+		final int n = nLanes;
+
+		switch( opcode ) {
+			case OpcodeTable.OP_ADD2:
+			case OpcodeTable.OP_ADD2_R:
+			case OpcodeTable.OP_SUB2:
+			case OpcodeTable.OP_SUB2_R:
+			case OpcodeTable.OP_MUL2:
+			case OpcodeTable.OP_MUL2_R:
+			case OpcodeTable.OP_DIV2:
+			case OpcodeTable.OP_DIV2_R: {
+				if( height < 2 ) {
+					// alternative codepath for resilence
+					boolean withResilence = opcode == OpcodeTable.OP_ADD2_R || opcode == OpcodeTable.OP_SUB2_R || opcode == OpcodeTable.OP_MUL2_R || opcode == OpcodeTable.OP_DIV2_R;
+					if( !withResilence || height >= stackCapacity )   return -1;
+					double resilenceValue = (opcode == OpcodeTable.OP_ADD2_R || opcode == OpcodeTable.OP_SUB2_R) ? 0.0 : 1.0;
+					Arrays.fill(retColumn(height), 0, n, resilenceValue);
+					return height + 1;
+				}
+
+				final double[] a = columns[height-1];
+				final double[] b = columns[height-2];
+				final double[] res = b; // result overwrites the second operand
+				switch( opcode ) {
+					case OpcodeTable.OP_ADD2:
+					case OpcodeTable.OP_ADD2_R:
+					for( int lane = 0; lane < n; lane++ )   res[lane] = a[lane] + b[lane];
+					break;
+
+					case OpcodeTable.OP_SUB2:
+					case OpcodeTable.OP_SUB2_R:
+					for( int lane = 0; lane < n; lane++ )   res[lane] = a[lane] - b[lane];
+					break;
+
+					case OpcodeTable.OP_MUL2:
+					case OpcodeTable.OP_MUL2_R:
+					for( int lane = 0; lane < n; lane++ )   res[lane] = a[lane] * b[lane];
+					break;
+
+					case OpcodeTable.OP_DIV2:
+					for( int lane = 0; lane < n; lane++ )   isFailed[lane] |= b[lane] == 0.0;
+					for( int lane = 0; lane < n; lane++ )   res[lane] = a[lane] / b[lane];
+					break;
+
+					default: // OP_DIV2_R
+					for( int lane = 0; lane < n; lane++ )   res[lane] = b[lane] == 0.0 ? 1.0 : a[lane] / b[lane];
+					break;
+				}
+				return height - 1;
+			}
+
+			case OpcodeTable.OP_EXP:
+			case OpcodeTable.OP_SQRT:
+			case OpcodeTable.OP_SIN:
+			case OpcodeTable.OP_LOG:
+			case OpcodeTable.OP_TANH:
+			case OpcodeTable.OP_ATAN:
+			case OpcodeTable.OP_MULVALUE: {
+				if( height < 1 )   return -1;
+
+				final double[] a = columns[height-1];
+				switch( opcode ) {
+					case OpcodeTable.OP_EXP: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.exp(a[lane]); break;
+					case OpcodeTable.OP_SQRT: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.sqrt(a[lane]); break;
+					case OpcodeTable.OP_SIN: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.sin(a[lane]); break;
+					case OpcodeTable.OP_LOG: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.log(a[lane]); break;
+					case OpcodeTable.OP_TANH: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.tanh(a[lane]); break;
+					case OpcodeTable.OP_ATAN: for( int lane = 0; lane < n; lane++ )   a[lane] = Math.atan(a[lane]); break;
+					default: { // OP_MULVALUE
+						final double v = opcodeTable.doubleArgs[instrIdx];
+						for( int lane = 0; lane < n; lane++ )   a[lane] *= v;
+						break;
+					}
+				}
+				return height;
+			}
+
+			case OpcodeTable.OP_JMP: // NOP
+			return height;
+
+			case OpcodeTable.OP_CMPGT:
+			case OpcodeTable.OP_CMPGTPOP:
+			case OpcodeTable.OP_CMPEQUAL:
+			case OpcodeTable.OP_CMPEQUALPOP: {
+				if( height < 2 )   return -1;
+
+				final double[] a = columns[height-1];
+				final double[] b = columns[height-2];
+				if( opcode == OpcodeTable.OP_CMPGT || opcode == OpcodeTable.OP_CMPGTPOP ) {
+					for( int lane = 0; lane < n; lane++ )   flags[lane] = a[lane] > b[lane];
+				}
+				else {
+					for( int lane = 0; lane < n; lane++ )   flags[lane] = Math.abs(a[lane] - b[lane]) < 0.001; // epsilon
+				}
+				return (opcode == OpcodeTable.OP_CMPGTPOP || opcode == OpcodeTable.OP_CMPEQUALPOP) ? height - 2 : height;
+			}
+
+			case OpcodeTable.OP_CMPGTZERO:
+			case OpcodeTable.OP_CMPGTZEROPOP: {
+				if( height < 1 )   return -1;
+
+				final double[] a = columns[height-1];
+				for( int lane = 0; lane < n; lane++ )   flags[lane] = a[lane] > 0;
+				return opcode == OpcodeTable.OP_CMPGTZEROPOP ? height - 1 : height;
+			}
+
+			case OpcodeTable.OP_PUSHCONST:
+			if( height >= stackCapacity )   return -1;
+			Arrays.fill(retColumn(height), 0, n, opcodeTable.doubleArgs[instrIdx]);
+			return height + 1;
+
+			case OpcodeTable.OP_PUSHIFFLAG: {
+				if( height >= stackCapacity )   return -1;
+
+				final double[] res = retColumn(height);
+				final double falseV = opcodeTable.doubleArgs[instrIdx];
+				final double trueV = opcodeTable.doubleArgs2[instrIdx];
+				for( int lane = 0; lane < n; lane++ )   res[lane] = flags[lane] ? trueV : falseV;
+				return height + 1;
+			}
+
+			case OpcodeTable.OP_DUP:
+			if( height < 1 || height >= stackCapacity )   return -1;
+			System.arraycopy(columns[height-1], 0, retColumn(height), 0, n);
+			return height + 1;
+
+			case OpcodeTable.OP_POP:
+			if( height < 1 )   return -1;
+			return height - 1;
+
+			case OpcodeTable.OP_XCHG: {
+				int rel = opcodeTable.intArgs[instrIdx];
+				if( height < rel + 1 )   return -1;
+
+				double[] temp = columns[height-1];
+				columns[height-1] = columns[height-1-rel];
+				columns[height-1-rel] = temp;
+				return height;
+			}
+
+			default: // OP_MACRO is not executable, other opcodes are rejected by isStraightLine()
+			return -1;
+		}
+	}
+
+	// stores the results, the top of the stack is at height-1
+	void finish(int height, boolean success) {
+		Arrays.fill(failureBits, 0, (nLanes + 63) >> 6, 0L);
+
+		if( !success || height == 0 ) {
+			Arrays.fill(outputs, 0, nLanes, 0.0);
+			for( int lane = 0; lane < nLanes; lane++ )   failureBits[lane >> 6] |= 1L << (lane & 63);
+			return;
+		}
+
+		System.arraycopy(columns[height-1], 0, outputs, 0, nLanes);
+		for( int lane = 0; lane < nLanes; lane++ ) {
+			if( isFailed[lane] ) {
+				outputs[lane] = 0.0;
+				failureBits[lane >> 6] |= 1L << (lane & 63);
+			}
+		}
+	}
+
+	double[] retColumn(int depth) {
+		if( depth >= columns.length ) {
+			columns = Arrays.copyOf(columns, Math.min(stackCapacity, Math.max(depth + 1, columns.length * 2)));
+		}
+		if( columns[depth] == null || columns[depth].length < nLanes ) {
+			columns[depth] = new double[nLanes];
+		}
+		return columns[depth];
+	}
+
+	void resize(int nLanes) {
+		this.nLanes = nLanes;
+		if( flags != null && flags.length >= nLanes )   return;
+
+		flags = new boolean[nLanes];
+		isFailed = new boolean[nLanes];
+		isDivByZeroInLast = new boolean[nLanes];
+		outputs = new double[nLanes];
+		failureBits = new long[(nLanes + 63) >> 6];
+		for( int depth = 0; depth < columns.length; depth++ )   columns[depth] = null;
+	}
+}
@@ -0,0 +1,206 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compress.ProgramCompressor;
+
+// fuses frequent slices of instructions to superinstructions (Instrs.FUSED) to reduce the number of dispatched instructions
+//
+// the superinstructions are appended to a copy of the instruction table, programs are rewritten with rewrite() and executed with fusedTable
+// the rewritten program has the same semantics as the original program, including the consumed steps
+// * slices with control flow instructions are not fused
+// * slices in which a jump or a skip lands are not fused
+// * slices which can be skiped by PREDIGNOREIFFLAG are not fused, because a skiped superinstruction would consume less steps, so the skip counts stay the same
+// * jumps over fused slices are replaced by the jump with the corrected offset
+//   the slices between the jump and the target are not fused if the table doesn't contain the jump with the corrected offset
+public class SuperinstructionFusion {
+	public Instrs.InstructionLookupTable baseTable;
+	public Instrs.InstructionLookupTable fusedTable; // base table with the appended superinstructions
+
+	public int maxFusedInstrs = 64; // maximal number of superinstructions
+
+	OpcodeTable opcodeTable; // of the base table
+	List<int[]> fusedSlices = new ArrayList<>(); // slice of each superinstruction, indexed by instruction index - length of the base table
+
+	public SuperinstructionFusion(Instrs.InstructionLookupTable baseTable) {
+		this.baseTable = baseTable;
+		opcodeTable = OpcodeTable.decode(baseTable);
+
+		fusedTable = new Instrs.InstructionLookupTable();
+		fusedTable.table = Arrays.copyOf(baseTable.table, baseTable.table.length);
+	}
+
+	// adds the most frequent fusable slices of the primary programs of the compressor as superinstructions
+	// /param k number of added superinstructions
+	public void addMostFrequentSlices(ProgramCompressor.HashBasedFastProgramCompressor compressor, int k, int maxSliceLength) {
+		int addedCnt = 0;
+		for( int[] iSlice : compressor.retMostFrequentSlices(2, maxSliceLength) ) {
+			if( addedCnt >= k )   break;
+			if( addFusedInstr(iSlice) )   addedCnt++;
+		}
+	}
+
+	// returns if the slice was added, it is not added if it is not fusable or already added
+	public boolean addFusedInstr(int[] slice) {
+		if( slice.length < 2 || fusedSlices.size() >= maxFusedInstrs )   return false;
+		for( int iInstrIdx : slice ) {
+			if( !isFusable(iInstrIdx) )   return false;
+		}
+		for( int[] iFusedSlice : fusedSlices ) {
+			if( Arrays.equals(iFusedSlice, slice) )   return false;
+		}
+
+		Instrs.IInstr[] instrs = new Instrs.IInstr[slice.length];
+		for( int idx = 0; idx < slice.length; idx++ )   instrs[idx] = baseTable.table[slice[idx]];
+
+		fusedSlices.add(Arrays.copyOf(slice, slice.length));
+		fusedTable.table = Arrays.copyOf(fusedTable.table, fusedTable.table.length + 1);
+		fusedTable.table[fusedTable.table.length - 1] = new Instrs.FUSED(instrs);
+		return true;
+	}
+
+	// instructions which change the control flow (or could change it) can't be fused
+	public boolean isFusable(int instrIdx) {
+		switch( opcodeTable.opcodes[instrIdx] ) {
+			case OpcodeTable.OP_GENERIC:
+			case OpcodeTable.OP_JMP:
+			case OpcodeTable.OP_PREDIGNOREIFFLAG:
+			case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+			case OpcodeTable.OP_MACRO:
+			case OpcodeTable.OP_XMACRO:
+			return false;
+
+			default:
+			return true;
+		}
+	}
+
+	// rewrites the program to use the superinstructions, returns the program itself if nothing was fused
+	public int[] rewrite(int[] instrsIndices) {
+		final int len = instrsIndices.length;
+		if( fusedSlices.isEmpty() || len < 2 )   return instrsIndices;
+
+		// positions which can be fused
+		boolean[] isFusablePosition = new boolean[len];
+		boolean[] isLandingPosition = new boolean[len]; // jumps or skips land at the position
+		for( int ip = 0; ip < len; ip++ )   isFusablePosition[ip] = isFusable(instrsIndices[ip]);
+		for( int ip = 0; ip < len; ip++ ) {
+			int opcode = opcodeTable.opcodes[instrsIndices[ip]];
+			if( opcode == OpcodeTable.OP_JMP ) {
+				int target = ip + 1 + opcodeTable.intArgs[instrsIndices[ip]];
+				if( target >= 0 && target < len )   isLandingPosition[target] = true;
+			}
+			else if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+				int nInstrs = opcodeTable.intArgs[instrsIndices[ip]];
+				for( int skipedIp = ip + 1; skipedIp <= ip + nInstrs && skipedIp < len; skipedIp++ )   isFusablePosition[skipedIp] = false;
+				if( nInstrs > 0 && ip + 1 + nInstrs < len )   isLandingPosition[ip + 1 + nInstrs] = true;
+			}
+		}
+
+		int[] fusedInstrAt = new int[len]; // index of the superinstruction which starts at the position, -1 if none
+		int[] newIps = new int[len + 1]; // position in the rewritten program of each position of the original program
+
+		for(;;) {
+			int newLen = selectSlices(instrsIndices, isFusablePosition, isLandingPosition, fusedInstrAt, newIps);
+			if( newLen == len )   return instrsIndices; // nothing was fused
+
+			int[] res = new int[newLen];
+			boolean isValid = true;
+			for( int ip = 0; ip < len; ) {
+				if( fusedInstrAt[ip] != -1 ) {
+					res[newIps[ip]] = baseTable.table.length + fusedInstrAt[ip];
+					ip += fusedSlices.get(fusedInstrAt[ip]).length;
+					continue;
+				}
+
+				res[newIps[ip]] = instrsIndices[ip];
+				if( opcodeTable.opcodes[instrsIndices[ip]] == OpcodeTable.OP_JMP ) {
+					int correctedJmp = retCorrectedJmp(instrsIndices, ip, newIps, newLen);
+					if( correctedJmp == -1 ) {
+						// we can't fuse the slices between the jump and the target
+						int target = ip + 1 + opcodeTable.intArgs[instrsIndices[ip]];
+						for( int iIp = Math.max(0, Math.min(ip, target)); iIp < Math.min(len, Math.max(ip, target)); iIp++ )   isFusablePosition[iIp] = false;
+						isValid = false;
+						break;
+					}
+					res[newIps[ip]] = correctedJmp;
+				}
+				ip++;
+			}
+
+			if( isValid )   return res;
+		}
+	}
+
+	// greedy selection of the longest fusable slices from left to right
+	// returns the length of the rewritten program
+	int selectSlices(int[] instrsIndices, boolean[] isFusablePosition, boolean[] isLandingPosition, int[] fusedInstrAt, int[] newIps) {
+		final int len = instrsIndices.length;
+
+		Arrays.fill(fusedInstrAt, -1);
+		int newIp = 0;
+		for( int ip = 0; ip < len; ) {
+			int bestFusedIdx = -1;
+			int bestLength = 1;
+			if( isFusablePosition[ip] ) {
+				for( int fusedIdx = 0; fusedIdx < fusedSlices.size(); fusedIdx++ ) {
+					int[] iSlice = fusedSlices.get(fusedIdx);
+					if( iSlice.length > bestLength && isSliceAt(instrsIndices, ip, iSlice, isFusablePosition, isLandingPosition) ) {
+						bestFusedIdx = fusedIdx;
+						bestLength = iSlice.length;
+					}
+				}
+			}
+
+			fusedInstrAt[ip] = bestFusedIdx;
+			for( int offset = 0; offset < bestLength; offset++ )   newIps[ip + offset] = newIp;
+			newIp++;
+			ip += bestLength;
+		}
+		newIps[len] = newIp;
+		return newIp;
+	}
+
+	static boolean isSliceAt(int[] instrsIndices, int ip, int[] slice, boolean[] isFusablePosition, boolean[] isLandingPosition) {
+		if( ip + slice.length > instrsIndices.length )   return false;
+		for( int offset = 0; offset < slice.length; offset++ ) {
+			if( instrsIndices[ip + offset] != slice[offset] || !isFusablePosition[ip + offset] )   return false;
+			if( offset > 0 && isLandingPosition[ip + offset] )   return false;
+		}
+		return true;
+	}
+
+	// returns the index of the jump instruction which has the same target in the rewritten program, -1 if the table doesn't contain it
+	int retCorrectedJmp(int[] instrsIndices, int ip, int[] newIps, int newLen) {
+		final int len = instrsIndices.length;
+		int delta = opcodeTable.intArgs[instrsIndices[ip]];
+		int target = ip + 1 + delta;
+		int newIpAfterJmp = newIps[ip] + 1;
+
+		// range of valid offsets in the rewritten program
+		// targets after the end terminate the program and targets before the start are invalid, in both cases the exact target doesn't matter
+		int minDelta, maxDelta;
+		if( target >= len ) {
+			minDelta = newLen - newIpAfterJmp;
+			maxDelta = Integer.MAX_VALUE;
+		}
+		else if( target < 0 ) {
+			minDelta = Integer.MIN_VALUE;
+			maxDelta = -newIpAfterJmp - 1;
+		}
+		else {
+			minDelta = maxDelta = newIps[target] - newIpAfterJmp;
+		}
+
+		if( delta >= minDelta && delta <= maxDelta )   return instrsIndices[ip];
+
+		for( int instrIdx = 0; instrIdx < opcodeTable.opcodes.length; instrIdx++ ) {
+			if( opcodeTable.opcodes[instrIdx] != OpcodeTable.OP_JMP )   continue;
+			int iDelta = opcodeTable.intArgs[instrIdx];
+			if( iDelta >= minDelta && iDelta <= maxDelta )   return instrIdx;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,417 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// interpreter which executes the lowered instructions of a OpcodeTable with a single switch
+// gives the same results as Instrs.Interpreter but avoids the megamorphic call of IInstr.exec()
+//
+// doesn't maintain execution contexts of the VM, instructions which aren't known to the OpcodeTable are executed with IInstr.exec()
+// programs which call XMACRO while slots are installed are interpreted with a Instrs.Interpreter, which maintains the execution contexts of the calls
+public class SwitchInterpreter {
+	public Instrs.Ctx ctx;
+	public OpcodeTable opcodeTable;
+
+	// slots which are callable with XMACRO, see Instrs.Interpreter.xmacroSlots
+	public List<Instrs.Ctx.Vm.XMacroSlot> xmacroSlots = new ArrayList<>();
+
+	Instrs.Ctx.Vm rootVm = new Instrs.Ctx.Vm();
+	Instrs.Interpreter macroInterpreter = new Instrs.Interpreter(); // interprets the programs which call slots
+
+	public SwitchInterpreter(Instrs.InstructionLookupTable instrLookup) {
+		opcodeTable = OpcodeTable.decode(instrLookup);
+		macroInterpreter.instrLookup = instrLookup;
+	}
+
+	public boolean interpret(int[] instrsIndices) {
+		if( !xmacroSlots.isEmpty() && isCallingXMacro(instrsIndices) ) {
+			macroInterpreter.xmacroSlots = xmacroSlots;
+			return macroInterpreter.interpret(ctx, instrsIndices);
+		}
+
+		final int[] opcodes = opcodeTable.opcodes;
+		final int[] intArgs = opcodeTable.intArgs;
+		final int[] intArgs2 = opcodeTable.intArgs2;
+		final double[] doubleArgs = opcodeTable.doubleArgs;
+		final double[] doubleArgs2 = opcodeTable.doubleArgs2;
+
+		final Instrs.Ctx ctx = this.ctx;
+		final Instrs.IArrayCtx arrayCtx = ctx.arrayCtx;
+		final Instrs.DoubleStack stack = ctx.stack;
+		final double[] arr = stack.arr;
+		final int capacity = arr.length;
+		final int len = instrsIndices.length;
+
+		ctx.terminatedGracefully = false;
+		ctx.skipedInstrsCnt = 0;
+		ctx.isJumpPending = false;
+		ctx.fatalInstrError = false;
+
+		// we need to have a fresh root-VM
+		Instrs.Ctx.Vm vm = rootVm;
+		vm.flag = false;
+		vm.xmacros.clear();
+		ctx.vms.clear();
+		ctx.vms.add(vm);
+		ctx.currentSelectedVmIdx = 0;
+
+		int top = stack.topIdx;
+		int steps = ctx.remainingSteps;
+		int ip = 0;
+		int skip = 0;
+		boolean isJumpPending = false;
+		int jumpDelta = 0;
+
+		mainLoop:
+		for(;;) {
+			// limit time steps
+			if( steps != -2 ) {
+				if( steps == 0 ) {
+					stack.topIdx = top;
+					ctx.remainingSteps = steps;
+					return false;
+				}
+				steps--;
+			}
+
+			if( ip >= len )   break;
+
+			// ignore ignored instructions
+			if( skip > 0 ) {
+				skip--;
+				ip++;
+				continue;
+			}
+
+			// execute relative jump
+			if( isJumpPending ) {
+				ip += jumpDelta;
+				isJumpPending = false;
+				continue;
+			}
+
+			if( ip < 0 ) {
+				if( ctx.configInterpretInvalidIndicesAsTermination )   break;
+				stack.topIdx = top;
+				ctx.remainingSteps = steps;
+				return false;
+			}
+
+			final int instrIdx = instrsIndices[ip];
+			boolean res;
+
+			switch( opcodes[instrIdx] ) {
+				case OpcodeTable.OP_ADD2:
+				case OpcodeTable.OP_ADD2_R:
+				if( top >= 1 ) {
+					double inputA = arr[top];
+					double inputB = arr[top-1];
+					arr[--top] = inputA + inputB;
+					res = true;
+				}
+				else if( opcodes[instrIdx] == OpcodeTable.OP_ADD2_R && top+1 < capacity ) {
+					arr[++top] = 0.0;
+					res = true;
+				}
+				else {
+					res = false;
+				}
+				break;
+
+				case OpcodeTable.OP_SUB2:
+				case OpcodeTable.OP_SUB2_R:
+				if( top >= 1 ) {
+					double inputA = arr[top];
+					double inputB = arr[top-1];
+					arr[--top] = inputA - inputB;
+					res = true;
+				}
+				else if( opcodes[instrIdx] == OpcodeTable.OP_SUB2_R && top+1 < capacity ) {
+					arr[++top] = 0.0;
+					res = true;
+				}
+				else {
+					res = false;
+				}
+				break;
+
+				case OpcodeTable.OP_MUL2:
+				case OpcodeTable.OP_MUL2_R:
+				if( top >= 1 ) {
+					double inputA = arr[top];
+					double inputB = arr[top-1];
+					arr[--top] = inputA * inputB;
+					res = true;
+				}
+				else if( opcodes[instrIdx] == OpcodeTable.OP_MUL2_R && top+1 < capacity ) {
+					arr[++top] = 1.0;
+					res = true;
+				}
+				else {
+					res = false;
+				}
+				break;
+
+				case OpcodeTable.OP_DIV2:
+				case OpcodeTable.OP_DIV2_R:
+				if( top >= 1 ) {
+					double inputA = arr[top];
+					double inputB = arr[top-1];
+					top -= 2; // both are poped even if the division fails
+					if( inputB == 0.0 ) {
+						res = opcodes[instrIdx] == OpcodeTable.OP_DIV2_R;
+						if( res )   arr[++top] = 1.0;
+					}
+					else {
+						arr[++top] = inputA / inputB;
+						res = true;
+					}
+				}
+				else if( opcodes[instrIdx] == OpcodeTable.OP_DIV2_R && top+1 < capacity ) {
+					arr[++top] = 1.0;
+					res = true;
+				}
+				else {
+					res = false;
+				}
+				break;
+
+				case OpcodeTable.OP_EXP:
+				if( res = top >= 0 )   arr[top] = Math.exp(arr[top]);
+				break;
+
+				case OpcodeTable.OP_SQRT:
+				if( res = top >= 0 )   arr[top] = Math.sqrt(arr[top]);
+				break;
+
+				case OpcodeTable.OP_SIN:
+				if( res = top >= 0 )   arr[top] = Math.sin(arr[top]);
+				break;
+
+				case OpcodeTable.OP_LOG:
+				if( res = top >= 0 )   arr[top] = Math.log(arr[top]);
+				break;
+
+				case OpcodeTable.OP_TANH:
+				if( res = top >= 0 )   arr[top] = Math.tanh(arr[top]);
+				break;
+
+				case OpcodeTable.OP_ATAN:
+				if( res = top >= 0 )   arr[top] = Math.atan(arr[top]);
+				break;
+
+				case OpcodeTable.OP_JMP:
+				isJumpPending = true;
+				jumpDelta = intArgs[instrIdx];
+				res = true;
+				break;
+
+				case OpcodeTable.OP_CMPGT:
+				case OpcodeTable.OP_CMPGTPOP:
+				if( res = top >= 1 ) {
+					vm.flag = arr[top] > arr[top-1];
+					if( opcodes[instrIdx] == OpcodeTable.OP_CMPGTPOP )   top -= 2;
+				}
+				break;
+
+				case OpcodeTable.OP_CMPEQUAL:
+				case OpcodeTable.OP_CMPEQUALPOP:
+				if( res = top >= 1 ) {
+					vm.flag = Math.abs(arr[top] - arr[top-1]) < 0.001; // epsilon
+					if( opcodes[instrIdx] == OpcodeTable.OP_CMPEQUALPOP )   top -= 2;
+				}
+				break;
+
+				case OpcodeTable.OP_PUSHCONST:
+				if( res = top+1 < capacity )   arr[++top] = doubleArgs[instrIdx];
+				break;
+
+				case OpcodeTable.OP_POP:
+				if( res = top >= 0 )   top--;
+				break;
+
+				case OpcodeTable.OP_XCHG: {
+					int rel = intArgs[instrIdx];
+					if( res = top >= rel ) {
+						double inputA = arr[top];
+						arr[top] = arr[top-rel];
+						arr[top-rel] = inputA;
+					}
+				}
+				break;
+
+				case OpcodeTable.OP_DUP:
+				if( res = (top >= 0 && top+1 < capacity) ) {
+					arr[top+1] = arr[top];
+					top++;
+				}
+				break;
+
+				case OpcodeTable.OP_PREDIGNOREIFFLAG:
+				if( vm.flag )   skip = intArgs[instrIdx];
+				res = true;
+				break;
+
+				case OpcodeTable.OP_PREDIGNOREIFNOTFLAG:
+				if( !vm.flag )   skip = intArgs[instrIdx];
+				res = true;
+				break;
+
+				case OpcodeTable.OP_MACRO:
+				res = false; // not executable
+				break;
+
+				case OpcodeTable.OP_XMACRO:
+				// no slot is installed, Instrs.Interpreter fails at the call of a invalid slot without advancing the ip, so the failure isn't ignored at the end of the program
+				if( ctx.terminatedGracefully )   break mainLoop;
+				stack.topIdx = top;
+				ctx.remainingSteps = steps;
+				return false;
+
+				case OpcodeTable.OP_MULVALUE:
+				if( res = top >= 0 )   arr[top] *= doubleArgs[instrIdx];
+				break;
+
+				case OpcodeTable.OP_PUSHIFFLAG:
+				if( res = top+1 < capacity )   arr[++top] = vm.flag ? doubleArgs2[instrIdx] : doubleArgs[instrIdx];
+				break;
+
+				case OpcodeTable.OP_CMPGTZERO:
+				case OpcodeTable.OP_CMPGTZEROPOP:
+				if( res = top >= 0 ) {
+					vm.flag = arr[top] > 0;
+					if( opcodes[instrIdx] == OpcodeTable.OP_CMPGTZEROPOP )   top--;
+				}
+				break;
+
+				case OpcodeTable.OP_ARRPOPAPPEND: {
+					int arrayIdx = intArgs[instrIdx];
+					res = false;
+					if( top < 0 )   break;
+					double val = arr[top--];
+
+					arrayCtx.append(val, arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					int arrLength = arrayCtx.retArrLength(arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					arrayCtx.setArrIdx(arrLength - 1, arrayIdx);
+					res = arrayCtx.isOk();
+				}
+				break;
+
+				case OpcodeTable.OP_ARRDEL: {
+					int arrayIdx = intArgs[instrIdx];
+					res = false;
+					int idx = arrayCtx.retArrIdx(arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					arrayCtx.delAtIdx(idx, arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					int arrLength = arrayCtx.retArrLength(arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					if( idx >= arrLength ) {
+						arrayCtx.setArrIdx(arrLength - 1, arrayIdx);
+						if( !arrayCtx.isOk() )   break;
+					}
+					res = true;
+				}
+				break;
+
+				case OpcodeTable.OP_ARRLEN: {
+					int arrLength = arrayCtx.retArrLength(intArgs[instrIdx]);
+					if( res = (arrayCtx.isOk() && top+1 < capacity) )   arr[++top] = (double)arrLength;
+				}
+				break;
+
+				case OpcodeTable.OP_ARRSETIDX: {
+					res = false;
+					if( top < 0 )   break;
+					long idxLong = Math.round(arr[top]);
+					if( idxLong >= Integer.MAX_VALUE )   break; // check for index overflow
+					arrayCtx.setArrIdx((int)idxLong, intArgs[instrIdx]);
+					res = arrayCtx.isOk();
+				}
+				break;
+
+				case OpcodeTable.OP_ARRRETIDX: {
+					int idx = arrayCtx.retArrIdx(intArgs[instrIdx]);
+					if( res = (arrayCtx.isOk() && top+1 < capacity) )   arr[++top] = (double)idx;
+				}
+				break;
+
+				case OpcodeTable.OP_ARRCHECKIDX:
+				vm.flag = arrayCtx.retCheckIdx(intArgs[instrIdx]);
+				res = arrayCtx.isOk();
+				break;
+
+				case OpcodeTable.OP_ARRREADNPUSH: {
+					int arrayIdx = intArgs[instrIdx];
+					res = false;
+					int idx = arrayCtx.retArrIdx(arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					double val = arrayCtx.retAt(idx, arrayIdx);
+					if( !arrayCtx.isOk() )   break;
+					if( res = top+1 < capacity )   arr[++top] = val;
+				}
+				break;
+
+				case OpcodeTable.OP_ARRREL: {
+					int idx = arrayCtx.retArrIdx(intArgs[instrIdx]);
+					if( res = arrayCtx.isOk() ) {
+						arrayCtx.setArrIdx(idx + intArgs2[instrIdx], intArgs[instrIdx]);
+					}
+				}
+				break;
+
+				default: // OP_GENERIC and OP_ACTION
+				// sync the state which the instruction can see or modify
+				stack.topIdx = top;
+				ctx.remainingSteps = steps;
+				ctx.skipedInstrsCnt = skip;
+
+				res = opcodeTable.instrs[instrIdx].exec(ctx);
+
+				top = stack.topIdx;
+				steps = ctx.remainingSteps;
+				skip = ctx.skipedInstrsCnt;
+				if( ctx.isJumpPending ) {
+					isJumpPending = true;
+					jumpDelta = ctx.jumpDelta;
+					ctx.isJumpPending = false;
+				}
+				if( !res && ctx.fatalInstrError ) {
+					stack.topIdx = top;
+					ctx.remainingSteps = steps;
+					return false;
+				}
+				break;
+			}
+
+			ip++;
+
+			// valid terminating condition, the result of the last instruction is ignored like in Instrs.Interpreter
+			if( ip == len )   break;
+
+			if( !res ) {
+				if( ctx.terminatedGracefully )   break;
+				stack.topIdx = top;
+				ctx.remainingSteps = steps;
+				return false;
+			}
+		}
+
+		stack.topIdx = top;
+		ctx.remainingSteps = steps;
+
+		ctx.terminatedGracefully = true;
+		if( ctx.domainSpecificCtx != null )   ctx.domainSpecificCtx.terminatedInterpreationGracefully(ctx);
+
+		return true;
+	}
+
+	boolean isCallingXMacro(int[] instrsIndices) {
+		for( int iInstrIdx : instrsIndices ) {
+			if( opcodeTable.opcodes[iInstrIdx] == OpcodeTable.OP_XMACRO )   return true;
+		}
+		return false;
+	}
+}
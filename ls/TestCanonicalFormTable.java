@@ -0,0 +1,107 @@
+package ls;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// brute force check of the CanonicalFormTable for all programs up to a length
+// * the incremental enumeration of PruningLevinSearch must enumerate exactly the programs which are canonical at all positions
+// * completeness: for each program which isn't canonical but succeeds on all inputs a canonical program with the same length or shorter must exist which has the same results
+class TestCanonicalFormTable {
+	static final double[][] INPUTS = new double[][]{{-2.0, 0.5, 3.0}, {1.5, -1.0, 2.25}, {0.0, 4.0, -0.75}};
+
+	public static void main(String[] args) {
+		Instrs.InstructionLookupTable fullInstrLookup = TestInterpreterEquivalence.retInstrLookup();
+
+		// small table without backward jumps with the removable instructions and the instructions of the forbidden pairs and triples, so longer programs are checked
+		Instrs.InstructionLookupTable smallInstrLookup = new Instrs.InstructionLookupTable();
+		smallInstrLookup.table = new Instrs.IInstr[] {
+			new Instrs.JMP(0), new Instrs.JMP(1), new Instrs.PREDIGNOREIFFLAG(2, true), new Instrs.ADD2(true), new Instrs.MUL2(true), new Instrs.CMPGTZERO(false),
+			new Instrs.PUSHCONST("PUSH -1", -1), new Instrs.PUSHCONST("PUSH 0", 0), new Instrs.XCHG(), new Instrs.XCHG(0), new Instrs.DUP(), new Instrs.POP(),
+			new Instrs.MULVALUE(-1, "-1"), new Instrs.MULVALUE(1, "1"), new Instrs.SQRT(), new Instrs.XMACRO(0),
+		};
+
+		Instrs.Interpreter interpreter = new Instrs.Interpreter();
+		int mismatchesCnt = check(interpreter, smallInstrLookup, 4);
+		mismatchesCnt += check(interpreter, fullInstrLookup, 3);
+
+		// the body of the slot skips instructions of the caller depending on the value on the stack, so the patterns after a XMACRO must stay allowed
+		Instrs.Ctx.Vm.XMacroSlot skippingSlot = new Instrs.Ctx.Vm.XMacroSlot();
+		skippingSlot.instrs = new Instrs.IInstr[]{new Instrs.CMPGTZERO(false), new Instrs.PREDIGNOREIFFLAG(2, true)};
+		interpreter.xmacroSlots.add(skippingSlot);
+		mismatchesCnt += check(interpreter, smallInstrLookup, 4);
+
+		if( mismatchesCnt != 0 ) {
+			System.out.format("FAILED: %d mismatches\n", mismatchesCnt);
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	// returns the number of mismatches
+	static int check(Instrs.Interpreter interpreter, Instrs.InstructionLookupTable instrLookup, int maxLength) {
+		interpreter.instrLookup = instrLookup;
+		CanonicalFormTable canonicalFormTable = new CanonicalFormTable(instrLookup);
+		int nInstrs = instrLookup.table.length;
+
+		int mismatchesCnt = 0;
+		Set<String> canonicalResults = new HashSet<>(); // results of the canonical programs up to the current length
+		for( int length = 1; length <= maxLength; length++ ) {
+			PruningLevinSearch canonicalSearch = new PruningLevinSearch();
+			canonicalSearch.nInstrs = nInstrs;
+			canonicalSearch.canonicalFormTable = canonicalFormTable;
+			Set<String> canonicalPrograms = new HashSet<>();
+			if( !canonicalSearch.resize(length) ) {
+				do {
+					canonicalPrograms.add(Arrays.toString(canonicalSearch.arr));
+					String results = retResults(interpreter, canonicalSearch.arr);
+					if( results != null )   canonicalResults.add(results);
+				} while( !canonicalSearch.next() );
+			}
+
+			long programsCnt = 1;
+			for( int idx = 0; idx < length; idx++ )   programsCnt *= nInstrs;
+			if( canonicalPrograms.size() + canonicalSearch.nonCanonicalProgramsCnt != programsCnt ) {
+				mismatchesCnt++;
+				System.out.format("length=%d canonical #=%d skipped #=%d don't add up to #=%d\n", length, canonicalPrograms.size(), canonicalSearch.nonCanonicalProgramsCnt, programsCnt);
+			}
+
+			PruningLevinSearch search = new PruningLevinSearch();
+			search.nInstrs = nInstrs;
+			search.resize(length);
+			long rejectedSucceedingCnt = 0;
+			do {
+				int[] program = search.arr;
+				boolean isCanonical = true;
+				for( int position = 0; position < length && isCanonical; position++ )   isCanonical = canonicalFormTable.isCanonicalAt(program, position);
+
+				if( isCanonical != canonicalPrograms.contains(Arrays.toString(program)) ) {
+					if( mismatchesCnt++ < 10 )   System.out.format("enumeration differs from isCanonicalAt() for program=%s\n", Arrays.toString(program));
+				}
+
+				if( isCanonical )   continue;
+				String results = retResults(interpreter, program);
+				if( results == null )   continue;
+				rejectedSucceedingCnt++;
+				if( !canonicalResults.contains(results) ) {
+					if( mismatchesCnt++ < 10 )   System.out.format("no canonical program has the results of program=%s\n", Arrays.toString(program));
+				}
+			} while( !search.next() );
+
+			System.out.format("instructions #=%d length=%d programs #=%d canonical #=%d rejected succeeding #=%d\n", nInstrs, length, programsCnt, canonicalPrograms.size(), rejectedSucceedingCnt);
+		}
+		return mismatchesCnt;
+	}
+
+	// results of the program for all inputs, null if the program fails on a input
+	static String retResults(Instrs.Interpreter interpreter, int[] program) {
+		StringBuilder sb = new StringBuilder();
+		for( double[] iInput : INPUTS ) {
+			Instrs.Ctx ctx = TestInterpreterEquivalence.retCtx(iInput, 60, false);
+			boolean res = interpreter.interpret(ctx, program);
+			if( !res )   return null;
+			sb.append(TestInterpreterEquivalence.retResultState(ctx, res)).append('|');
+		}
+		return sb.toString();
+	}
+}
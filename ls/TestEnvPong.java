@@ -1,8 +1,15 @@
 package ls;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
 import env.Pong;
 import ls.Instrs;
-import ls.LevinSearch;
+import ls.ParallelLevinSearch;
 import misc.Timer;
 
 class TestEnvPong {
@@ -10,6 +17,7 @@ class TestEnvPong {
 	static class EnvImpl {
 		public env.Pong pongEnv;
 		public Instrs.Interpreter interpreter;
+		public Instrs.Ctx ctx; // ctx of the worker, the interpreter is shared by the workers
 
 		boolean fatalError;
 
@@ -47,28 +55,28 @@ class TestEnvPong {
 
 		// setup arguments for program, run the program and check/interpret the result
 		void runProgram() {
-			interpreter.ctx.reset();
+			ctx.reset();
 
 			this.fatalError = false;
 
 			// push difference between ball and paddle
 			float ballPaddleDiff = pongEnv.paddleX - pongEnv.ballX;
-			interpreter.ctx.stack.push(ballPaddleDiff);
+			ctx.stack.push(ballPaddleDiff);
 
 			// interpret
-			boolean fatalError = interpreter.interpret(currentProgramInstrsIndices);
+			boolean fatalError = !interpreter.interpret(ctx, currentProgramInstrsIndices);
 			this.fatalError = fatalError;
 			if( this.fatalError )   return;
 
 			// work with result
-			if( interpreter.ctx.stack.empty() ) {
+			if( ctx.stack.empty() ) {
 				this.fatalError = true;
 				return;
 			}
 
 			pongEnv.control = 0;
 
-			float controlRes = interpreter.ctx.stack.peek();
+			float controlRes = ctx.stack.peek();
 			if( Math.abs(1.0f - controlRes) < 0.001f ) {
 				pongEnv.control = 1;
 			}
@@ -78,15 +86,51 @@ class TestEnvPong {
 		}
 	}
 
-	public static void main(String[] args) {
+	// tests the programs concurrently, each worker has its own environment and verifier
+	class PongTester implements ParallelLevinSearch.IProgramTester {
+		StackEffectVerifier[] verifiers;
+		Instrs.Ctx[] ctxs;
+
+		public PongTester(int numberOfWorkers) {
+			verifiers = new StackEffectVerifier[numberOfWorkers];
+			ctxs = new Instrs.Ctx[numberOfWorkers];
+			for( int workerIdx = 0; workerIdx < numberOfWorkers; workerIdx++ ) {
+				verifiers[workerIdx] = new StackEffectVerifier(interpreter.instrLookup);
+				verifiers[workerIdx].configRequireResult = true; // runProgram() needs the result on the stack
+				ctxs[workerIdx] = new Instrs.Ctx();
+			}
+		}
+
+		@Override
+		public boolean test(int[] program, int workerIdx) {
+			if( verifiers[workerIdx].verify(program, 1) == StackEffectVerifier.VERDICT_ALWAYSFAILS ) {
+				skippedProgramsCnt.incrementAndGet(); // programs which fail for sure don't need to get simulated
+				return false;
+			}
+
+			EnvImpl envImpl = new EnvImpl(); // we just reset it this way
+			envImpl.interpreter = interpreter;
+			envImpl.ctx = ctxs[workerIdx];
+
+			// translate generated program
+			// we just need to set it here
+			// TODO< copy if program can modify itself >
+			envImpl.currentProgramInstrsIndices = program;
+
+			return iterate(envImpl);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException, IOException {
 		TestEnvPong testEnvPong = new TestEnvPong();
 		testEnvPong.init();
-		testEnvPong.run();
+		testEnvPong.run(args.length > 0 ? Paths.get(args[0]) : null); // the optional argument is the path of the checkpoint
 	}
 
-	EnvImpl envImpl;
 	Instrs.Interpreter interpreter;
 
+	AtomicLong skippedProgramsCnt = new AtomicLong(); // number of programs which were not simulated because they always fail
+
 	public void init() {
 		interpreter = new ls.Instrs.Interpreter();
 
@@ -99,12 +143,10 @@ class TestEnvPong {
 		interpreter.instrLookup.table[4] = new ls.Instrs.PUSHIFFLAG(0.0f, 1.0f);
 		interpreter.instrLookup.table[5] = new ls.Instrs.PUSHIFFLAG(0.0f, -1.0f);
 		interpreter.instrLookup.table[6] = new ls.Instrs.ADD2_R();
-
-		interpreter.ctx = new ls.Instrs.Ctx();
 	}
 
 	// returns whenever the score was high enough to be a winner
-	boolean iterate() {
+	boolean iterate(EnvImpl envImpl) {
 		envImpl.remainingSteps = 1000;
 
 		envImpl.initEnv();
@@ -129,63 +171,42 @@ class TestEnvPong {
 		return true;
 	}
 
-	public void run() {
+	// /param checkpointPath null if no checkpoints are written, a restarted search resumes from the checkpoint otherwise
+	//                       the checkpoint is deleted when the search is finished, so the next run searches from the begin
+	public void run(Path checkpointPath) throws InterruptedException, ExecutionException, IOException {
 		int maxProgramLength = 10;
 
-		ls.LevinSearch ls = new ls.LevinSearch();
-		ls.nInstrs = 7;
-		ls.resize(2);
+		ParallelLevinSearch ls = new ParallelLevinSearch(7);
+		ls.checkpointPath = checkpointPath;
+		if( checkpointPath != null && ls.loadCheckpoint() ) {
+			System.out.format("resumed search from checkpoint\n");
+		}
+		PongTester tester = new PongTester(ls.numberOfThreads);
 
 		Timer timer = new Timer();
 
 		timer.start();
 
-		for(;;) {
-			envImpl = new EnvImpl(); // we just reset it this way
-			envImpl.interpreter = interpreter;
-
-			// translate generated program
-			// we just need to set it here
-			// TODO< copy if program can modify itself >
-			envImpl.currentProgramInstrsIndices = ls.arr;
-
-			if( /* debugProgram */ false ) {
-				for( int idx = 0; idx < ls.arr.length; idx++ ) {
-					System.out.format("%d ", ls.arr[idx]);
-				}
-
-				System.out.format("\n");
-
-			}
-
-
-			boolean passed = iterate();
-			if( passed ) {
+		// the lengths are searched one by one for the progress output
+		for( int programLength = 2; programLength <= maxProgramLength + 1; programLength++ ) {
+			int[] solution = ls.search(programLength, programLength, tester);
+			if( solution != null ) {
 				timer.stop();
+				if( checkpointPath != null )   Files.deleteIfExists(checkpointPath);
 
 				System.out.format("search was _successful_!\n");
-				System.out.format("took %d seconds", timer.retElapsedSeconds());
+				System.out.format("took %d seconds (%d seconds including the resumed searches)", timer.retElapsedSeconds(), ls.retElapsedMilliseconds() / 1000);
 
 
 				return;
 			}
 
-			// next program
-			boolean programOverflow = ls.next();
-			if( programOverflow ) {
-				if( ls.arr.length > maxProgramLength ) {
-					timer.stop();
-
-					System.out.format("search was not successful!\n");
-
-					return;
-				}
-
-				ls.resize(ls.arr.length+1);
-
-				System.out.format("search programlength=%d\n", ls.arr.length);
-			}
+			System.out.format("search programlength=%d skipped always failing programs #=%d\n", programLength + 1, skippedProgramsCnt.get());
 		}
 
+		timer.stop();
+		if( checkpointPath != null )   Files.deleteIfExists(checkpointPath);
+
+		System.out.format("search was not successful!\n");
 	}
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import exec.ctx.DefaultArrCtx;
+import instr.ArrayInstrs;
+
+// differential test of the engines against Instrs.Interpreter with random programs, inputs and time limits
+// * SwitchInterpreter and CompilingInterpreter must leave the same result, remaining steps, stack, flag and arrays, with and without installed XMACRO slots
+// * Instrs.BatchInterpreter and StraightLineExecutor must give the same failure and value on top of the stack for each lane, they don't expose more
+class TestInterpreterEquivalence {
+	public static void main(String[] args) {
+		Instrs.InstructionLookupTable instrLookup = retInstrLookup();
+		Random rng = new Random(42);
+
+		Instrs.Interpreter interpreter = new Instrs.Interpreter();
+		interpreter.instrLookup = instrLookup;
+		SwitchInterpreter switchInterpreter = new SwitchInterpreter(instrLookup);
+		CompilingInterpreter compilingInterpreter = new CompilingInterpreter(instrLookup);
+		compilingInterpreter.compileThreshold = 1; // compile as soon as possible, so the compiled code gets checked
+
+		int mismatchesCnt = 0;
+
+		for( int round = 0; round < 40; round++ ) {
+			List<Instrs.Ctx.Vm.XMacroSlot> slots = round % 2 == 0 ? new ArrayList<Instrs.Ctx.Vm.XMacroSlot>() : retRandomSlots(instrLookup, rng);
+			interpreter.xmacroSlots = slots;
+			switchInterpreter.xmacroSlots = slots;
+			compilingInterpreter.fallbackInterpreter.xmacroSlots = slots;
+
+			for( int programIdx = 0; programIdx < 2500; programIdx++ ) {
+				int[] program = retRandomProgram(instrLookup, rng);
+				double[] entryArgs = retRandomArgs(rng);
+				int remainingSteps = rng.nextBoolean() ? 200 : rng.nextInt(40);
+				boolean interpretInvalidIndicesAsTermination = rng.nextBoolean();
+
+				String[] states = new String[3];
+				for( int engine = 0; engine < 3; engine++ ) {
+					Instrs.Ctx ctx = retCtx(entryArgs, remainingSteps, interpretInvalidIndicesAsTermination);
+					boolean res;
+					if( engine == 0 ) {
+						res = interpreter.interpret(ctx, program);
+					}
+					else if( engine == 1 ) {
+						switchInterpreter.ctx = ctx;
+						res = switchInterpreter.interpret(program);
+					}
+					else {
+						compilingInterpreter.ctx = ctx;
+						res = compilingInterpreter.interpret(program);
+					}
+					states[engine] = retState(ctx, res);
+				}
+
+				for( int engine = 1; engine < 3; engine++ ) {
+					if( states[engine].equals(states[0]) )   continue;
+					if( mismatchesCnt++ < 10 ) {
+						System.out.format("%s differs for program=%s slots=%d\n  expected %s\n  actual   %s\n", BenchInstrs.ENGINENAMES[engine], Arrays.toString(program), slots.size(), states[0], states[engine]);
+					}
+				}
+			}
+		}
+
+		interpreter.xmacroSlots = new ArrayList<>();
+		Instrs.BatchInterpreter batchInterpreter = new Instrs.BatchInterpreter(instrLookup);
+		StraightLineExecutor straightLineExecutor = new StraightLineExecutor(instrLookup);
+		int batchCheckedCnt = 0, straightLineCheckedCnt = 0;
+		for( int programIdx = 0; programIdx < 200000 && (batchCheckedCnt < 2000 || straightLineCheckedCnt < 2000); programIdx++ ) {
+			int[] program = retRandomProgram(instrLookup, rng);
+			boolean isBatchSupported = batchInterpreter.isSupported(program);
+			boolean isStraightLine = straightLineExecutor.isStraightLine(program);
+			if( !isBatchSupported && !isStraightLine )   continue;
+
+			int nLanes = 1 + rng.nextInt(70);
+			double[][] laneArgs = new double[rng.nextInt(3)][nLanes];
+			for( double[] iArgs : laneArgs ) {
+				for( int lane = 0; lane < nLanes; lane++ )   iArgs[lane] = retRandomValue(rng);
+			}
+			int remainingSteps = rng.nextBoolean() ? 200 : rng.nextInt(40);
+			boolean interpretInvalidIndicesAsTermination = rng.nextBoolean();
+
+			if( isBatchSupported ) {
+				batchCheckedCnt++;
+				batchInterpreter.remainingSteps = remainingSteps;
+				batchInterpreter.configInterpretInvalidIndicesAsTermination = interpretInvalidIndicesAsTermination;
+				batchInterpreter.interpret(program, laneArgs, nLanes);
+			}
+			if( isStraightLine ) {
+				straightLineCheckedCnt++;
+				straightLineExecutor.remainingSteps = remainingSteps;
+				straightLineExecutor.interpret(program, laneArgs, nLanes);
+			}
+
+			for( int lane = 0; lane < nLanes; lane++ ) {
+				double[] entryArgs = new double[laneArgs.length];
+				for( int argIdx = 0; argIdx < laneArgs.length; argIdx++ )   entryArgs[argIdx] = laneArgs[argIdx][lane];
+				Instrs.Ctx ctx = retCtx(entryArgs, remainingSteps, interpretInvalidIndicesAsTermination);
+				boolean isSuccess = interpreter.interpret(ctx, program) && !ctx.stack.empty();
+				double output = isSuccess ? ctx.stack.peek() : 0.0;
+
+				if( isBatchSupported && !isSameLaneResult(isSuccess, output, batchInterpreter.isFailed(lane), batchInterpreter.outputs[lane]) ) {
+					if( mismatchesCnt++ < 10 )   System.out.format("Instrs.BatchInterpreter differs for program=%s lane=%d\n", Arrays.toString(program), lane);
+				}
+				if( isStraightLine && !isSameLaneResult(isSuccess, output, straightLineExecutor.isFailed(lane), straightLineExecutor.outputs[lane]) ) {
+					if( mismatchesCnt++ < 10 )   System.out.format("StraightLineExecutor differs for program=%s lane=%d\n", Arrays.toString(program), lane);
+				}
+			}
+		}
+
+		if( mismatchesCnt != 0 ) {
+			System.out.format("FAILED: %d mismatches\n", mismatchesCnt);
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	// instructions of all kinds, including skips and jumps which land inside and outside of the program, arrays, MACRO and XMACRO
+	static Instrs.InstructionLookupTable retInstrLookup() {
+		Instrs.InstructionLookupTable instrLookup = new Instrs.InstructionLookupTable();
+		instrLookup.table = new Instrs.IInstr[] {
+			new Instrs.JMP(0), new Instrs.JMP(1), new Instrs.JMP(3), new Instrs.JMP(-2), new Instrs.JMP(-5), new Instrs.JMP(-9),
+			new Instrs.PREDIGNOREIFFLAG(2, true), new Instrs.PREDIGNOREIFFLAG(4, true), new Instrs.PREDIGNOREIFFLAG(4, false), new Instrs.PREDIGNOREIFFLAG(9, false),
+			new Instrs.ADD2(true), new Instrs.ADD2(false), new Instrs.SUB2(true), new Instrs.SUB2(false),
+			new Instrs.MUL2(true), new Instrs.MUL2(false), new Instrs.DIV2(true), new Instrs.DIV2(false),
+			new Instrs.CMPGTZERO(false), new Instrs.CMPGTZERO(true), new Instrs.CMPGT(false), new Instrs.CMPGT(true),
+			new Instrs.CMPEQUAL(false), new Instrs.CMPEQUAL(true), new Instrs.PUSHIFFLAG(0.0, 1.0),
+			new Instrs.PUSHCONST("PUSH -1", -1), new Instrs.PUSHCONST("PUSH 0", 0), new Instrs.PUSHCONST("PUSH 1", 1),
+			new Instrs.XCHG(), new Instrs.XCHG(2), new Instrs.DUP(), new Instrs.POP(), new Instrs.MULVALUE(-1, "-1"),
+			new Instrs.SQRT(), new Instrs.EXP(), new Instrs.SIN(), new Instrs.LOG(), new Instrs.TANH(), new Instrs.ATAN(),
+			new ArrayInstrs.ARRPOPAPPEND(0), new ArrayInstrs.ARRPOPAPPEND(1), new ArrayInstrs.ARRDEL(0), new ArrayInstrs.ARRLEN(0),
+			new ArrayInstrs.ARRSETIDX(0), new ArrayInstrs.ARRSETIDX(1), new ArrayInstrs.ARRCHECKIDX(0), new ArrayInstrs.ARRREADNPUSH(0),
+			new ArrayInstrs.ARRREL(-1, 0, "ARRREL -1 0"), new ArrayInstrs.ARRREL(1, 0, "ARRREL 1 0"),
+			new Instrs.MACRO(0), new Instrs.XMACRO(0), new Instrs.XMACRO(1), new Instrs.XMACRO(5),
+		};
+		return instrLookup;
+	}
+
+	// slots with short bodies, the bodies contain jumps and skips which leave the body
+	static List<Instrs.Ctx.Vm.XMacroSlot> retRandomSlots(Instrs.InstructionLookupTable instrLookup, Random rng) {
+		List<Instrs.Ctx.Vm.XMacroSlot> slots = new ArrayList<>();
+		for( int slotIdx = 0; slotIdx < 3; slotIdx++ ) {
+			Instrs.Ctx.Vm.XMacroSlot slot = new Instrs.Ctx.Vm.XMacroSlot();
+			slot.instrs = new Instrs.IInstr[rng.nextInt(5)];
+			for( int idx = 0; idx < slot.instrs.length; idx++ ) {
+				int kind = rng.nextInt(10);
+				if( kind == 0 ) {
+					slot.instrs[idx] = new Instrs.JMP(rng.nextInt(7) - 3);
+				}
+				else if( kind == 1 ) {
+					slot.instrs[idx] = new Instrs.PREDIGNOREIFFLAG(rng.nextInt(4), rng.nextBoolean());
+				}
+				else {
+					Instrs.IInstr instr;
+					do {
+						instr = instrLookup.table[rng.nextInt(instrLookup.table.length)];
+					} while( instr instanceof Instrs.XMACRO ); // the bodies don't call other slots
+					slot.instrs[idx] = instr;
+				}
+			}
+			slots.add(slot);
+		}
+		return slots;
+	}
+
+	static int[] retRandomProgram(Instrs.InstructionLookupTable instrLookup, Random rng) {
+		int[] program = new int[1 + rng.nextInt(12)];
+		for( int idx = 0; idx < program.length; idx++ )   program[idx] = rng.nextInt(instrLookup.table.length);
+		return program;
+	}
+
+	static double[] retRandomArgs(Random rng) {
+		double[] args = new double[rng.nextInt(4)];
+		for( int idx = 0; idx < args.length; idx++ )   args[idx] = retRandomValue(rng);
+		return args;
+	}
+
+	// small values, so comparisons with zero and equal values are frequent
+	static double retRandomValue(Random rng) {
+		return rng.nextInt(7) - 3 + (rng.nextBoolean() ? 0.5 : 0.0);
+	}
+
+	static Instrs.Ctx retCtx(double[] entryArgs, int remainingSteps, boolean interpretInvalidIndicesAsTermination) {
+		Instrs.Ctx ctx = new Instrs.Ctx();
+		ctx.arrayCtx = new DefaultArrCtx();
+		ctx.remainingSteps = remainingSteps;
+		ctx.configInterpretInvalidIndicesAsTermination = interpretInvalidIndicesAsTermination;
+		for( double iArg : entryArgs )   ctx.stack.push(iArg);
+		return ctx;
+	}
+
+	// result, remaining steps, stack, flag and arrays after the interpretation
+	static String retState(Instrs.Ctx ctx, boolean res) {
+		return "steps=" + ctx.remainingSteps + " terminatedGracefully=" + ctx.terminatedGracefully + " " + retResultState(ctx, res);
+	}
+
+	// result, stack, flag and arrays after the interpretation, without the steps
+	static String retResultState(Instrs.Ctx ctx, boolean res) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(res);
+		sb.append(" flag=").append(ctx.retCurrentVm().flag).append(" stack=[");
+		for( int idx = 0; idx < ctx.stack.size(); idx++ )   sb.append(ctx.stack.get(idx)).append(',');
+		sb.append("]");
+		DefaultArrCtx arrayCtx = (DefaultArrCtx)ctx.arrayCtx;
+		for( int arrIdx = 0; arrIdx < 2; arrIdx++ ) {
+			sb.append(" arr").append(arrIdx).append('=').append(Arrays.toString(arrayCtx.retValues(arrIdx))).append(" idx=").append(arrayCtx.retArrIdx(arrIdx));
+		}
+		return sb.toString();
+	}
+
+	static boolean isSameLaneResult(boolean isSuccess, double output, boolean isLaneFailed, double laneOutput) {
+		if( isSuccess == isLaneFailed )   return false;
+		return !isSuccess || Double.doubleToLongBits(output) == Double.doubleToLongBits(laneOutput);
+	}
+}
@@ -0,0 +1,63 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// checks that the PeepholeOptimizer doesn't change the result of random programs, which are interpreted with random inputs
+// the optimized program must leave the same result, stack, flag and arrays and must not need more steps
+// programs which run out of steps are not compared, because the optimized program can terminate where the original program runs out of time
+// the half of the rounds installs random XMACRO slots into the interpreter, the optimizer doesn't know the slots
+class TestPeepholeOptimizer {
+	public static void main(String[] args) {
+		Instrs.InstructionLookupTable instrLookup = TestInterpreterEquivalence.retInstrLookup();
+		Random rng = new Random(3);
+
+		Instrs.Interpreter interpreter = new Instrs.Interpreter();
+		interpreter.instrLookup = instrLookup;
+		PeepholeOptimizer optimizer = new PeepholeOptimizer(instrLookup);
+
+		int optimizedProgramsCnt = 0, comparedCnt = 0, mismatchesCnt = 0;
+		for( int round = 0; round < 40; round++ ) {
+			interpreter.xmacroSlots = round % 2 == 0 ? new ArrayList<Instrs.Ctx.Vm.XMacroSlot>() : TestInterpreterEquivalence.retRandomSlots(instrLookup, rng);
+
+			for( int programIdx = 0; programIdx < 5000; programIdx++ ) {
+				int[] program = TestInterpreterEquivalence.retRandomProgram(instrLookup, rng);
+				int entryDepth = rng.nextInt(4);
+				boolean interpretInvalidIndicesAsTermination = rng.nextBoolean();
+				optimizer.configInterpretInvalidIndicesAsTermination = interpretInvalidIndicesAsTermination;
+				int[] optimizedProgram = optimizer.optimize(program, entryDepth);
+				if( Arrays.equals(program, optimizedProgram) )   continue;
+				optimizedProgramsCnt++;
+
+				for( int trial = 0; trial < 3; trial++ ) {
+					double[] entryArgs = new double[entryDepth];
+					for( int idx = 0; idx < entryDepth; idx++ )   entryArgs[idx] = TestInterpreterEquivalence.retRandomValue(rng);
+
+					Instrs.Ctx ctx = TestInterpreterEquivalence.retCtx(entryArgs, 500, interpretInvalidIndicesAsTermination);
+					boolean res = interpreter.interpret(ctx, program);
+					if( ctx.remainingSteps == 0 )   continue;
+					int remainingSteps = ctx.remainingSteps;
+					String state = TestInterpreterEquivalence.retResultState(ctx, res);
+
+					Instrs.Ctx optimizedCtx = TestInterpreterEquivalence.retCtx(entryArgs, 500, interpretInvalidIndicesAsTermination);
+					boolean optimizedRes = interpreter.interpret(optimizedCtx, optimizedProgram);
+					String optimizedState = TestInterpreterEquivalence.retResultState(optimizedCtx, optimizedRes);
+
+					comparedCnt++;
+					if( state.equals(optimizedState) && optimizedCtx.remainingSteps >= remainingSteps )   continue;
+					if( mismatchesCnt++ < 10 ) {
+						System.out.format("program=%s optimized=%s entryDepth=%d slots=%d\n  expected %s remainingSteps=%d\n  actual   %s remainingSteps=%d\n", Arrays.toString(program), Arrays.toString(optimizedProgram), entryDepth, interpreter.xmacroSlots.size(), state, remainingSteps, optimizedState, optimizedCtx.remainingSteps);
+					}
+				}
+			}
+		}
+
+		System.out.format("optimized programs #=%d compared interpretations #=%d\n", optimizedProgramsCnt, comparedCnt);
+		if( mismatchesCnt != 0 ) {
+			System.out.format("FAILED: %d mismatches\n", mismatchesCnt);
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+}
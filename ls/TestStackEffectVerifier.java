@@ -0,0 +1,57 @@
+package ls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// checks the soundness of the verdicts of the StackEffectVerifier with random programs, which are interpreted with random inputs
+// * a program with VERDICT_ALWAYSFAILS must never succeed
+// * a program with VERDICT_SAFE must never fail, except if it runs out of steps, because the time limit isn't considered
+// the half of the rounds installs random XMACRO slots into the interpreter, the verifier doesn't know the slots
+class TestStackEffectVerifier {
+	public static void main(String[] args) {
+		Instrs.InstructionLookupTable instrLookup = TestInterpreterEquivalence.retInstrLookup();
+		Random rng = new Random(3);
+
+		Instrs.Interpreter interpreter = new Instrs.Interpreter();
+		interpreter.instrLookup = instrLookup;
+		StackEffectVerifier verifier = new StackEffectVerifier(instrLookup);
+
+		int[] verdictCnts = new int[3];
+		int unsoundCnt = 0;
+		for( int round = 0; round < 40; round++ ) {
+			interpreter.xmacroSlots = round % 2 == 0 ? new ArrayList<Instrs.Ctx.Vm.XMacroSlot>() : TestInterpreterEquivalence.retRandomSlots(instrLookup, rng);
+
+			for( int programIdx = 0; programIdx < 5000; programIdx++ ) {
+				int[] program = TestInterpreterEquivalence.retRandomProgram(instrLookup, rng);
+				int entryDepth = rng.nextInt(4);
+				verifier.configInterpretInvalidIndicesAsTermination = rng.nextBoolean();
+				verifier.configRequireResult = rng.nextBoolean();
+				int verdict = verifier.verify(program, entryDepth);
+				verdictCnts[verdict]++;
+
+				for( int trial = 0; trial < 10; trial++ ) {
+					double[] entryArgs = new double[entryDepth];
+					for( int idx = 0; idx < entryDepth; idx++ )   entryArgs[idx] = TestInterpreterEquivalence.retRandomValue(rng);
+					Instrs.Ctx ctx = TestInterpreterEquivalence.retCtx(entryArgs, 500, verifier.configInterpretInvalidIndicesAsTermination);
+					boolean isSuccess = interpreter.interpret(ctx, program);
+					if( verifier.configRequireResult )   isSuccess = isSuccess && !ctx.stack.empty();
+
+					boolean isUnsound = (verdict == StackEffectVerifier.VERDICT_ALWAYSFAILS && isSuccess) || (verdict == StackEffectVerifier.VERDICT_SAFE && !isSuccess && ctx.remainingSteps != 0);
+					if( !isUnsound )   continue;
+					if( unsoundCnt++ < 10 ) {
+						System.out.format("verdict=%d isSuccess=%b program=%s entryDepth=%d slots=%d\n", verdict, isSuccess, Arrays.toString(program), entryDepth, interpreter.xmacroSlots.size());
+					}
+					break;
+				}
+			}
+		}
+
+		System.out.format("verdicts safe=%d mayfail=%d alwaysfails=%d\n", verdictCnts[StackEffectVerifier.VERDICT_SAFE], verdictCnts[StackEffectVerifier.VERDICT_MAYFAIL], verdictCnts[StackEffectVerifier.VERDICT_ALWAYSFAILS]);
+		if( unsoundCnt != 0 ) {
+			System.out.format("FAILED: %d unsound verdicts\n", unsoundCnt);
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+}
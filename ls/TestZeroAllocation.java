@@ -0,0 +1,45 @@
+package ls;
+
+// checks that the steady state of interpret() doesn't allocate anything
+// the VM, the root execution context and the jump state are reused across the calls
+class TestZeroAllocation {
+	public static void main(String[] args) throws Exception {
+		BenchInstrs bench = new BenchInstrs();
+		bench.init();
+
+		int[][] programs = new int[][] {
+			bench.retPongProgram(),
+			BenchInstrs.retProgram(instr.HardwiredPrograms.ret2dQuadraticDist(bench.instrLookupTable)),
+			BenchInstrs.retProgram(instr.HardwiredPrograms.retMathMax(bench.instrLookupTable)),
+		};
+
+		// the query of the allocated bytes allocates itself, so it is subtracted
+		long measurementOverhead = 0;
+		for( int i = 0; i < 1000; i++ ) {
+			long before = BenchInstrs.retAllocatedBytesOfCurrentThread();
+			measurementOverhead = BenchInstrs.retAllocatedBytesOfCurrentThread() - before;
+		}
+
+		boolean isSuccess = true;
+		for( int engine = 0; engine < 2; engine++ ) { // CompilingInterpreter is not checked because it compiles the programs
+			bench.engine = engine;
+			for( int[] iProgram : programs ) {
+				// warmup, so the JIT doesn't allocate in the measurement
+				bench.runProgramNTimes(iProgram, 200000);
+
+				long allocatedBytesBefore = BenchInstrs.retAllocatedBytesOfCurrentThread();
+				bench.runProgramNTimes(iProgram, 100000);
+				long allocatedBytes = BenchInstrs.retAllocatedBytesOfCurrentThread() - allocatedBytesBefore - measurementOverhead;
+
+				System.out.format("%-20s allocated bytes=%d\n", BenchInstrs.ENGINENAMES[engine], allocatedBytes);
+				if( allocatedBytes != 0 )   isSuccess = false;
+			}
+		}
+
+		if( !isSuccess ) {
+			System.out.println("FAILED: interpret() allocated");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,199 @@
+package ls;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// inlines the calls of XMACRO into the program before the execution, the slots are static for a run (see Instrs.Interpreter.xmacroSlots)
+//
+// the instructions of the bodies and the jumps and skips with rebased offsets are appended to a copy of the instruction table
+// the programs are rewritten with inline() and executed with inlinedTable and the same slots
+// the inlined program has the same result as the original program, but it consumes less steps because the call and the return don't consume steps
+// (a skiped inlined call consumes one step for each instruction of the body instead of one step for the call)
+//
+// a call is only inlined if the body is closed: no jump of the body lands before the begin of the body, no skip reaches over the end of the body and the body doesn't call a macro
+// jumps over the end of the body return from the macro, so they are rebased to the end of the inlined body
+// the other calls are executed with a pooled execution context of the interpreter
+// * the call of the last instruction of the program is not inlined, because the failure of the last instruction of the body would be ignored after the inlining
+// * nothing is inlined if the program calls a body which is not closed, because a skip which reaches over the end of the body would skip instructions of the inlined bodies
+// * nothing is inlined if a rebased offset doesn't fit into [-maxOffset, maxOffset]
+public class XMacroInliner {
+	public Instrs.InstructionLookupTable baseTable;
+	public Instrs.InstructionLookupTable inlinedTable; // base table with the instructions of the bodies and the jumps and skips with rebased offsets
+	public List<Instrs.Ctx.Vm.XMacroSlot> slots;
+
+	public final int maxOffset;
+
+	OpcodeTable opcodeTable; // of the inlined table
+	int[][] bodies; // body of each slot as indices into the inlined table, null if the body can't be inlined
+	int jmpsBeginIdx; // index of JMP -maxOffset in the inlined table, followed by the jumps up to JMP maxOffset
+	int predIgnoresBeginIdx; // index of PREDIGNOREIFFLAG 1 true in the inlined table, followed by the skips up to maxOffset and the skips with false
+
+	public XMacroInliner(Instrs.InstructionLookupTable baseTable, List<Instrs.Ctx.Vm.XMacroSlot> slots, int maxOffset) {
+		this.baseTable = baseTable;
+		this.slots = slots;
+		this.maxOffset = maxOffset;
+
+		// append the instructions of the bodies which are not in the table
+		IdentityHashMap<Instrs.IInstr, Integer> idxOfInstr = new IdentityHashMap<>();
+		Instrs.IInstr[] table = Arrays.copyOf(baseTable.table, baseTable.table.length);
+		for( int idx = 0; idx < table.length; idx++ ) {
+			if( !idxOfInstr.containsKey(table[idx]) )   idxOfInstr.put(table[idx], idx);
+		}
+
+		int[][] bodyIndices = new int[slots.size()][];
+		for( int slotIdx = 0; slotIdx < slots.size(); slotIdx++ ) {
+			Instrs.IInstr[] bodyInstrs = slots.get(slotIdx).instrs;
+			bodyIndices[slotIdx] = new int[bodyInstrs.length];
+			for( int bodyIp = 0; bodyIp < bodyInstrs.length; bodyIp++ ) {
+				Integer idx = idxOfInstr.get(bodyInstrs[bodyIp]);
+				if( idx == null ) {
+					idx = table.length;
+					table = Arrays.copyOf(table, table.length + 1);
+					table[idx] = bodyInstrs[bodyIp];
+					idxOfInstr.put(bodyInstrs[bodyIp], idx);
+				}
+				bodyIndices[slotIdx][bodyIp] = idx;
+			}
+		}
+
+		// append the jumps and skips with all offsets, so each rebased offset has a instruction
+		jmpsBeginIdx = table.length;
+		predIgnoresBeginIdx = jmpsBeginIdx + 2 * maxOffset + 1;
+		table = Arrays.copyOf(table, predIgnoresBeginIdx + 2 * maxOffset);
+		for( int delta = -maxOffset; delta <= maxOffset; delta++ )   table[jmpsBeginIdx + maxOffset + delta] = new Instrs.JMP(delta);
+		for( int nInstrs = 1; nInstrs <= maxOffset; nInstrs++ ) {
+			table[predIgnoresBeginIdx + nInstrs - 1] = new Instrs.PREDIGNOREIFFLAG(nInstrs, true);
+			table[predIgnoresBeginIdx + maxOffset + nInstrs - 1] = new Instrs.PREDIGNOREIFFLAG(nInstrs, false);
+		}
+
+		inlinedTable = new Instrs.InstructionLookupTable();
+		inlinedTable.table = table;
+		opcodeTable = OpcodeTable.decode(inlinedTable);
+
+		bodies = new int[slots.size()][];
+		for( int slotIdx = 0; slotIdx < slots.size(); slotIdx++ )   bodies[slotIdx] = retClosedBody(bodyIndices[slotIdx]);
+	}
+
+	// returns the body with the jumps over the end rebased to the end, null if the body is not closed
+	int[] retClosedBody(int[] body) {
+		int[] res = Arrays.copyOf(body, body.length);
+		for( int bodyIp = 0; bodyIp < body.length; bodyIp++ ) {
+			int opcode = opcodeTable.opcodes[body[bodyIp]];
+			int intArg = opcodeTable.intArgs[body[bodyIp]];
+			if( opcode == OpcodeTable.OP_XMACRO ) {
+				return null;
+			}
+			else if( opcode == OpcodeTable.OP_JMP ) {
+				int target = bodyIp + 1 + intArg;
+				if( target < 0 )   return null;
+				if( target > body.length ) {
+					res[bodyIp] = retJmpIdx(body.length - (bodyIp + 1));
+					if( res[bodyIp] == -1 )   return null;
+				}
+			}
+			else if( opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG ) {
+				if( intArg > 0 && bodyIp + 1 + intArg > body.length )   return null;
+			}
+		}
+		return res;
+	}
+
+	// returns the inlined program, returns the program itself if no call was inlined
+	public int[] inline(int[] instrsIndices) {
+		final int len = instrsIndices.length;
+
+		int[] newIps = new int[len + 1]; // position in the inlined program of each position of the original program
+		int newIp = 0;
+		boolean isAnyInlined = false;
+		for( int ip = 0; ip < len; ip++ ) {
+			newIps[ip] = newIp;
+			if( isCallOfOpenBody(instrsIndices, ip) )   return instrsIndices;
+			int[] body = retInlinedBody(instrsIndices, ip);
+			if( body != null ) {
+				newIp += body.length;
+				isAnyInlined = true;
+			}
+			else {
+				newIp++;
+			}
+		}
+		newIps[len] = newIp;
+		if( !isAnyInlined )   return instrsIndices;
+
+		final int newLen = newIp;
+		int[] res = new int[newLen];
+		for( int ip = 0; ip < len; ip++ ) {
+			int[] body = retInlinedBody(instrsIndices, ip);
+			if( body != null ) {
+				System.arraycopy(body, 0, res, newIps[ip], body.length);
+				continue;
+			}
+
+			int instrIdx = instrsIndices[ip];
+			int opcode = opcodeTable.opcodes[instrIdx];
+			if( opcode == OpcodeTable.OP_JMP ) {
+				instrIdx = retRebasedJmp(instrsIndices, ip, newIps, newLen);
+			}
+			else if( (opcode == OpcodeTable.OP_PREDIGNOREIFFLAG || opcode == OpcodeTable.OP_PREDIGNOREIFNOTFLAG) && opcodeTable.intArgs[instrIdx] > 0 ) {
+				instrIdx = retRebasedPredIgnore(instrsIndices, ip, newIps, newLen);
+			}
+			if( instrIdx == -1 )   return instrsIndices;
+			res[newIps[ip]] = instrIdx;
+		}
+		return res;
+	}
+
+	// returns the body if the instruction is a call which is inlined, null if not
+	int[] retInlinedBody(int[] instrsIndices, int ip) {
+		int instrIdx = instrsIndices[ip];
+		if( opcodeTable.opcodes[instrIdx] != OpcodeTable.OP_XMACRO || ip == instrsIndices.length - 1 )   return null;
+		int macroIdx = opcodeTable.intArgs[instrIdx];
+		if( macroIdx < 0 || macroIdx >= bodies.length )   return null; // the call fails
+		return bodies[macroIdx];
+	}
+
+	boolean isCallOfOpenBody(int[] instrsIndices, int ip) {
+		int instrIdx = instrsIndices[ip];
+		if( opcodeTable.opcodes[instrIdx] != OpcodeTable.OP_XMACRO || ip == instrsIndices.length - 1 )   return false;
+		int macroIdx = opcodeTable.intArgs[instrIdx];
+		return macroIdx >= 0 && macroIdx < bodies.length && bodies[macroIdx] == null;
+	}
+
+	// returns the index of the jump instruction which has the same target in the inlined program, -1 if the offset is out of range
+	int retRebasedJmp(int[] instrsIndices, int ip, int[] newIps, int newLen) {
+		final int len = instrsIndices.length;
+		int delta = opcodeTable.intArgs[instrsIndices[ip]];
+		int target = ip + 1 + delta;
+		int newIpAfterJmp = newIps[ip] + 1;
+
+		// targets after the end terminate the program and targets before the start are invalid, in both cases the exact target doesn't matter
+		if( target >= len ) {
+			if( delta >= newLen - newIpAfterJmp )   return instrsIndices[ip];
+			return retJmpIdx(newLen - newIpAfterJmp);
+		}
+		else if( target < 0 ) {
+			if( delta <= -newIpAfterJmp - 1 )   return instrsIndices[ip];
+			return retJmpIdx(-newIpAfterJmp - 1);
+		}
+		int newDelta = newIps[target] - newIpAfterJmp;
+		return newDelta == delta ? instrsIndices[ip] : retJmpIdx(newDelta);
+	}
+
+	// returns the index of the skip instruction which skips the same instructions in the inlined program, -1 if the count is out of range
+	int retRebasedPredIgnore(int[] instrsIndices, int ip, int[] newIps, int newLen) {
+		int nInstrs = opcodeTable.intArgs[instrsIndices[ip]];
+		int skipEnd = Math.min(ip + 1 + nInstrs, instrsIndices.length); // skips over the end terminate the program, the exact count doesn't matter
+		int newNInstrs = newIps[skipEnd] - newIps[ip + 1];
+		if( newNInstrs == nInstrs || (skipEnd == instrsIndices.length && nInstrs > newNInstrs) )   return instrsIndices[ip];
+		if( newNInstrs > maxOffset )   return -1;
+		if( newNInstrs == 0 )   return jmpsBeginIdx + maxOffset; // JMP 0, consumes one step like the skip which skips nothing
+		boolean flagCheckValue = opcodeTable.opcodes[instrsIndices[ip]] == OpcodeTable.OP_PREDIGNOREIFFLAG;
+		return predIgnoresBeginIdx + (flagCheckValue ? 0 : maxOffset) + newNInstrs - 1;
+	}
+
+	int retJmpIdx(int delta) {
+		if( delta < -maxOffset || delta > maxOffset )   return -1;
+		return jmpsBeginIdx + maxOffset + delta;
+	}
+}